@@ -0,0 +1,147 @@
+package benchmark;
+
+import chip.Chip;
+import chip.Scheduler;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ui.EmulatorPanel;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.file.Paths;
+
+/**
+ * JMH version of the Benchmarks workloads: per opcode class programs and whole ROMs, on both engines,
+ * and repainting the emulator panel.
+ * Program scores are instructions per second. ROM scores are frames per second, with the instructions
+ * actually run reported next to them, since a ROM waiting on Fx0A runs none
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ChipBenchmark {
+
+    @State(Scope.Thread)
+    public static class ProgramState {
+
+        @Param({"alu", "branch", "draw", "load-store"})
+        public String program;
+
+        @Param({"interpreter", "block"})
+        public String engine;
+
+        Chip chip;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            chip = Benchmarks.createChip(engine.equals("block"));
+            chip.loadRom(Benchmarks.toBytes(program()));
+        }
+
+        private int[] program() {
+            switch (program) {
+                case "alu":
+                    return Benchmarks.ALU_PROGRAM;
+                case "branch":
+                    return Benchmarks.BRANCH_PROGRAM;
+                case "draw":
+                    return Benchmarks.DRAW_PROGRAM;
+                default:
+                    return Benchmarks.LOAD_STORE_PROGRAM;
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RomState {
+
+        @Param({"pong.c8", "pong2.c8", "invaders.ch8"})
+        public String rom;
+
+        @Param({"interpreter", "block"})
+        public String engine;
+
+        Chip chip;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            chip = Benchmarks.createChip(engine.equals("block"));
+            chip.loadRom(Paths.get(Benchmarks.ROM_DIRECTORY, rom).toString());
+        }
+    }
+
+    /**
+     * Instructions the ROM benchmark ran, reported per second next to its score
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class InstructionCounter {
+
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            instructions = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PaintState {
+
+        Chip chip;
+        EmulatorPanel panel;
+        Graphics2D graphics;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            chip = Benchmarks.createChip(false);
+            chip.loadRom(Benchmarks.toBytes(Benchmarks.DRAW_PROGRAM));
+            chip.execute(Benchmarks.BATCH_CYCLES);
+
+            panel = new EmulatorPanel(chip);
+            panel.setSize(640, 320);
+            graphics = new BufferedImage(640, 320, BufferedImage.TYPE_INT_RGB).createGraphics();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            graphics.dispose();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Benchmarks.BATCH_CYCLES)
+    public long program(ProgramState state) {
+        return state.chip.execute(Benchmarks.BATCH_CYCLES);
+    }
+
+    @Benchmark
+    public long rom(RomState state, InstructionCounter counter) {
+        long executed = state.chip.runFrame(Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME);
+        counter.instructions += executed;
+        return executed;
+    }
+
+    /**
+     * Repaints the whole panel into an offscreen image, the worst case of a frame where every row changed
+     */
+    @Benchmark
+    public void paint(PaintState state) {
+        state.chip.getFramebuffer().markAllDirty();
+        state.panel.present();
+        state.panel.paint(state.graphics);
+    }
+}
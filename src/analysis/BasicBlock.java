@@ -0,0 +1,64 @@
+package analysis;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A run of instructions that is only entered at its first instruction and only left after its last
+ */
+public final class BasicBlock {
+
+    private final int start;
+    private final int end;
+    private final int[] instructions;
+    private final List<Edge> successors;
+    private final boolean subroutine;
+
+    BasicBlock(int start, int end, int[] instructions, List<Edge> successors, boolean subroutine) {
+        this.start = start;
+        this.end = end;
+        this.instructions = instructions;
+        this.successors = successors;
+        this.subroutine = subroutine;
+    }
+
+    /**
+     * Returns the address of the first instruction
+     * @return int
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the address right after the last instruction
+     * @return int
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the addresses of the instructions, in program order
+     * @return int[]
+     */
+    public int[] getInstructions() {
+        return instructions.clone();
+    }
+
+    /**
+     * Returns the edges leaving the block. Empty when the block returns, exits or stops the program
+     * @return List of Edge
+     */
+    public List<Edge> getSuccessors() {
+        return Collections.unmodifiableList(successors);
+    }
+
+    /**
+     * Returns whether a 2nnn calls this block
+     * @return boolean
+     */
+    public boolean isSubroutine() {
+        return subroutine;
+    }
+}
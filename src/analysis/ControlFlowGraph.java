@@ -0,0 +1,558 @@
+package analysis;
+
+import chip.BlockCacheEngine;
+import chip.Chip;
+import chip.MachineProfile;
+import chip.Quirks;
+import chip.Snapshot;
+import rom.RomImage;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Static analysis of a loaded program. Instructions are found by following every path from
+ * the entry point through 1nnn, 2nnn, 00EE, the skips and, through jump tables, Bnnn, and then
+ * split into basic blocks. Bytes of the program no path reaches are data.
+ * Stores whose address is known from an Annn in the same block are checked against the code,
+ * which flags programs that likely modify themselves
+ */
+public class ControlFlowGraph {
+
+    // Address programs start at
+    public static final int ENTRY = 0x200;
+
+    // Most entries of a Bnnn jump table that are followed
+    private static final int MAX_JUMP_TABLE_ENTRIES = 128;
+
+    // Data bytes printed per listing line
+    private static final int DATA_BYTES_PER_LINE = 8;
+
+    private MachineProfile profile;
+    private Quirks quirks;
+    private char[] memory;
+    private int programEnd;
+
+    // Address of every reachable instruction
+    private BitSet instructions;
+
+    // Every byte taken by a reachable instruction
+    private BitSet codeBytes;
+
+    // First instructions of the basic blocks
+    private BitSet leaders;
+
+    // Targets of 2nnn
+    private BitSet subroutines;
+
+    // Addresses that Annn and F000 nnnn point I at
+    private BitSet dataReferences;
+
+    // Edges of the instructions that do not simply run into the next one, by address
+    private Map<Integer, List<Edge>> branches;
+
+    // Bnnn instructions, whose targets are only known as far as their jump table could be followed
+    private BitSet indirectJumps;
+
+    private TreeMap<Integer, BasicBlock> blocks;
+    private List<MemoryWrite> writes;
+
+    /**
+     * Analyzes a program loaded into a chip
+     * @param chip chip with the program in memory, with the machine and quirks it runs with
+     * @param programSize program size in bytes
+     */
+    public ControlFlowGraph(Chip chip, int programSize) {
+        this.profile = chip.getProfile();
+        this.quirks = chip.getQuirks();
+        Snapshot image = chip.snapshot();
+        this.memory = new char[chip.getMemorySize()];
+        for (int address = 0; address < memory.length; address++) {
+            memory[address] = image.getMemory(address);
+        }
+        this.programEnd = Math.min(memory.length, ENTRY + programSize);
+        this.instructions = new BitSet(memory.length);
+        this.codeBytes = new BitSet(memory.length);
+        this.leaders = new BitSet(memory.length);
+        this.subroutines = new BitSet(memory.length);
+        this.dataReferences = new BitSet(memory.length);
+        this.indirectJumps = new BitSet(memory.length);
+        this.branches = new HashMap<>();
+        this.blocks = new TreeMap<>();
+        this.writes = new ArrayList<>();
+
+        traverse();
+        buildBlocks();
+    }
+
+    /**
+     * Loads a ROM into a fresh chip, the same way the emulator does, and analyzes it
+     * @param rom program image
+     * @param profile machine the program runs on
+     * @return ControlFlowGraph
+     */
+    public static ControlFlowGraph analyze(RomImage rom, MachineProfile profile) {
+        Chip chip = new Chip(profile, true);
+        if (!chip.loadRom(rom)) {
+            throw new IllegalArgumentException(rom.getName() + " does not fit in " + profile.getName() + " memory");
+        }
+        return new ControlFlowGraph(chip, rom.getSize());
+    }
+
+    public MachineProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Returns the basic blocks in address order
+     * @return Collection of BasicBlock
+     */
+    public Collection<BasicBlock> getBlocks() {
+        return Collections.unmodifiableCollection(blocks.values());
+    }
+
+    /**
+     * Returns the block starting at an address
+     * @param address address of the block's first instruction
+     * @return BasicBlock, or null if no block starts there
+     */
+    public BasicBlock getBlock(int address) {
+        return blocks.get(address);
+    }
+
+    /**
+     * Returns the addresses the basic blocks start at, in address order
+     * @return int[]
+     */
+    public int[] getBlockStarts() {
+        return leaders.stream().filter(instructions::get).toArray();
+    }
+
+    /**
+     * Returns whether a reachable instruction starts at an address
+     * @param address address
+     * @return boolean
+     */
+    public boolean isInstruction(int address) {
+        return instructions.get(address);
+    }
+
+    /**
+     * Returns the addresses of every reachable instruction
+     * @return BitSet A copy, bit n set for an instruction at address n
+     */
+    public BitSet getInstructions() {
+        return (BitSet) instructions.clone();
+    }
+
+    /**
+     * Returns whether a byte of the program is data, meaning no reachable instruction covers it
+     * @param address address inside the program
+     * @return boolean
+     */
+    public boolean isData(int address) {
+        return address >= ENTRY && address < programEnd && !codeBytes.get(address);
+    }
+
+    /**
+     * Returns every store found in the program
+     * @return List of MemoryWrite
+     */
+    public List<MemoryWrite> getWrites() {
+        return Collections.unmodifiableList(writes);
+    }
+
+    /**
+     * Returns whether some store is known to write over reachable code
+     * @return boolean
+     */
+    public boolean isLikelySelfModifying() {
+        for (MemoryWrite write : writes) {
+            if (write.isSelfModifying()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compiles the blocks of this program in a block cache engine before it first runs.
+     * The engine's chip has to hold the analyzed program
+     * @param engine engine to fill
+     * @return int Number of blocks compiled
+     */
+    public int prebuild(BlockCacheEngine engine) {
+        return engine.prebuild(getBlockStarts(), instructions);
+    }
+
+    /**
+     * Prints the program as an assembly listing with block labels, data bytes and notes on stores
+     * and indirect jumps
+     * @param out stream to print to
+     */
+    public void writeListing(PrintStream out) {
+        Map<Integer, MemoryWrite> writesByAddress = new HashMap<>();
+        for (MemoryWrite write : writes) {
+            writesByAddress.put(write.getAddress(), write);
+        }
+        int address = ENTRY;
+        while (address < programEnd) {
+            if (instructions.get(address)) {
+                if (leaders.get(address)) {
+                    out.println();
+                    out.println(label(address) + ":");
+                }
+                char opcode = read(address);
+                String line = String.format("0x%03X  %04X  %s", address, (int) opcode,
+                        Disassembler.disassemble(opcode, read(address + 2), profile));
+                out.println(line + note(address, writesByAddress.get(address)));
+                address += lengthAt(address);
+            } else if (codeBytes.get(address)) {
+                // Second byte of an instruction that starts on an odd address
+                address++;
+            } else {
+                if (dataReferences.get(address)) {
+                    out.println();
+                    out.println(String.format("data_%03X:", address));
+                }
+                StringBuilder bytes = new StringBuilder();
+                int start = address;
+                do {
+                    bytes.append(bytes.length() == 0 ? "" : ", ").append(String.format("0x%02X", (int) memory[address]));
+                    address++;
+                } while (address < programEnd && address - start < DATA_BYTES_PER_LINE
+                        && !codeBytes.get(address) && !dataReferences.get(address));
+                out.println(String.format("0x%03X        DB %s", start, bytes));
+            }
+        }
+    }
+
+    /**
+     * Prints the control flow graph in Graphviz DOT format, one node per basic block.
+     * Subroutines have a double border and blocks that write over code are red
+     * @param out stream to print to
+     */
+    public void writeDot(PrintStream out) {
+        BitSet selfModifyingBlocks = new BitSet();
+        for (MemoryWrite write : writes) {
+            if (write.isSelfModifying()) {
+                selfModifyingBlocks.set(blocks.floorKey(write.getAddress()));
+            }
+        }
+
+        out.println("digraph program {");
+        out.println("  node [shape=box, fontname=\"monospace\"];");
+        for (BasicBlock block : blocks.values()) {
+            StringBuilder text = new StringBuilder(label(block.getStart())).append("\\l");
+            for (int address : block.getInstructions()) {
+                String mnemonic = Disassembler.disassemble(read(address), read(address + 2), profile);
+                text.append(String.format("%03X  %s\\l", address, mnemonic.replace("\"", "\\\"")));
+            }
+            out.printf("  \"%s\" [label=\"%s\"%s%s];%n", label(block.getStart()), text,
+                    block.isSubroutine() ? ", peripheries=2" : "",
+                    selfModifyingBlocks.get(block.getStart()) ? ", color=red" : "");
+        }
+        for (BasicBlock block : blocks.values()) {
+            for (Edge edge : block.getSuccessors()) {
+                if (!blocks.containsKey(edge.getTo())) {
+                    continue;
+                }
+                out.printf("  \"%s\" -> \"%s\"%s;%n", label(block.getStart()), label(edge.getTo()), edgeStyle(edge.getKind()));
+            }
+        }
+        out.println("}");
+    }
+
+    /**
+     * Finds every reachable instruction, starting from the entry point
+     */
+    private void traverse() {
+        Deque<Integer> work = new ArrayDeque<>();
+        work.push(ENTRY);
+        leaders.set(ENTRY);
+        while (!work.isEmpty()) {
+            int address = work.pop();
+            if (address + 1 >= memory.length || instructions.get(address)) {
+                continue;
+            }
+            instructions.set(address);
+            int length = lengthAt(address);
+            codeBytes.set(address, Math.min(address + length, memory.length));
+
+            List<Edge> edges = edgesOf(address, length);
+            if (edges.size() != 1 || edges.get(0).getKind() != EdgeKind.NEXT) {
+                branches.put(address, edges);
+                for (Edge edge : edges) {
+                    leaders.set(edge.getTo());
+                }
+            }
+            for (Edge edge : edges) {
+                work.push(edge.getTo());
+            }
+        }
+    }
+
+    /**
+     * Returns where control can go after an instruction, mirroring how the chip executes it
+     * @param address address of the instruction
+     * @param length length of the instruction in bytes
+     * @return List of Edge, empty when the instruction returns, exits or stops the program
+     */
+    private List<Edge> edgesOf(int address, int length) {
+        char opcode = read(address);
+        int next = address + length;
+        int nnn = opcode & 0x0FFF;
+        int n = opcode & 0x000F;
+        int kk = opcode & 0x00FF;
+        List<Edge> edges = new ArrayList<>(2);
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                if (opcode == 0x00E0 || advancesExtendedSystemOpcode(opcode)) {
+                    addEdge(edges, address, next, EdgeKind.NEXT);
+                }
+                // 00EE returns, 00FD exits and any other 0nnn stays in place
+                break;
+            case 0x1000:
+                addEdge(edges, address, nnn, EdgeKind.JUMP);
+                break;
+            case 0x2000:
+                addEdge(edges, address, nnn, EdgeKind.CALL);
+                addEdge(edges, address, next, EdgeKind.CALL_RETURN);
+                subroutines.set(nnn);
+                break;
+            case 0x3000:
+            case 0x4000:
+            case 0x9000:
+                addSkip(edges, address, next);
+                break;
+            case 0x5000:
+                if (profile.isXoChip() && (n == 0x2 || n == 0x3)) {
+                    addEdge(edges, address, next, EdgeKind.NEXT);
+                } else {
+                    addSkip(edges, address, next);
+                }
+                break;
+            case 0x8000:
+                // Unknown 8xyN opcodes stop the chip
+                if (n <= 0x7 || n == 0xE) {
+                    addEdge(edges, address, next, EdgeKind.NEXT);
+                }
+                break;
+            case 0xA000:
+                dataReferences.set(nnn);
+                addEdge(edges, address, next, EdgeKind.NEXT);
+                break;
+            case 0xB000:
+                indirectJumps.set(address);
+                addJumpTable(edges, address, nnn);
+                break;
+            case 0xE000:
+                if (kk == 0x9E || kk == 0xA1) {
+                    addSkip(edges, address, next);
+                }
+                break;
+            case 0xF000:
+                if (isKnownMiscOpcode(opcode)) {
+                    if (opcode == 0xF000) {
+                        dataReferences.set(read(address + 2));
+                    }
+                    addEdge(edges, address, next, EdgeKind.NEXT);
+                }
+                break;
+            default:
+                addEdge(edges, address, next, EdgeKind.NEXT);
+                break;
+        }
+        return edges;
+    }
+
+    private void addSkip(List<Edge> edges, int address, int next) {
+        addEdge(edges, address, next, EdgeKind.NEXT);
+        if (next + 1 < memory.length) {
+            addEdge(edges, address, next + lengthAt(next), EdgeKind.SKIP);
+        }
+    }
+
+    /**
+     * Adds the targets of a Bnnn: the table start, and every following entry that is a 1nnn,
+     * since programs index tables of jumps with the offset register
+     * @param edges edges to add to
+     * @param address address of the Bnnn
+     * @param table address the jump is relative to
+     */
+    private void addJumpTable(List<Edge> edges, int address, int table) {
+        addEdge(edges, address, table, EdgeKind.INDIRECT);
+        for (int entry = 1; entry < MAX_JUMP_TABLE_ENTRIES; entry++) {
+            int target = table + entry * 2;
+            if (target + 1 >= memory.length || (read(target) & 0xF000) != 0x1000) {
+                break;
+            }
+            addEdge(edges, address, target, EdgeKind.INDIRECT);
+        }
+    }
+
+    private void addEdge(List<Edge> edges, int from, int to, EdgeKind kind) {
+        if (to + 1 < memory.length) {
+            edges.add(new Edge(from, to, kind));
+        }
+    }
+
+    private boolean advancesExtendedSystemOpcode(char opcode) {
+        if (!profile.isSuperChip()) {
+            return false;
+        }
+        if ((opcode & 0xFFF0) == 0x00C0 || ((opcode & 0xFFF0) == 0x00D0 && profile.isXoChip())) {
+            return true;
+        }
+        return opcode == 0x00FB || opcode == 0x00FC || opcode == 0x00FE || opcode == 0x00FF;
+    }
+
+    private boolean isKnownMiscOpcode(char opcode) {
+        int kk = opcode & 0x00FF;
+        switch (kk) {
+            case 0x07, 0x0A, 0x15, 0x18, 0x1E, 0x29, 0x33, 0x55, 0x65:
+                return true;
+            case 0x30, 0x75, 0x85:
+                return profile.isSuperChip();
+            case 0x01, 0x3A:
+                return profile.isXoChip();
+            default:
+                return profile.isXoChip() && (opcode == 0xF000 || opcode == 0xF002);
+        }
+    }
+
+    /**
+     * Splits the instructions into basic blocks and records the stores of each block
+     */
+    private void buildBlocks() {
+        for (int start = leaders.nextSetBit(0); start >= 0; start = leaders.nextSetBit(start + 1)) {
+            if (!instructions.get(start)) {
+                continue;
+            }
+            List<Integer> addresses = new ArrayList<>();
+            List<Edge> successors = new ArrayList<>();
+            int address = start;
+            while (true) {
+                addresses.add(address);
+                List<Edge> edges = branches.get(address);
+                if (edges != null) {
+                    successors.addAll(edges);
+                    break;
+                }
+                int next = address + lengthAt(address);
+                if (!instructions.get(next) || leaders.get(next)) {
+                    successors.add(new Edge(address, next, EdgeKind.NEXT));
+                    break;
+                }
+                address = next;
+            }
+            int[] blockInstructions = addresses.stream().mapToInt(Integer::intValue).toArray();
+            int end = address + lengthAt(address);
+            blocks.put(start, new BasicBlock(start, end, blockInstructions, successors, subroutines.get(start)));
+            findWrites(blockInstructions);
+        }
+    }
+
+    /**
+     * Records the stores of a block, following I through the block from an unknown value
+     * @param block addresses of the block's instructions
+     */
+    private void findWrites(int[] block) {
+        int index = -1;
+        for (int address : block) {
+            char opcode = read(address);
+            int x = (opcode & 0x0F00) >> 8;
+            int y = (opcode & 0x00F0) >> 4;
+            int kk = opcode & 0x00FF;
+            if ((opcode & 0xF000) == 0xA000) {
+                index = opcode & 0x0FFF;
+            } else if (profile.isXoChip() && (opcode & 0xF00F) == 0x5002) {
+                addWrite(address, index, Math.abs(y - x) + 1);
+            } else if ((opcode & 0xF000) == 0xF000) {
+                if (profile.isXoChip() && opcode == 0xF000) {
+                    index = read(address + 2);
+                } else if (kk == 0x33) {
+                    addWrite(address, index, 3);
+                } else if (kk == 0x55 || kk == 0x65) {
+                    if (kk == 0x55) {
+                        addWrite(address, index, x + 1);
+                    }
+                    if (quirks.incrementsIndex() && index >= 0) {
+                        index += x + 1;
+                    }
+                } else if (kk == 0x1E || kk == 0x29 || kk == 0x30) {
+                    index = -1;
+                }
+            }
+        }
+    }
+
+    private void addWrite(int address, int target, int length) {
+        boolean selfModifying = target >= 0 && !codeBytes.get(target, target + length).isEmpty();
+        writes.add(new MemoryWrite(address, target, length, selfModifying));
+    }
+
+    private String note(int address, MemoryWrite write) {
+        StringBuilder note = new StringBuilder();
+        if (write != null) {
+            if (write.getTarget() < 0) {
+                note.append("stores through an unknown I");
+            } else {
+                note.append(String.format("stores %d bytes at 0x%03X", write.getLength(), write.getTarget()));
+                if (write.isSelfModifying()) {
+                    note.append(", over code: likely self-modifying");
+                }
+            }
+        }
+        if (indirectJumps.get(address)) {
+            note.append(note.length() > 0 ? "; " : "").append("indirect jump, targets from its jump table");
+        }
+        return note.length() > 0 ? "    ; " + note : "";
+    }
+
+    private String label(int address) {
+        return String.format(subroutines.get(address) ? "sub_%03X" : "L_%03X", address);
+    }
+
+    private static String edgeStyle(EdgeKind kind) {
+        switch (kind) {
+            case SKIP:
+                return " [style=dashed, label=\"skip\"]";
+            case JUMP:
+                return " [label=\"jp\"]";
+            case INDIRECT:
+                return " [style=dotted, label=\"jp v0\"]";
+            case CALL:
+                return " [color=blue, label=\"call\"]";
+            case CALL_RETURN:
+                return " [style=dashed, color=gray]";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Returns the length of the instruction at an address: 4 bytes for XO-CHIP's F000 nnnn, 2 otherwise
+     * @param address address
+     * @return int
+     */
+    private int lengthAt(int address) {
+        return profile.isXoChip() && read(address) == 0xF000 ? 4 : 2;
+    }
+
+    private char read(int address) {
+        if (address + 1 >= memory.length) {
+            return 0;
+        }
+        return (char) ((memory[address] << 8) | memory[address + 1]);
+    }
+}
@@ -0,0 +1,183 @@
+package analysis;
+
+import chip.MachineProfile;
+
+/**
+ * Turns opcodes into assembly mnemonics in the style of Cowgod's CHIP-8 reference,
+ * with the SUPER-CHIP and XO-CHIP instructions of the machine they are decoded for
+ */
+public final class Disassembler {
+
+    private Disassembler() {
+    }
+
+    /**
+     * Returns the mnemonic of an opcode
+     * @param opcode CHIP-8 machine instruction
+     * @param next the word after the opcode, the address of XO-CHIP's F000 nnnn
+     * @param profile machine the opcode runs on
+     * @return String Mnemonic, or a raw word directive when the machine does not know the opcode
+     */
+    public static String disassemble(char opcode, char next, MachineProfile profile) {
+        int x = (opcode & 0x0F00) >> 8;
+        int y = (opcode & 0x00F0) >> 4;
+        int kk = opcode & 0x00FF;
+        int nnn = opcode & 0x0FFF;
+        int n = opcode & 0x000F;
+
+        switch (opcode & 0xF000) {
+            case 0x0000:
+                if (opcode == 0x00E0) {
+                    return "CLS";
+                }
+                if (opcode == 0x00EE) {
+                    return "RET";
+                }
+                if (profile.isSuperChip()) {
+                    if ((opcode & 0xFFF0) == 0x00C0) {
+                        return "SCD " + n;
+                    }
+                    if ((opcode & 0xFFF0) == 0x00D0 && profile.isXoChip()) {
+                        return "SCU " + n;
+                    }
+                    switch (opcode) {
+                        case 0x00FB:
+                            return "SCR";
+                        case 0x00FC:
+                            return "SCL";
+                        case 0x00FD:
+                            return "EXIT";
+                        case 0x00FE:
+                            return "LOW";
+                        case 0x00FF:
+                            return "HIGH";
+                        default:
+                            break;
+                    }
+                }
+                return String.format("SYS 0x%03X", nnn);
+            case 0x1000:
+                return String.format("JP 0x%03X", nnn);
+            case 0x2000:
+                return String.format("CALL 0x%03X", nnn);
+            case 0x3000:
+                return String.format("SE V%X, 0x%02X", x, kk);
+            case 0x4000:
+                return String.format("SNE V%X, 0x%02X", x, kk);
+            case 0x5000:
+                if (n == 0x2 && profile.isXoChip()) {
+                    return String.format("SAVE V%X - V%X", x, y);
+                }
+                if (n == 0x3 && profile.isXoChip()) {
+                    return String.format("LOAD V%X - V%X", x, y);
+                }
+                return String.format("SE V%X, V%X", x, y);
+            case 0x6000:
+                return String.format("LD V%X, 0x%02X", x, kk);
+            case 0x7000:
+                return String.format("ADD V%X, 0x%02X", x, kk);
+            case 0x8000:
+                return disassembleArithmetic(opcode, x, y, n);
+            case 0x9000:
+                return String.format("SNE V%X, V%X", x, y);
+            case 0xA000:
+                return String.format("LD I, 0x%03X", nnn);
+            case 0xB000:
+                return String.format("JP V0, 0x%03X", nnn);
+            case 0xC000:
+                return String.format("RND V%X, 0x%02X", x, kk);
+            case 0xD000:
+                return String.format("DRW V%X, V%X, %d", x, y, n);
+            case 0xE000:
+                if (kk == 0x9E) {
+                    return String.format("SKP V%X", x);
+                }
+                if (kk == 0xA1) {
+                    return String.format("SKNP V%X", x);
+                }
+                return word(opcode);
+            default:
+                return disassembleMisc(opcode, next, x, kk, profile);
+        }
+    }
+
+    private static String disassembleArithmetic(char opcode, int x, int y, int n) {
+        switch (n) {
+            case 0x0:
+                return String.format("LD V%X, V%X", x, y);
+            case 0x1:
+                return String.format("OR V%X, V%X", x, y);
+            case 0x2:
+                return String.format("AND V%X, V%X", x, y);
+            case 0x3:
+                return String.format("XOR V%X, V%X", x, y);
+            case 0x4:
+                return String.format("ADD V%X, V%X", x, y);
+            case 0x5:
+                return String.format("SUB V%X, V%X", x, y);
+            case 0x6:
+                return String.format("SHR V%X, V%X", x, y);
+            case 0x7:
+                return String.format("SUBN V%X, V%X", x, y);
+            case 0xE:
+                return String.format("SHL V%X, V%X", x, y);
+            default:
+                return word(opcode);
+        }
+    }
+
+    private static String disassembleMisc(char opcode, char next, int x, int kk, MachineProfile profile) {
+        if (profile.isXoChip()) {
+            if (opcode == 0xF000) {
+                return String.format("LD I, 0x%04X", (int) next);
+            }
+            if (opcode == 0xF002) {
+                return "AUDIO";
+            }
+            if (kk == 0x01) {
+                return String.format("PLANE %d", x);
+            }
+            if (kk == 0x3A) {
+                return String.format("PITCH V%X", x);
+            }
+        }
+        if (profile.isSuperChip()) {
+            switch (kk) {
+                case 0x30:
+                    return String.format("LD HF, V%X", x);
+                case 0x75:
+                    return String.format("LD R, V%X", x);
+                case 0x85:
+                    return String.format("LD V%X, R", x);
+                default:
+                    break;
+            }
+        }
+        switch (kk) {
+            case 0x07:
+                return String.format("LD V%X, DT", x);
+            case 0x0A:
+                return String.format("LD V%X, K", x);
+            case 0x15:
+                return String.format("LD DT, V%X", x);
+            case 0x18:
+                return String.format("LD ST, V%X", x);
+            case 0x1E:
+                return String.format("ADD I, V%X", x);
+            case 0x29:
+                return String.format("LD F, V%X", x);
+            case 0x33:
+                return String.format("LD B, V%X", x);
+            case 0x55:
+                return String.format("LD [I], V%X", x);
+            case 0x65:
+                return String.format("LD V%X, [I]", x);
+            default:
+                return word(opcode);
+        }
+    }
+
+    private static String word(char opcode) {
+        return String.format("DW 0x%04X", (int) opcode);
+    }
+}
@@ -0,0 +1,37 @@
+package analysis;
+
+/**
+ * A control flow edge between two instructions
+ */
+public final class Edge {
+
+    private final int from;
+    private final int to;
+    private final EdgeKind kind;
+
+    public Edge(int from, int to, EdgeKind kind) {
+        this.from = from;
+        this.to = to;
+        this.kind = kind;
+    }
+
+    /**
+     * Returns the address of the instruction the edge leaves from
+     * @return int
+     */
+    public int getFrom() {
+        return from;
+    }
+
+    /**
+     * Returns the address control goes to
+     * @return int
+     */
+    public int getTo() {
+        return to;
+    }
+
+    public EdgeKind getKind() {
+        return kind;
+    }
+}
@@ -0,0 +1,19 @@
+package analysis;
+
+/**
+ * How control gets from one basic block to another
+ */
+public enum EdgeKind {
+    // Runs into the next instruction
+    NEXT,
+    // A skip instruction skipping the next instruction
+    SKIP,
+    // 1nnn
+    JUMP,
+    // Bnnn, to a target found by following a jump table
+    INDIRECT,
+    // 2nnn into the subroutine
+    CALL,
+    // 2nnn to the instruction after it, where the subroutine returns to
+    CALL_RETURN
+}
@@ -0,0 +1,52 @@
+package analysis;
+
+/**
+ * An instruction that stores to memory (Fx33, Fx55 or XO-CHIP's 5xy2), with where it writes
+ * when I is known from an Annn earlier in the same basic block
+ */
+public final class MemoryWrite {
+
+    private final int address;
+    private final int target;
+    private final int length;
+    private final boolean selfModifying;
+
+    MemoryWrite(int address, int target, int length, boolean selfModifying) {
+        this.address = address;
+        this.target = target;
+        this.length = length;
+        this.selfModifying = selfModifying;
+    }
+
+    /**
+     * Returns the address of the storing instruction
+     * @return int
+     */
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the first address written
+     * @return int Address, or -1 if I is not known at the instruction
+     */
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns the number of bytes written
+     * @return int
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns whether the write lands on reachable code, which makes the program likely self-modifying
+     * @return boolean
+     */
+    public boolean isSelfModifying() {
+        return selfModifying;
+    }
+}
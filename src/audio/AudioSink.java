@@ -0,0 +1,19 @@
+package audio;
+
+/**
+ * Plays the CHIP-8 buzzer. The chip only reports when the tone starts and stops,
+ * so calls happen on sound timer edges and never once per instruction
+ */
+public interface AudioSink {
+
+    /**
+     * Starts or stops the tone. Must return quickly, it is called from the emulation thread
+     * @param on true while the sound timer is above zero
+     */
+    void setTone(boolean on);
+
+    /**
+     * Releases the audio device, if any
+     */
+    void close();
+}
@@ -0,0 +1,25 @@
+package audio;
+
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Picks the audio sink to use on this machine
+ */
+public final class AudioSinks {
+
+    private AudioSinks() {
+    }
+
+    /**
+     * Opens the buzzer on the default audio device, or returns a silent sink if there is none
+     * @return AudioSink
+     */
+    public static AudioSink open() {
+        try {
+            return new BuzzerAudioSink();
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            System.err.println("Audio: no audio device to play sounds on, running silent");
+            return new SilentAudioSink();
+        }
+    }
+}
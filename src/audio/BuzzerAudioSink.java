@@ -0,0 +1,100 @@
+package audio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.Arrays;
+
+/**
+ * Plays a square wave buzzer into a sampled audio line from its own thread.
+ * The emulation thread only flips a flag; the audio thread keeps the line fed with
+ * tone or silence from a preallocated ring of samples, so nothing blocks or allocates while playing
+ */
+public class BuzzerAudioSink implements AudioSink, Runnable {
+
+    private static final float SAMPLE_RATE = 44_100f;
+
+    // Pitch of the buzzer
+    private static final int TONE_HZ = 440;
+
+    // Peak amplitude of the 8 bit square wave
+    private static final byte AMPLITUDE = 24;
+
+    // Samples handed to the line per write, about 5.8ms, short enough that the tone starts and stops promptly
+    private static final int CHUNK_SAMPLES = 256;
+
+    // Chunks the line buffers ahead of playback
+    private static final int BUFFERED_CHUNKS = 4;
+
+    private SourceDataLine line;
+    private Thread thread;
+    private volatile boolean tone;
+    private volatile boolean running;
+
+    // One whole number of wave periods, so reading it in a circle plays a seamless tone
+    private byte[] wave;
+
+    // Position in wave of the next sample played
+    private int phase;
+
+    // Chunk being written to the line
+    private byte[] chunk;
+
+    /**
+     * Opens the default audio line and starts the audio thread
+     * @throws LineUnavailableException when no audio line can be opened
+     */
+    public BuzzerAudioSink() throws LineUnavailableException {
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 8, 1, true, false);
+        line = AudioSystem.getSourceDataLine(format);
+        line.open(format, CHUNK_SAMPLES * BUFFERED_CHUNKS);
+        line.start();
+
+        int period = Math.round(SAMPLE_RATE / TONE_HZ);
+        wave = new byte[period * Math.max(1, CHUNK_SAMPLES / period)];
+        for (int i = 0; i < wave.length; i++) {
+            wave[i] = (i % period) < period / 2 ? AMPLITUDE : -AMPLITUDE;
+        }
+        chunk = new byte[CHUNK_SAMPLES];
+
+        running = true;
+        thread = new Thread(this, "chip8-audio");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void setTone(boolean on) {
+        tone = on;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (tone) {
+                for (int i = 0; i < chunk.length; i++) {
+                    chunk[i] = wave[phase];
+                    phase = phase + 1 == wave.length ? 0 : phase + 1;
+                }
+            } else {
+                Arrays.fill(chunk, (byte) 0);
+                phase = 0;
+            }
+            // Blocks until the line has room, which paces this thread to the sample rate
+            line.write(chunk, 0, chunk.length);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        line.stop();
+        line.close();
+    }
+}
@@ -0,0 +1,15 @@
+package audio;
+
+/**
+ * Sink that plays nothing, used when running headless or when no audio device is available
+ */
+public class SilentAudioSink implements AudioSink {
+
+    @Override
+    public void setTone(boolean on) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
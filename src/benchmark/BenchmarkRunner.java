@@ -0,0 +1,96 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Runs workloads through timed warmup and measurement iterations, JMH style,
+ * and reports throughput and heap allocation per operation
+ */
+public class BenchmarkRunner {
+
+    private int warmupIterations;
+    private int measurementIterations;
+    private long iterationNanos;
+
+    // Written after every batch so the JIT can not discard the work
+    private volatile long blackhole;
+
+    public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+    }
+
+    /**
+     * Measures a workload and prints one result line
+     * @param name name shown in the report
+     * @param workload work to measure
+     * @return double Mean operations per second
+     */
+    public double run(String name, Workload workload) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(workload);
+        }
+
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads != null ? threads.getThreadAllocatedBytes(threadId) : 0;
+
+        double[] scores = new double[measurementIterations];
+        long totalOperations = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            long start = System.nanoTime();
+            long operations = iteration(workload);
+            long elapsed = System.nanoTime() - start;
+            scores[i] = operations * 1_000_000_000.0 / elapsed;
+            totalOperations += operations;
+        }
+
+        double mean = 0;
+        for (double score : scores) {
+            mean += score;
+        }
+        mean /= scores.length;
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double error = scores.length > 1 ? Math.sqrt(variance / (scores.length - 1)) : 0;
+
+        String allocation = "n/a";
+        if (threads != null) {
+            long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            allocation = String.format("%.3f", (double) allocated / totalOperations);
+        }
+        System.out.printf("%-40s %16.0f +- %12.0f ops/s   %10s B/op%n", name, mean, error, allocation);
+        return mean;
+    }
+
+    /**
+     * Runs batches of a workload until the iteration time is used up
+     * @param workload work to run
+     * @return long Number of operations performed
+     */
+    private long iteration(Workload workload) {
+        long deadline = System.nanoTime() + iterationNanos;
+        long operations = 0;
+        do {
+            operations += workload.run();
+        } while (System.nanoTime() < deadline);
+        blackhole += operations;
+        return operations;
+    }
+
+    /**
+     * Returns the bean used to count allocated bytes, or null if the JVM can not do it
+     * @return com.sun.management.ThreadMXBean
+     */
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        }
+        return null;
+    }
+}
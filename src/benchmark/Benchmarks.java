@@ -0,0 +1,194 @@
+package benchmark;
+
+import chip.BlockCacheEngine;
+import chip.Chip;
+import chip.Scheduler;
+import ui.EmulatorPanel;
+import util.XorShiftRandom;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Benchmarks for the interpreter core, sprite drawing and rendering.
+ * Usage: Benchmarks [name filter] [--quick]
+ * A quick runner that needs nothing but the JDK; the same workloads run under JMH from jmh/ChipBenchmark
+ */
+public class Benchmarks {
+
+    static final String ROM_DIRECTORY = "./roms";
+
+    // Cycles executed per workload batch
+    static final int BATCH_CYCLES = 10_000;
+
+    // 60Hz frames executed per whole-ROM workload batch
+    static final int BATCH_FRAMES = 1_000;
+
+    private static final long SEED = 0xC8;
+
+    // 8xyN arithmetic and logic in a tight loop
+    static final int[] ALU_PROGRAM = {
+            0x6012, // V0 = 0x12
+            0x6134, // V1 = 0x34
+            0x8014, // V0 += V1
+            0x8015, // V0 -= V1
+            0x8011, // V0 |= V1
+            0x8012, // V0 &= V1
+            0x8013, // V0 ^= V1
+            0x8016, // V0 >>= 1
+            0x801E, // V0 <<= 1
+            0x8017, // V0 = V1 - V0
+            0x1204  // loop back to 8014
+    };
+
+    // Every conditional skip, taken and not taken
+    static final int[] BRANCH_PROGRAM = {
+            0x6005, // V0 = 5
+            0x6105, // V1 = 5
+            0x3005, // skip if V0 == 5
+            0x1200,
+            0x4006, // skip if V0 != 6
+            0x1200,
+            0x5010, // skip if V0 == V1
+            0x1200,
+            0x9010, // skip if V0 != V1, not taken
+            0x1204  // loop back to 3005
+    };
+
+    // Dxyn walking a font sprite across the screen
+    static final int[] DRAW_PROGRAM = {
+            0xA050, // I = font sprite 0
+            0x6000, // V0 = 0
+            0x6100, // V1 = 0
+            0xD015, // draw 5 rows at (V0, V1)
+            0x7003, // V0 += 3
+            0x7101, // V1 += 1
+            0x1206  // loop back to D015
+    };
+
+    // Fx55 and Fx65 moving all registers through memory
+    static final int[] LOAD_STORE_PROGRAM = {
+            0xA300, // I = 0x300
+            0xFF55, // store V0..VF
+            0xA300, // I = 0x300
+            0xFF65, // load V0..VF
+            0x1200  // loop back to the start
+    };
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        String filter = "";
+        boolean quick = false;
+        for (String arg : args) {
+            if (arg.equals("--quick")) {
+                quick = true;
+            } else {
+                filter = arg;
+            }
+        }
+        BenchmarkRunner runner = quick ? new BenchmarkRunner(2, 3, 200) : new BenchmarkRunner(5, 10, 1000);
+
+        for (boolean blockCache : new boolean[] {false, true}) {
+            String engine = blockCache ? "block" : "interpreter";
+            benchmarkProgram(runner, filter, "alu-8xyN/" + engine, ALU_PROGRAM, blockCache);
+            benchmarkProgram(runner, filter, "branch/" + engine, BRANCH_PROGRAM, blockCache);
+            benchmarkProgram(runner, filter, "draw-Dxyn/" + engine, DRAW_PROGRAM, blockCache);
+            benchmarkProgram(runner, filter, "load-store-Fx55-Fx65/" + engine, LOAD_STORE_PROGRAM, blockCache);
+
+            File[] roms = new File(ROM_DIRECTORY).listFiles(
+                    (dir, name) -> name.endsWith(".c8") || name.endsWith(".ch8"));
+            if (roms != null) {
+                Arrays.sort(roms);
+                for (File rom : roms) {
+                    String name = "rom-" + rom.getName() + "/" + engine;
+                    if (name.contains(filter)) {
+                        Chip chip = createChip(blockCache);
+                        chip.loadRom(rom.getPath());
+                        runner.run(name, () -> {
+                            long cycles = 0;
+                            for (int i = 0; i < BATCH_FRAMES; i++) {
+                                cycles += chip.runFrame(Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME);
+                            }
+                            return cycles;
+                        });
+                    }
+                }
+            }
+        }
+
+        if ("paint-EmulatorPanel".contains(filter)) {
+            benchmarkPaint(runner);
+        }
+    }
+
+    /**
+     * Measures cycles per second of a synthetic program
+     * @param runner benchmark runner
+     * @param filter only run when the name contains this
+     * @param name benchmark name
+     * @param program opcodes, loaded at the start of program memory
+     * @param blockCache whether to use the block cache engine
+     */
+    private static void benchmarkProgram(BenchmarkRunner runner, String filter, String name,
+                                         int[] program, boolean blockCache) {
+        if (!name.contains(filter)) {
+            return;
+        }
+        Chip chip = createChip(blockCache);
+        chip.loadRom(toBytes(program));
+        runner.run(name, () -> chip.execute(BATCH_CYCLES));
+    }
+
+    /**
+     * Measures repaints per second of the emulator panel showing a busy screen
+     * @param runner benchmark runner
+     */
+    private static void benchmarkPaint(BenchmarkRunner runner) {
+        Chip chip = createChip(false);
+        chip.loadRom(toBytes(DRAW_PROGRAM));
+        chip.execute(BATCH_CYCLES);
+
+        EmulatorPanel panel = new EmulatorPanel(chip);
+        panel.setSize(640, 320);
+        BufferedImage image = new BufferedImage(640, 320, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        runner.run("paint-EmulatorPanel", () -> {
+            chip.getFramebuffer().markAllDirty();
+            panel.present();
+            panel.paint(graphics);
+            return 1;
+        });
+        graphics.dispose();
+    }
+
+    /**
+     * Creates a headless chip with a fixed seed
+     * @param blockCache whether to use the block cache engine
+     * @return Chip
+     */
+    static Chip createChip(boolean blockCache) {
+        Chip chip = new Chip(true);
+        chip.setRandom(new XorShiftRandom(SEED));
+        if (blockCache) {
+            chip.setEngine(new BlockCacheEngine(chip));
+        }
+        return chip;
+    }
+
+    /**
+     * Converts opcodes to big endian program bytes
+     * @param program opcodes
+     * @return byte[]
+     */
+    static byte[] toBytes(int[] program) {
+        byte[] bytes = new byte[program.length * 2];
+        for (int i = 0; i < program.length; i++) {
+            bytes[i * 2] = (byte) (program[i] >> 8);
+            bytes[i * 2 + 1] = (byte) program[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,14 @@
+package benchmark;
+
+/**
+ * A piece of work measured by the benchmark runner
+ */
+@FunctionalInterface
+public interface Workload {
+
+    /**
+     * Runs one batch of the work
+     * @return long Number of operations performed
+     */
+    long run();
+}
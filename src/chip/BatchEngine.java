@@ -0,0 +1,588 @@
+package chip;
+
+import util.XorShiftRandom;
+
+import java.util.Arrays;
+
+/**
+ * Runs many CHIP-8 machines in lockstep with their state laid out as a struct of arrays.
+ * Registers, pc, I, sp and timers of every machine live in flat primitive arrays, with each
+ * V register stored contiguously across machines, so instructions that all machines share
+ * run as one tight loop over the lanes that the JIT can vectorize.
+ * A lane behaves exactly like a Chip running the same program on the interpreter.
+ * A lane that would throw on a Chip (bad opcode, stack or memory access) is marked failed and stops
+ */
+public class BatchEngine {
+
+    private static final int MEMORY_BYTES = 4096;
+    private static final int V_REGISTERS = 16;
+    private static final int STACK_LENGTH = 16;
+    private static final int V_FLAG = 0xF;
+
+    private final int lanes;
+
+    // memory[lane * MEMORY_BYTES + address]
+    private final char[] memory;
+
+    // V[register * lanes + lane], so one register of every lane is contiguous
+    private final char[] V;
+
+    private final char[] I;
+    private final char[] pc;
+
+    // stack[lane * STACK_LENGTH + index]
+    private final char[] stack;
+    private final int[] sp;
+    private final int[] dt;
+    private final int[] st;
+
+    // Bit n set when key n is held down
+    private final int[] keys;
+
+    // Register a pending Fx0A stores the next pressed key in, or -1
+    private final int[] keyWait;
+
+    // display[lane * Framebuffer.HEIGHT + row]
+    private final long[] display;
+    private final boolean[] redraw;
+
+    // xorshift state for Cxkk
+    private final long[] random;
+
+    private final boolean[] failed;
+    private int failedCount;
+
+    // Opcodes fetched during the current step
+    private final char[] opcodes;
+
+    public BatchEngine(int lanes) {
+        this.lanes = lanes;
+        memory = new char[lanes * MEMORY_BYTES];
+        V = new char[V_REGISTERS * lanes];
+        I = new char[lanes];
+        pc = new char[lanes];
+        stack = new char[lanes * STACK_LENGTH];
+        sp = new int[lanes];
+        dt = new int[lanes];
+        st = new int[lanes];
+        keys = new int[lanes];
+        keyWait = new int[lanes];
+        Arrays.fill(keyWait, -1);
+        display = new long[lanes * Framebuffer.HEIGHT];
+        redraw = new boolean[lanes];
+        random = new long[lanes];
+        failed = new boolean[lanes];
+        opcodes = new char[lanes];
+    }
+
+    /**
+     * Returns the number of machines
+     * @return int
+     */
+    public int getLanes() {
+        return lanes;
+    }
+
+    /**
+     * Copies a chip's whole state into a lane
+     * @param lane lane to fill
+     * @param chip chip to copy from, which has to be a plain CHIP-8 with the CHIP-8 quirks
+     */
+    public void load(int lane, Chip chip) {
+        if (chip.getProfile() != MachineProfile.CHIP_8) {
+            throw new IllegalArgumentException("Batches only run CHIP-8 programs, not " + chip.getProfile().getName());
+        }
+        if (!chip.getQuirks().equals(Quirks.CHIP_8)) {
+            throw new IllegalArgumentException("Batches only run with the CHIP-8 quirks, not " + chip.getQuirks());
+        }
+        System.arraycopy(chip.getMemory(), 0, memory, lane * MEMORY_BYTES, MEMORY_BYTES);
+        char[] registers = chip.getRegisters();
+        for (int x = 0; x < V_REGISTERS; x++) {
+            V[x * lanes + lane] = registers[x];
+        }
+        I[lane] = chip.getI();
+        pc[lane] = chip.getPc();
+        System.arraycopy(chip.getStack(), 0, stack, lane * STACK_LENGTH, STACK_LENGTH);
+        sp[lane] = chip.getSp();
+        dt[lane] = chip.getDt();
+        st[lane] = chip.getSt();
+
+        byte[] keypad = chip.getKeypad();
+        int mask = 0;
+        for (int key = 0; key < keypad.length; key++) {
+            if (keypad[key] == 1) {
+                mask |= 1 << key;
+            }
+        }
+        keys[lane] = mask;
+        keyWait[lane] = chip.getKeyWaitRegister();
+
+        System.arraycopy(chip.getFramebuffer().getRows(), 0, display, lane * Framebuffer.HEIGHT, Framebuffer.HEIGHT);
+        redraw[lane] = chip.getRedrawFlag();
+        random[lane] = chip.getRandom().getState();
+        setFailed(lane, false);
+    }
+
+    /**
+     * Copies a lane's whole state into a chip
+     * @param lane lane to copy from
+     * @param chip chip to fill
+     */
+    public void store(int lane, Chip chip) {
+        System.arraycopy(memory, lane * MEMORY_BYTES, chip.getMemory(), 0, MEMORY_BYTES);
+        chip.memoryWritten(0, MEMORY_BYTES);
+        char[] registers = chip.getRegisters();
+        for (int x = 0; x < V_REGISTERS; x++) {
+            registers[x] = V[x * lanes + lane];
+        }
+        chip.setI(I[lane]);
+        chip.setPc(pc[lane]);
+        System.arraycopy(stack, lane * STACK_LENGTH, chip.getStack(), 0, STACK_LENGTH);
+        chip.setSp(sp[lane]);
+        chip.setDt(dt[lane]);
+        chip.setSt(st[lane]);
+
+        byte[] keypad = chip.getKeypad();
+        for (int key = 0; key < keypad.length; key++) {
+            keypad[key] = (byte) ((keys[lane] >> key) & 1);
+        }
+        chip.setKeyWaitRegister(keyWait[lane]);
+
+        System.arraycopy(display, lane * Framebuffer.HEIGHT, chip.getFramebuffer().getRows(), 0, Framebuffer.HEIGHT);
+        chip.getFramebuffer().markAllDirty();
+        chip.setRedrawFlag(redraw[lane]);
+        chip.getRandom().setSeed(random[lane]);
+    }
+
+    /**
+     * Sets which keys are held down in a lane.
+     * The lowest newly pressed key completes a pending Fx0A, like Chip.setKeys()
+     * @param lane lane
+     * @param mask bit n set when key n is held down
+     */
+    public void setKeys(int lane, int mask) {
+        int pressed = mask & ~keys[lane];
+        keys[lane] = mask;
+        if (pressed != 0 && keyWait[lane] >= 0) {
+            V[keyWait[lane] * lanes + lane] = (char) Integer.numberOfTrailingZeros(pressed);
+            keyWait[lane] = -1;
+            pc[lane] += 2;
+        }
+    }
+
+    public char getPc(int lane) {
+        return pc[lane];
+    }
+
+    public char getRegister(int lane, int x) {
+        return V[x * lanes + lane];
+    }
+
+    /**
+     * Returns whether a lane stopped on an instruction a Chip would have thrown on
+     * @param lane lane
+     * @return boolean
+     */
+    public boolean isFailed(int lane) {
+        return failed[lane];
+    }
+
+    /**
+     * Runs one 60Hz frame on every lane: a number of cycles, then one timer tick
+     * @param instructionsPerFrame cycles to run
+     * @return long Number of lane cycles executed
+     */
+    public long runFrame(int instructionsPerFrame) {
+        long executed = execute(instructionsPerFrame);
+        for (int lane = 0; lane < lanes; lane++) {
+            // A failed lane stops like a Chip that threw, timers included
+            if (failed[lane]) continue;
+            if (dt[lane] > 0) dt[lane]--;
+            if (st[lane] > 0) st[lane]--;
+        }
+        return executed;
+    }
+
+    /**
+     * Runs a number of cycles on every lane
+     * @param cycles cycles to run
+     * @return long Number of lane cycles executed, summed over the lanes that have not failed
+     */
+    public long execute(int cycles) {
+        long executed = 0;
+        for (int i = 0; i < cycles; i++) {
+            executed += step();
+        }
+        return executed;
+    }
+
+    /**
+     * Runs one cycle on every lane
+     * @return int Number of lanes that executed an instruction
+     */
+    private int step() {
+        boolean uniform = fetch();
+        if (uniform && stepUniform(opcodes[0])) {
+            return lanes;
+        }
+        int executed = 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            if (!failed[lane]) {
+                stepLane(lane, opcodes[lane]);
+                executed++;
+            }
+        }
+        return executed;
+    }
+
+    /**
+     * Fetches the current opcode of every lane
+     * @return boolean True if every lane is running and about to execute the same opcode
+     */
+    private boolean fetch() {
+        boolean uniform = failedCount == 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            if (failed[lane]) {
+                continue;
+            }
+            int address = pc[lane];
+            if (address + 1 >= MEMORY_BYTES) {
+                setFailed(lane, true);
+                uniform = false;
+                continue;
+            }
+            int base = lane * MEMORY_BYTES;
+            opcodes[lane] = (char) ((memory[base + address] << 8) | memory[base + address + 1]);
+            uniform &= opcodes[lane] == opcodes[0];
+        }
+        return uniform;
+    }
+
+    /**
+     * Runs an opcode shared by every lane as one loop over the lanes.
+     * Only register arithmetic is handled this way, everything else falls back to one lane at a time
+     * @param opcode opcode every lane is about to execute
+     * @return boolean True if the opcode was executed
+     */
+    private boolean stepUniform(char opcode) {
+        int x = (opcode & 0x0F00) >> 8;
+        int y = (opcode & 0x00F0) >> 4;
+        int kk = opcode & 0x00FF;
+        int vx = x * lanes;
+        int vy = y * lanes;
+
+        switch (opcode & 0xF000) {
+            case 0x6000: // 6xkk
+                Arrays.fill(V, vx, vx + lanes, (char) kk);
+                break;
+            case 0x7000: // 7xkk
+                for (int lane = 0; lane < lanes; lane++) {
+                    V[vx + lane] = (char) ((V[vx + lane] + kk) & 0xFF);
+                }
+                break;
+            case 0x8000:
+                switch (opcode & 0x000F) {
+                    case 0x0000: // 8xy0
+                        System.arraycopy(V, vy, V, vx, lanes);
+                        break;
+                    case 0x0001: // 8xy1
+                        for (int lane = 0; lane < lanes; lane++) {
+                            V[vx + lane] = (char) (V[vx + lane] | V[vy + lane]);
+                        }
+                        break;
+                    case 0x0002: // 8xy2
+                        for (int lane = 0; lane < lanes; lane++) {
+                            V[vx + lane] = (char) (V[vx + lane] & V[vy + lane]);
+                        }
+                        break;
+                    case 0x0003: // 8xy3
+                        for (int lane = 0; lane < lanes; lane++) {
+                            V[vx + lane] = (char) (V[vx + lane] ^ V[vy + lane]);
+                        }
+                        break;
+                    default:
+                        return false;
+                }
+                break;
+            case 0xA000: // Annn
+                Arrays.fill(I, (char) (opcode & 0x0FFF));
+                break;
+            default:
+                return false;
+        }
+        for (int lane = 0; lane < lanes; lane++) {
+            pc[lane] += 2;
+        }
+        return true;
+    }
+
+    /**
+     * Runs one opcode on a single lane, mirroring the Chip instruction handlers
+     * @param lane lane
+     * @param opcode opcode to execute
+     */
+    private void stepLane(int lane, char opcode) {
+        int x = (opcode & 0x0F00) >> 8;
+        int y = (opcode & 0x00F0) >> 4;
+        int kk = opcode & 0x00FF;
+        int nnn = opcode & 0x0FFF;
+        int n = opcode & 0x000F;
+        int vx = x * lanes + lane;
+        int vy = y * lanes + lane;
+        int vf = V_FLAG * lanes + lane;
+        int base = lane * MEMORY_BYTES;
+
+        switch (opcode & 0xF000) {
+            case 0x0000: // 0nnn, 00E0, 00EE
+                if (isExtendedSystemOpcode(opcode)) {
+                    // The SUPER-CHIP and XO-CHIP opcodes are unsupported on CHIP-8
+                    setFailed(lane, true);
+                    return;
+                }
+                if (kk == 0x00E0) {
+                    Arrays.fill(display, lane * Framebuffer.HEIGHT, (lane + 1) * Framebuffer.HEIGHT, 0L);
+                    pc[lane] += 2;
+                    redraw[lane] = true;
+                } else if (kk == 0x00EE) {
+                    if (sp[lane] == 0) {
+                        setFailed(lane, true);
+                        return;
+                    }
+                    sp[lane]--;
+                    pc[lane] = (char) (stack[lane * STACK_LENGTH + sp[lane]] + 2);
+                }
+                break;
+            case 0x1000: // 1nnn
+                pc[lane] = (char) nnn;
+                break;
+            case 0x2000: // 2nnn
+                if (sp[lane] == STACK_LENGTH) {
+                    setFailed(lane, true);
+                    return;
+                }
+                stack[lane * STACK_LENGTH + sp[lane]] = pc[lane];
+                sp[lane]++;
+                pc[lane] = (char) nnn;
+                break;
+            case 0x3000: // 3xkk
+                pc[lane] += V[vx] == kk ? 4 : 2;
+                break;
+            case 0x4000: // 4xkk
+                pc[lane] += V[vx] != kk ? 4 : 2;
+                break;
+            case 0x5000: // 5xy0
+                pc[lane] += V[vx] == V[vy] ? 4 : 2;
+                break;
+            case 0x6000: // 6xkk
+                V[vx] = (char) kk;
+                pc[lane] += 2;
+                break;
+            case 0x7000: // 7xkk
+                V[vx] = (char) ((V[vx] + kk) & 0xFF);
+                pc[lane] += 2;
+                break;
+            case 0x8000:
+                switch (n) {
+                    case 0x0000:
+                        V[vx] = V[vy];
+                        break;
+                    case 0x0001:
+                        V[vx] = (char) (V[vx] | V[vy]);
+                        break;
+                    case 0x0002:
+                        V[vx] = (char) (V[vx] & V[vy]);
+                        break;
+                    case 0x0003:
+                        V[vx] = (char) (V[vx] ^ V[vy]);
+                        break;
+                    case 0x0004: {
+                        int sum = V[vx] + V[vy];
+                        V[vx] = (char) (sum & 0xFF);
+                        V[vf] = (char) (sum >> 8);
+                        break;
+                    }
+                    case 0x0005: {
+                        char flag = (char) (V[vx] >= V[vy] ? 1 : 0);
+                        V[vx] = (char) ((V[vx] - V[vy]) & 0xFF);
+                        V[vf] = flag;
+                        break;
+                    }
+                    case 0x0006: {
+                        char flag = (char) (V[vx] & 0x1);
+                        V[vx] = (char) (V[vx] >> 1);
+                        V[vf] = flag;
+                        break;
+                    }
+                    case 0x0007: {
+                        char flag = (char) (V[vy] >= V[vx] ? 1 : 0);
+                        V[vx] = (char) ((V[vy] - V[vx]) & 0xFF);
+                        V[vf] = flag;
+                        break;
+                    }
+                    case 0x000E: {
+                        char flag = (char) (V[vx] >> 7);
+                        V[vx] = (char) ((V[vx] << 1) & 0xFF);
+                        V[vf] = flag;
+                        break;
+                    }
+                    default:
+                        setFailed(lane, true);
+                        return;
+                }
+                pc[lane] += 2;
+                break;
+            case 0x9000: // 9xy0
+                pc[lane] += V[vx] != V[vy] ? 4 : 2;
+                break;
+            case 0xA000: // Annn
+                I[lane] = (char) nnn;
+                pc[lane] += 2;
+                break;
+            case 0xB000: // Bnnn
+                pc[lane] = (char) (nnn + V[lane]);
+                break;
+            case 0xC000: // Cxkk
+                random[lane] = XorShiftRandom.step(random[lane]);
+                V[vx] = (char) (XorShiftRandom.toByte(random[lane]) & kk);
+                pc[lane] += 2;
+                break;
+            case 0xD000: { // Dxyn
+                if (I[lane] + n > MEMORY_BYTES) {
+                    setFailed(lane, true);
+                    return;
+                }
+                int cX = V[vx];
+                int cY = V[vy];
+                boolean collision = Framebuffer.drawSprite(display, lane * Framebuffer.HEIGHT,
+                        cX, cY, memory, base + I[lane], n);
+                V[vf] = (char) (collision ? 1 : 0);
+                pc[lane] += 2;
+                redraw[lane] = true;
+                break;
+            }
+            case 0xE000: // Ex9E, ExA1
+                if (n != 0x0001 && n != 0x000E) {
+                    setFailed(lane, true);
+                    return;
+                }
+                if (V[vx] >= V_REGISTERS) {
+                    setFailed(lane, true);
+                    return;
+                }
+                boolean pressed = ((keys[lane] >> V[vx]) & 1) != 0;
+                pc[lane] += pressed == (n == 0x000E) ? 4 : 2;
+                break;
+            default: // Fx07, Fx0A, Fx15, Fx18, Fx1E, Fx29, Fx33, Fx55, Fx65
+                stepTimersAndMemory(lane, x, kk, vx, base);
+                break;
+        }
+    }
+
+    /**
+     * Runs the Fxkk group of opcodes on a single lane
+     * @param lane lane
+     * @param x register operand
+     * @param kk low byte of the opcode
+     * @param vx index of Vx in V
+     * @param base index of the lane's memory in memory
+     */
+    private void stepTimersAndMemory(int lane, int x, int kk, int vx, int base) {
+        int index = I[lane];
+        switch (kk) {
+            case 0x0007:
+                V[vx] = (char) dt[lane];
+                break;
+            case 0x000A:
+                // Stays on this instruction until setKeys() reports a newly pressed key
+                keyWait[lane] = x;
+                return;
+            case 0x0015:
+                dt[lane] = V[vx];
+                break;
+            case 0x0018:
+                st[lane] = V[vx];
+                break;
+            case 0x001E:
+                I[lane] = (char) (index + V[vx]);
+                break;
+            case 0x0029:
+                I[lane] = (char) (Chip.FONT_MEMORY_START + (V[vx] * 5));
+                break;
+            case 0x0033: {
+                if (index + 3 > MEMORY_BYTES) {
+                    setFailed(lane, true);
+                    return;
+                }
+                int value = V[vx];
+                int hundreds = (value - (value % 100)) / 100;
+                value -= hundreds * 100;
+                int tens = (value - (value % 10)) / 10;
+                value -= tens * 10;
+                memory[base + index] = (char) hundreds;
+                memory[base + index + 1] = (char) tens;
+                memory[base + index + 2] = (char) value;
+                break;
+            }
+            case 0x0055:
+                if (index + x + 1 > MEMORY_BYTES) {
+                    setFailed(lane, true);
+                    return;
+                }
+                for (int i = 0; i <= x; i++) {
+                    memory[base + index + i] = V[i * lanes + lane];
+                }
+                I[lane] = (char) (index + x + 1);
+                break;
+            case 0x0065:
+                if (index + x + 1 > MEMORY_BYTES) {
+                    setFailed(lane, true);
+                    return;
+                }
+                for (int i = 0; i <= x; i++) {
+                    V[i * lanes + lane] = memory[base + index + i];
+                }
+                I[lane] = (char) (index + x + 1);
+                break;
+            case 0x0000:
+            case 0x0002:
+                // F000 and F002 are XO-CHIP opcodes, the other Fx00 and Fx02 do nothing
+                if (x == 0) {
+                    setFailed(lane, true);
+                }
+                return;
+            case 0x0001:
+            case 0x0030:
+            case 0x003A:
+            case 0x0075:
+            case 0x0085:
+                // The SUPER-CHIP and XO-CHIP opcodes are unsupported on CHIP-8
+                setFailed(lane, true);
+                return;
+            default:
+                return;
+        }
+        pc[lane] += 2;
+    }
+
+    /**
+     * Returns whether an opcode is one of the SUPER-CHIP and XO-CHIP system opcodes:
+     * 00Cn, 00Dn, 00FB, 00FC, 00FD, 00FE and 00FF
+     * @param opcode opcode in the 0nnn group
+     * @return boolean
+     */
+    private static boolean isExtendedSystemOpcode(char opcode) {
+        return (opcode & 0xFFE0) == 0x00C0 || opcode >= 0x00FB && opcode <= 0x00FF;
+    }
+
+    /**
+     * Marks a lane as failed or running again
+     * @param lane lane
+     * @param value true to stop the lane
+     */
+    private void setFailed(int lane, boolean value) {
+        if (failed[lane] != value) {
+            failed[lane] = value;
+            failedCount += value ? 1 : -1;
+        }
+    }
+}
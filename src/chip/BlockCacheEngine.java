@@ -0,0 +1,162 @@
+package chip;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Engine that splits the program into straight-line basic blocks and caches them.
+ * A block is decoded once, the first time the program counter reaches it, and then
+ * runs as a whole on every later dispatch.
+ * Memory writes invalidate the blocks they touch so self-modifying programs stay correct,
+ * and a change of quirks throws every block away
+ */
+public class BlockCacheEngine implements Engine, MemoryListener {
+
+    // Longest block, in instructions, that gets compiled
+    private static final int MAX_BLOCK_LENGTH = 32;
+
+    // Bytes taken by one instruction
+    private static final int INSTRUCTION_BYTES = 2;
+
+    private Chip chip;
+
+    // Compiled blocks, indexed by the address they start at
+    private Block[] blocks;
+
+    // Instructions the blocks were decoded from
+    private InstructionTable instructions;
+
+    public BlockCacheEngine(Chip chip) {
+        this.chip = chip;
+        this.blocks = new Block[chip.getMemorySize()];
+        this.instructions = chip.getInstructionTable();
+        chip.setMemoryListener(this);
+    }
+
+    @Override
+    public long execute(long cycles) {
+        checkInstructionTable();
+        long executed = 0;
+        while (executed < cycles) {
+            char pc = chip.getPc();
+            Block block = blocks[pc];
+            if (block == null) {
+                block = compile(pc);
+                blocks[pc] = block;
+            }
+
+            // Stop partway through the block when the budget runs out so cycle counts stay exact
+            int count = (int) Math.min(block.instructions.length, cycles - executed);
+            Instruction[] instructions = block.instructions;
+            for (int i = 0; i < count; i++) {
+                instructions[i].execute(chip);
+            }
+            executed += count;
+        }
+        return executed;
+    }
+
+    @Override
+    public void memoryWritten(int address, int length) {
+        // A block covering the written range may start up to one block length before it
+        int first = Math.max(0, address - (MAX_BLOCK_LENGTH * INSTRUCTION_BYTES) + 1);
+        int last = Math.min(blocks.length, address + length);
+        for (int start = first; start < last; start++) {
+            Block block = blocks[start];
+            if (block != null && block.end > address) {
+                blocks[start] = null;
+            }
+        }
+    }
+
+    /**
+     * Throws away every compiled block
+     */
+    public void invalidateAll() {
+        Arrays.fill(blocks, null);
+    }
+
+    /**
+     * Compiles blocks ahead of the first run, so the program does not pay for decoding as it warms up.
+     * Each start gets a block, and compiling carries on from where a block ends as long as that is
+     * still a known instruction, since the engine splits code at more places than a control flow graph does
+     * @param starts addresses basic blocks start at
+     * @param code bit n set when a reachable instruction starts at address n
+     * @return int Number of blocks compiled
+     */
+    public int prebuild(int[] starts, BitSet code) {
+        checkInstructionTable();
+        int compiled = 0;
+        for (int start : starts) {
+            int address = start;
+            while (address < blocks.length && blocks[address] == null && code.get(address)) {
+                Block block = compile(address);
+                blocks[address] = block;
+                compiled++;
+                address = block.end;
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Starts from the blocks another engine compiled for the same program instead of compiling them again.
+     * Blocks never change once compiled, so engines can share them; a write only drops this engine's copy
+     * @param template engine running the same program with the same quirks and memory size
+     */
+    public void shareBlocks(BlockCacheEngine template) {
+        checkInstructionTable();
+        if (template.blocks.length != blocks.length || template.instructions != instructions) {
+            throw new IllegalArgumentException("Blocks were compiled for another machine or other quirks");
+        }
+        System.arraycopy(template.blocks, 0, blocks, 0, blocks.length);
+    }
+
+    /**
+     * Throws away the blocks when the chip's quirks changed since they were decoded
+     */
+    private void checkInstructionTable() {
+        if (chip.getInstructionTable() != instructions) {
+            instructions = chip.getInstructionTable();
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Decodes the block starting at an address.
+     * The block runs until the first instruction that may branch or write memory, which it includes
+     * @param start address of the first instruction
+     * @return Block
+     */
+    private Block compile(int start) {
+        Instruction[] instructions = new Instruction[MAX_BLOCK_LENGTH];
+        int length = 0;
+        int address = start;
+        while (length == 0 || (length < MAX_BLOCK_LENGTH && address + 1 < blocks.length)) {
+            char opcode = chip.readOpcode(address);
+            instructions[length++] = this.instructions.get(opcode);
+            address += INSTRUCTION_BYTES;
+            if (!InstructionTable.isStraightLine(opcode)) {
+                break;
+            }
+        }
+        return new Block(Arrays.copyOf(instructions, length), address);
+    }
+
+    /**
+     * A compiled run of instructions
+     */
+    private static final class Block {
+
+        // Decoded instructions, in program order
+        private final Instruction[] instructions;
+
+        // Address right after the last instruction
+        private final int end;
+
+        private Block(Instruction[] instructions, int end) {
+            this.instructions = instructions;
+            this.end = end;
+        }
+    }
+}
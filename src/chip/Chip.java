@@ -1,28 +1,28 @@
 package chip;
 
+import audio.AudioSink;
+import audio.AudioSinks;
+import audio.SilentAudioSink;
+import rom.QuirksDatabase;
+import rom.RomImage;
+import rom.RomLibrary;
 import util.NibbleUtil;
+import util.XorShiftRandom;
 
-import java.io.DataInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.Random;
-import javax.sound.midi.*;
 
 public class Chip {
     public static final double RUN_SPEED = 16.66;
-    private static final int MEMORY_BYTES = 4096;
     private static final int V_REGISTERS = 16;
     private static final int STACK_LENGTH = 16;
     private static final int KEYPAD_KEYS = 16;
-    private static final int PIXELS_PER_BYTE = 8;
-    private static final int DISPLAY_WIDTH = 64;
-    private static final int DISPLAY_HEIGHT = 32;
-    private static final int DISPLAY_RESOLUTION = DISPLAY_WIDTH * DISPLAY_HEIGHT;
-    private static final char MEMORY_ROM_START = 0x200;
-    private static final char FONT_MEMORY_START = 0x0050;
+    public static final char MEMORY_ROM_START = 0x200;
+    static final char FONT_MEMORY_START = 0x0050;
+    static final char BIG_FONT_MEMORY_START = 0x00A0;
+    private static final int FLAG_REGISTERS = 16;
     private static final char V_FLAG = 0xF;
-    private static final int NOTE_SOUND = 50;
     private static final int[] FONT_SET = {
             0xF0, 0x90, 0x90, 0x90, 0xF0, // 0
             0x20, 0x60, 0x20, 0x20, 0x70, // 1
@@ -41,9 +41,37 @@ public class Chip {
             0xF0, 0x80, 0xF0, 0x80, 0xF0, // E
             0xF0, 0x80, 0xF0, 0x80, 0x80  // F
     };
+    // 8x10 digits of the SUPER-CHIP large font, with the XO-CHIP letters
+    private static final int[] BIG_FONT_SET = {
+            0xFF, 0xFF, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xFF, 0xFF, // 0
+            0x18, 0x78, 0x78, 0x18, 0x18, 0x18, 0x18, 0x18, 0xFF, 0xFF, // 1
+            0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, // 2
+            0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, // 3
+            0xC3, 0xC3, 0xC3, 0xC3, 0xFF, 0xFF, 0x03, 0x03, 0x03, 0x03, // 4
+            0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, // 5
+            0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, // 6
+            0xFF, 0xFF, 0x03, 0x03, 0x06, 0x0C, 0x18, 0x18, 0x18, 0x18, // 7
+            0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, // 8
+            0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, // 9
+            0x7E, 0xFF, 0xC3, 0xC3, 0xC3, 0xFF, 0xFF, 0xC3, 0xC3, 0xC3, // A
+            0xFC, 0xFC, 0xC3, 0xC3, 0xFC, 0xFC, 0xC3, 0xC3, 0xFC, 0xFC, // B
+            0x3C, 0xFF, 0xC3, 0xC0, 0xC0, 0xC0, 0xC0, 0xC3, 0xFF, 0x3C, // C
+            0xFC, 0xFE, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xFE, 0xFC, // D
+            0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, // E
+            0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0xC0, 0xC0, 0xC0, 0xC0  // F
+    };
+
+    // Machine the chip emulates
+    private final MachineProfile profile;
+
+    // Behaviour of the opcodes that differ between interpreters, resolved when a ROM loads
+    private Quirks quirks;
+
+    // Instructions specialized for the quirks
+    private InstructionTable instructions;
 
     // RAM used by the interpreter
-    // Should be 4kb in size
+    // 4kb in size, 64kb for XO-CHIP
     private char[] memory;
 
     // General use registers
@@ -72,20 +100,72 @@ public class Chip {
     // Keypad used to control the program
     private byte[] keypad;
 
+    // Register Fx0A stores the next pressed key in, or -1 when not waiting for a key
+    private int keyWaitRegister;
+
+    // SUPER-CHIP flag registers, saved and loaded with Fx75 and Fx85
+    private char[] flags;
+
     // Monochrome display. Can contain 15 or 5 byte sprites
-    private byte[] display;
+    private Framebuffer display;
+
+    // One byte per pixel copy of the display, only created for getDisplay()
+    private byte[] displayPixels;
 
     // Flag to see if the screen needs to be redrawn
     private boolean redrawFlag;
 
-    // Midi synthesizer
-    private Synthesizer synthesizer;
+    // Plays the buzzer while the sound timer runs
+    private AudioSink audio;
+
+    // Whether the buzzer is on, only changes on sound timer edges
+    private boolean tone;
 
-    // Midi channel to play sounds
-    private MidiChannel midiChannel;
+    // Calls made to the audio sink, for metrics. Volatile since the metrics thread reads it
+    private volatile long audioCalls;
+
+    // Random number generator used by Cxkk
+    private XorShiftRandom random;
+
+    // Cycles run since the chip was created. Volatile since the metrics thread reads it,
+    // written once per execute() so the hot loop does not pay for it
+    private volatile long cycles;
+
+    // Engine used to execute instructions
+    private Engine engine;
+
+    // Notified whenever an instruction writes to memory
+    private MemoryListener memoryListener;
+
+    // Snapshot the memory pages were last captured into or restored from
+    private Snapshot lastSnapshot;
+
+    // Bit n set when memory page n was written after lastSnapshot
+    private long[] dirtyPages;
 
     public Chip() {
-        memory = new char[MEMORY_BYTES];
+        this(false);
+    }
+
+    /**
+     * Creates a CHIP-8 chip
+     * @param headless When true no audio device is opened, for running without a display or sound card
+     */
+    public Chip(boolean headless) {
+        this(MachineProfile.CHIP_8, headless);
+    }
+
+    /**
+     * Creates a chip
+     * @param profile machine to emulate
+     * @param headless When true no audio device is opened, for running without a display or sound card
+     */
+    public Chip(MachineProfile profile, boolean headless) {
+        this.profile = profile;
+        this.quirks = Quirks.forProfile(profile);
+        this.instructions = InstructionTable.forMachine(profile, quirks);
+        memory = new char[profile.getMemoryBytes()];
+        dirtyPages = new long[(Snapshot.pageCount(memory.length) + Long.SIZE - 1) / Long.SIZE];
         V = new char[V_REGISTERS];
         I = 0x0; // Set to null
 
@@ -97,26 +177,39 @@ public class Chip {
         pc = 0x200;
 
         keypad = new byte[KEYPAD_KEYS];
-        display = new byte[DISPLAY_RESOLUTION];
+        keyWaitRegister = -1;
+        flags = new char[FLAG_REGISTERS];
+        display = new Framebuffer(Framebuffer.WIDTH, Framebuffer.HEIGHT, profile.getPlanes());
         redrawFlag = false;
 
-        try {
-            synthesizer = MidiSystem.getSynthesizer();
-            synthesizer.open();
-            midiChannel = synthesizer.getChannels()[0];
-        } catch (MidiUnavailableException e) {
-            System.err.println("MIDI: No midi channels to play sounds on");
-        }
+        audio = headless ? new SilentAudioSink() : AudioSinks.open();
+
+        random = new XorShiftRandom();
+        engine = new Interpreter(this);
 
         loadFontset();
     }
 
     /**
-     * Returns the display data for the chip
+     * Returns the display data for the chip, one byte per pixel.
+     * The pixels are unpacked from the framebuffer on every call, prefer getFramebuffer()
      * @return byte[]
      */
     public byte[] getDisplay() {
-        return this.display;
+        int resolution = display.getWidth() * display.getHeight();
+        if (displayPixels == null || displayPixels.length != resolution) {
+            displayPixels = new byte[resolution];
+        }
+        display.toPixels(displayPixels);
+        return displayPixels;
+    }
+
+    /**
+     * Returns the bit-packed display
+     * @return Framebuffer
+     */
+    public Framebuffer getFramebuffer() {
+        return display;
     }
 
     /**
@@ -135,40 +228,435 @@ public class Chip {
         this.redrawFlag = flag;
     }
 
+    /**
+     * Returns the program counter
+     * @return char
+     */
+    public char getPc() {
+        return pc;
+    }
+
+    /**
+     * Returns the machine the chip emulates
+     * @return MachineProfile
+     */
+    public MachineProfile getProfile() {
+        return profile;
+    }
+
+    public Quirks getQuirks() {
+        return quirks;
+    }
+
+    /**
+     * Changes how the quirky opcodes behave from the next instruction on.
+     * Engines holding decoded instructions notice the new table and decode again
+     * @param quirks quirks
+     */
+    public void setQuirks(Quirks quirks) {
+        this.quirks = quirks;
+        this.instructions = InstructionTable.forMachine(profile, quirks);
+    }
+
+    /**
+     * Returns the instructions specialized for the chip's quirks
+     * @return InstructionTable
+     */
+    InstructionTable getInstructionTable() {
+        return instructions;
+    }
+
+    /**
+     * Returns the size of memory in bytes
+     * @return int
+     */
+    public int getMemorySize() {
+        return memory.length;
+    }
+
+    /**
+     * Returns the memory array itself, for engines that copy machine state
+     * @return char[]
+     */
+    char[] getMemory() {
+        return memory;
+    }
+
+    /**
+     * Returns the byte stored at an address
+     * @param address memory address
+     * @return char
+     */
+    public char getMemory(int address) {
+        return memory[address];
+    }
+
+    /**
+     * Returns the value of a V register
+     * @param x register
+     * @return char
+     */
+    public char getRegister(int x) {
+        return V[x];
+    }
+
+    /**
+     * Returns an entry of the call stack: the address of the 2nnn that made the call
+     * @param index stack slot, 0 is the outermost call
+     * @return char
+     */
+    public char getStackEntry(int index) {
+        return stack[index];
+    }
+
+    /**
+     * Returns the V registers array itself
+     * @return char[]
+     */
+    char[] getRegisters() {
+        return V;
+    }
+
+    /**
+     * Returns the stack array itself
+     * @return char[]
+     */
+    char[] getStack() {
+        return stack;
+    }
+
+    /**
+     * Returns the keypad array itself
+     * @return byte[]
+     */
+    byte[] getKeypad() {
+        return keypad;
+    }
+
+    /**
+     * Returns the random number generator used by Cxkk
+     * @return XorShiftRandom
+     */
+    XorShiftRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * Returns the index register
+     * @return char
+     */
+    public char getI() {
+        return I;
+    }
+
+    void setI(char I) {
+        this.I = I;
+    }
+
+    void setPc(char pc) {
+        this.pc = pc;
+    }
+
+    /**
+     * Returns the stack pointer, the number of subroutine calls that have not returned yet
+     * @return int
+     */
+    public int getSp() {
+        return sp;
+    }
+
+    void setSp(int sp) {
+        this.sp = sp;
+    }
+
+    int getDt() {
+        return dt;
+    }
+
+    void setDt(int dt) {
+        this.dt = dt;
+    }
+
+    int getSt() {
+        return st;
+    }
+
+    void setSt(int st) {
+        this.st = st;
+        updateTone();
+    }
+
+    /**
+     * Returns whether or not the program can no longer make progress on its own.
+     * This is the case when the current instruction jumps to itself (1nnn with nnn == pc)
+     * or waits for the next key press (Fx0A)
+     * @return boolean
+     */
+    public boolean isHalted() {
+        char opcode = readOpcode(pc);
+        if (opcode == 0x00FD && profile.isSuperChip()) {
+            return true;
+        }
+        if (NibbleUtil.getStartNibble(opcode) == 0x1000) {
+            return NibbleUtil.getNNN(opcode) == pc;
+        }
+        return NibbleUtil.getStartNibble(opcode) == 0xF000 && NibbleUtil.getEndNibble(opcode, true) == 0x000A;
+    }
+
+    /**
+     * Returns whether or not Fx0A is waiting for the next key press
+     * @return boolean
+     */
+    public boolean isWaitingForKey() {
+        return keyWaitRegister >= 0;
+    }
+
+    int getKeyWaitRegister() {
+        return keyWaitRegister;
+    }
+
+    void setKeyWaitRegister(int keyWaitRegister) {
+        this.keyWaitRegister = keyWaitRegister;
+    }
+
+    /**
+     * Returns the engine that executes instructions
+     * @return Engine
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Sets the engine that executes instructions
+     * @param engine engine bound to this chip
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Starts counting where cycles go by installing a profiling engine in front of the current one.
+     * Does nothing but return the running profiler if profiling already started
+     * @return ProfilingEngine
+     */
+    public ProfilingEngine startProfiling() {
+        if (engine instanceof ProfilingEngine profiler) {
+            return profiler;
+        }
+        ProfilingEngine profiler = new ProfilingEngine(this, engine);
+        this.engine = profiler;
+        return profiler;
+    }
+
+    /**
+     * Stops profiling and puts back the engine that ran before
+     */
+    public void stopProfiling() {
+        if (engine instanceof ProfilingEngine profiler) {
+            this.engine = profiler.getPrevious();
+        }
+    }
+
+    /**
+     * Sets the random number generator used by Cxkk
+     * @param random generator, seed it to make runs reproducible
+     */
+    public void setRandom(XorShiftRandom random) {
+        this.random = random;
+    }
+
+    /**
+     * Sets the listener notified about memory writes
+     * @param listener listener, or null to remove it
+     */
+    public void setMemoryListener(MemoryListener listener) {
+        this.memoryListener = listener;
+    }
+
     /**
      * Sets the keys for the keypad
      * @param keyBuffer
      */
     public void setKeypad(byte[] keyBuffer) {
         for(int i = 0; i < keypad.length; i++) {
+            if (keyBuffer[i] == 1 && keypad[i] != 1) {
+                keyPressed(i);
+            }
             keypad[i] = keyBuffer[i];
         }
     }
 
     /**
-     * Loads a chip-8 ROM into memory
+     * Sets which keys are held down
+     * @param mask bit n set when key n is held down
+     */
+    public void setKeys(int mask) {
+        for (int i = 0; i < keypad.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                keyPressed(i);
+            } else {
+                keyReleased(i);
+            }
+        }
+    }
+
+    /**
+     * Returns which keys are held down
+     * @return int Bit n set when key n is held down
+     */
+    public int getKeys() {
+        int mask = 0;
+        for (int i = 0; i < keypad.length; i++) {
+            if (keypad[i] == 1) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Holds a key down. A key that was up completes a pending Fx0A
+     * @param key key from 0x0 to 0xF
+     */
+    public void keyPressed(int key) {
+        if (keypad[key] == 1) {
+            return;
+        }
+        keypad[key] = 1;
+        if (keyWaitRegister >= 0) {
+            V[keyWaitRegister] = (char) key;
+            keyWaitRegister = -1;
+            nextInstruction();
+        }
+    }
+
+    /**
+     * Releases a key
+     * @param key key from 0x0 to 0xF
+     */
+    public void keyReleased(int key) {
+        keypad[key] = 0;
+    }
+
+    /**
+     * Captures the whole machine state.
+     * Memory pages not written since the previous snapshot are shared with it instead of copied
+     * @return Snapshot
+     */
+    public Snapshot snapshot() {
+        char[][] previous = lastSnapshot != null ? lastSnapshot.getPages() : null;
+        char[][] pages = new char[Snapshot.pageCount(memory.length)][];
+        for (int page = 0; page < pages.length; page++) {
+            if (previous != null && !isPageDirty(page)) {
+                pages[page] = previous[page];
+            } else {
+                int start = page * Snapshot.PAGE_BYTES;
+                pages[page] = Arrays.copyOfRange(memory, start, start + Snapshot.PAGE_BYTES);
+            }
+        }
+        Snapshot snapshot = new Snapshot(profile, pages, V.clone(), I, pc, stack.clone(), sp, dt, st,
+                keypad.clone(), keyWaitRegister, flags.clone(), display.getWidth(), display.getHeight(),
+                display.getPlaneMask(), display.copyPlanes(), redrawFlag, random.getState());
+        lastSnapshot = snapshot;
+        Arrays.fill(dirtyPages, 0L);
+        return snapshot;
+    }
+
+    /**
+     * Puts the machine back into a captured state.
+     * Only memory pages that differ from the current memory are copied
+     * @param snapshot state to restore
+     */
+    public void restore(Snapshot snapshot) {
+        char[][] current = lastSnapshot != null ? lastSnapshot.getPages() : null;
+        char[][] pages = snapshot.getPages();
+        if (snapshot.getProfile() != profile) {
+            throw new IllegalArgumentException("Snapshot of a " + snapshot.getProfile().getName()
+                    + " machine does not fit a " + profile.getName() + " chip");
+        }
+        for (int page = 0; page < pages.length; page++) {
+            // Memory still holds this exact page if it was not written since it was captured
+            boolean unchanged = current != null && current[page] == pages[page] && !isPageDirty(page);
+            if (!unchanged) {
+                int start = page * Snapshot.PAGE_BYTES;
+                System.arraycopy(pages[page], 0, memory, start, Snapshot.PAGE_BYTES);
+                if (memoryListener != null) {
+                    memoryListener.memoryWritten(start, Snapshot.PAGE_BYTES);
+                }
+            }
+        }
+        lastSnapshot = snapshot;
+        Arrays.fill(dirtyPages, 0L);
+
+        snapshot.copyRegisters(V, stack, keypad, flags);
+        display.restore(snapshot.getDisplayWidth(), snapshot.getDisplayHeight(), snapshot.getPlaneMask(),
+                snapshot.getDisplay());
+        I = snapshot.getI();
+        pc = snapshot.getPc();
+        sp = snapshot.getSp();
+        keyWaitRegister = snapshot.getKeyWaitRegister();
+        dt = snapshot.getDt();
+        st = snapshot.getSt();
+        updateTone();
+        redrawFlag = snapshot.getRedrawFlag();
+        random.setSeed(snapshot.getRandomState());
+    }
+
+    /**
+     * Returns whether a memory page was written since the last snapshot
+     * @param page page index
+     * @return boolean
+     */
+    private boolean isPageDirty(int page) {
+        return (dirtyPages[page >> 6] & (1L << page)) != 0;
+    }
+
+    /**
+     * Loads a chip-8 ROM into memory through the shared ROM library, so a file is read from disk only once
      * @param rom file location of the ROM
      * @return boolean True if success, false if not
      */
     public boolean loadRom(String rom) {
-        DataInputStream stream = null;
         try {
-            stream = new DataInputStream(new FileInputStream(rom));
-            for (int i = 0; stream.available() > 0; i++) {
-                memory[MEMORY_ROM_START + i] = (char) (stream.readByte() & 0xFF);
-            }
-            stream.close();
-            return true;
+            return loadRom(RomLibrary.getShared().load(Paths.get(rom)));
         } catch (IOException e) {
-            if (stream != null) {
-                try {
-                    stream.close();
-                } catch (IOException e2) {
-                    return false;
-                }
-            }
+            System.err.println("ROM: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Loads a chip-8 program that is already in memory on the host.
+     * The chip keeps its quirks since the program is not looked up
+     * @param rom program bytes
+     * @return boolean True if success, false if the program does not fit in memory
+     */
+    public boolean loadRom(byte[] rom) {
+        if (rom.length > memory.length - MEMORY_ROM_START) {
+            return false;
+        }
+        for (int i = 0; i < rom.length; i++) {
+            memory[MEMORY_ROM_START + i] = (char) (rom[i] & 0xFF);
+        }
+        memoryWritten(MEMORY_ROM_START, rom.length);
+        return true;
+    }
+
+    /**
+     * Loads a cached ROM image into memory with a single bulk copy,
+     * and switches to the quirks the shared quirks database has for it
+     * @param rom program image
+     * @return boolean True if success, false if the program does not fit in memory
+     */
+    public boolean loadRom(RomImage rom) {
+        if (rom.getSize() > memory.length - MEMORY_ROM_START) {
             return false;
         }
+        setQuirks(QuirksDatabase.getShared().lookup(rom.getHash(), profile));
+        rom.copyTo(memory, MEMORY_ROM_START);
+        memoryWritten(MEMORY_ROM_START, rom.getSize());
+        return true;
     }
 
     /**
@@ -178,281 +666,743 @@ public class Chip {
         for (int i = 0; i < FONT_SET.length; i++) {
             memory[FONT_MEMORY_START + i] = (char) (FONT_SET[i] & 0xFF);
         }
+        memoryWritten(FONT_MEMORY_START, FONT_SET.length);
+        if (profile.isSuperChip()) {
+            for (int i = 0; i < BIG_FONT_SET.length; i++) {
+                memory[BIG_FONT_MEMORY_START + i] = (char) BIG_FONT_SET[i];
+            }
+            memoryWritten(BIG_FONT_MEMORY_START, BIG_FONT_SET.length);
+        }
+    }
+
+    /**
+     * Marks the written memory pages dirty and tells the memory listener, if any, that memory has changed
+     * @param address first address written
+     * @param length number of bytes written
+     */
+    void memoryWritten(int address, int length) {
+        int last = Math.min(address + length - 1, memory.length - 1) / Snapshot.PAGE_BYTES;
+        for (int page = address / Snapshot.PAGE_BYTES; page <= last; page++) {
+            dirtyPages[page >> 6] |= 1L << page;
+        }
+        if (memoryListener != null) {
+            memoryListener.memoryWritten(address, length);
+        }
+    }
+
+    /**
+     * Returns the opcode stored at an address
+     * @param address memory address
+     * @return char
+     */
+    char readOpcode(int address) {
+        return (char)((memory[address] << 8) | memory[address + 1]);
     }
 
     /**
-     * Decreases delay and sound timers by 1
+     * Decreases delay and sound timers by 1. Should be called at 60Hz
      */
-    private void decreaseTimers() {
+    public void tickTimers() {
         if (dt > 0) dt--;
-        if (st > 0) st--;
+        if (st > 0) {
+            st--;
+            if (st == 0) updateTone();
+        }
     }
 
     /**
      * Emulates one cycle for the CHIP-8
-     * Gets the opcode and performs the correct operation
-     * Also decreases timers
+     * Gets the opcode, looks up its pre-decoded instruction and performs it
+     * Timers are not touched, see tickTimers() and runFrame()
      */
     public void run() {
-        char opcode = (char)((memory[pc] << 8) | memory[pc + 1]);
-        char nibble = NibbleUtil.getStartNibble(opcode);
-        int x = NibbleUtil.getX(opcode);
-        int y = NibbleUtil.getY(opcode);
-        int kk = NibbleUtil.getKK(opcode);
-        int nnn = NibbleUtil.getNNN(opcode);
-
-        switch (nibble) {
-            case 0x0000: // 0nnn, 00E0, 00EE
-                switch (NibbleUtil.getEndNibble(opcode, true)) {
-                    case 0x00E0:  { // clear display
-                        Arrays.fill(display, (byte) 0);
-                        nextInstruction();
-                        setRedrawFlag(true);
-                        break;
-                    }
-                    case 0x00EE:
-                        sp--;
-                        pc = (char) (stack[sp] + 2);
-                        break;
-                    default:
-                        break;
-                }
-                break;
-            case 0x1000: // 1nnn
-                pc = (char) nnn;
-                break;
-            case 0x2000: // 2nnn
-                stack[sp] = pc;
-                sp++;
-                pc = (char) nnn;
-                break;
-            case 0x3000: // 3xkk
-                if (V[x] == kk) {
-                    skipInstruction();
-                } else {
-                    nextInstruction();
-                }
-                break;
-            case 0x4000: // 4xkk
-                if (V[x] != kk) {
-                    skipInstruction();
-                } else {
-                    nextInstruction();
-                }
-                break;
-            case 0x5000: // 5xy0
-                if (V[x] == V[y]) {
-                    skipInstruction();
-                } else {
-                    nextInstruction();
-                }
-                break;
-            case 0x6000: // 6xkk
-                // Vx = kk
-                V[x] = (char) kk;
-                nextInstruction();
-                break;
-            case 0x7000: // 7xkk
-                // Vx = v[x] + kk
-                V[x] = (char) ((V[x] + kk) & 0xFF);
-                nextInstruction();
-                break;
-            case 0x8000: // 8xy0, 8xy1, 8xy2, 8xy3, 8xy4, 8xy5, 8xy6, 8xy7, 8xyE
-                switch (NibbleUtil.getEndNibble(opcode)) {
-                    case 0x0000:
-                        V[x] = V[y];
-                        nextInstruction();
-                        break;
-                    case 0x0001:
-                        V[x] = (char)(V[x] | V[y]);
-                        nextInstruction();
-                        break;
-                    case 0x0002: // 8xy2
-                        V[x] = (char)(V[x] & V[y]);
-                        nextInstruction();
-                        break;
-                    case 0x0003:
-                        V[x] = (char)(V[x] ^ V[y]);
-                        nextInstruction();
-                        break;
-                    case 0x0004: // 8xy4
-                        V[x] = (char)(V[x] + V[y]);
-                        if (V[x] > 255) {
-                            V[0xF] = 1;
-                        } else {
-                            V[0xF] = 0;
-                        }
-                        nextInstruction();
-                        break;
-                    case 0x0005:
-                        if (V[x] > V[y]) {
-                            V[0xF] = 1;
-                        } else {
-                            V[0xF] = 0;
-                        }
-                        V[x] = (char) (V[x] - V[y]);
-                        nextInstruction();
-                        break;
-                    case 0x0006:
-                        V[V_FLAG] = (char) (V[x] & 0x1);
-                        V[x] >>= 1; // divide by 2 by shifting bit to right
-                        nextInstruction();
-                        break;
-                    case 0x0007:
-                        if (V[y] > V[x]) {
-                            V[V_FLAG] = 1;
-                        } else {
-                            V[V_FLAG] = 0;
-                        }
-                        V[x] = (char) (V[y] - V[x]);
-                        nextInstruction();
-                        break;
-                    case 0x000E:
-                        V[V_FLAG] = (char) (V[x] & 0x80);
-                        V[x] <<= 1; // multiply by 2 by shifting bit to left
-                        nextInstruction();
-                        break;
-                    default:
-                        System.out.println("Unsupported Opcode: " + opcode);
-                        System.exit(-1);
-                        break;
-                }
-                break;
-            case 0x9000: // 9xy0
-                if (V[x] != V[y]) {
-                    skipInstruction();
-                } else {
-                    nextInstruction();
-                }
-                break;
-            case 0xA000: // Annn
-                I = (char) nnn;
-                nextInstruction();
-                break;
-            case 0xB000: // Bnnn
-                pc = (char) (nnn + V[0]);
-                break;
-            case 0xC000: // Cxkk
-                int randomNumber = new Random().nextInt(256) & kk;
-                V[x] = (char) randomNumber;
-                nextInstruction();
-                break;
-            case 0xD000:  { // Dxyn
-                int cX = V[x]; // coordinate X
-                int cY = V[y]; // coordinate Y
-                int height = opcode & 0x000F; // pixel size: always 8 by X (last 4 bytes will tell us x)
-                V[V_FLAG] = 0;
-
-                // Draw a sprite on the screen at (Vx, Vy) and set Vf to true if collision occurs
-                for (int i = 0; i < height; i++) { // Draw a pixel (8, i) using i
-                    int row = memory[this.I + i];
-                    for (int j = 0; j < PIXELS_PER_BYTE; j++) { // Draw a pixel (8, i) using 8 (j in this case)
-                        int pixel = row & (0x80 >> j);
-                        if (pixel != 0) {
-                            int totalX = (cX + j) % DISPLAY_WIDTH;
-                            int totalY = (cY + i) % DISPLAY_HEIGHT;
-                            int index = (totalY * DISPLAY_WIDTH) + totalX;
-
-                            if (display[index] == 1) { // XOR: check if it's active
-                                V[V_FLAG] = 1;
-                            }
-
-                            display[index] ^= 1;
-                        }
-                    }
-                }
+        instructions.get(readOpcode(pc)).execute(this);
+    }
 
-                nextInstruction();
-                setRedrawFlag(true);
-                break;
-            }
-            case 0xE000: // Ex9E, ExA1
-                switch (NibbleUtil.getEndNibble(opcode)) {
-                    case 0x0001 -> {
-                        int isNotPressed = 0;
-                        if (keypad[V[x]] == isNotPressed) {
-                            skipInstruction();
-                        } else {
-                            nextInstruction();
-                        }
-                    }
-                    case 0x000E -> {
-                        int isPressed = 1;
-                        if (keypad[V[x]] == isPressed) {
-                            skipInstruction();
-                        } else {
-                            nextInstruction();
-                        }
-                    }
-                    default -> System.err.println("Unsupported Opcode: " + opcode);
-                }
-                break;
-            case 0xF000: //  Fx07, Fx0A, Fx15, Fx18, Fx1E, Fx29, Fx33, Fx55, Fx65
-                switch (NibbleUtil.getEndNibble(opcode, true)) {
-                    case 0x0007 -> {
-                        V[x] = (char) dt;
-                        nextInstruction();
-                    }
-                    case 0x000A -> {
-                        int isPressed = 1;
-                        for (int i = 0; i < keypad.length; i++) {
-                            if (keypad[i] == isPressed) {
-                                V[x] = (char) i;
-                                nextInstruction();
-                                break;
-                            }
-                        }
-                    }
-                    case 0x0015 -> {
-                        dt = V[x];
-                        nextInstruction();
-                    }
-                    case 0x0018 -> {
-                        st = V[x];
-                        nextInstruction();
-                    }
-                    case 0x001E -> {
-                        I = (char) (I + V[x]);
-                        nextInstruction();
-                    }
-                    case 0x0029 -> {
-                        I = (char) (FONT_MEMORY_START + (V[x] * 5));
-                        nextInstruction();
-                    }
-                    case 0x0033 -> {
-                        int tempVx = V[x];
-                        int hundreds = (tempVx - (tempVx % 100)) / 100;
-                        tempVx -= hundreds * 100;
-                        int tens = (tempVx - (tempVx % 10)) / 10;
-                        tempVx -= tens * 10;
-                        memory[I] = (char) hundreds;
-                        memory[I + 1] = (char) tens;
-                        memory[I + 2] = (char) tempVx;
-                        nextInstruction();
-                    }
-                    case 0x0055 -> {
-                        for (int i = 0; i <= x; i++) {
-                            memory[this.I + i] = V[i];
-                        }
-                        I = (char) (I + x + 1);
-                        nextInstruction();
-                    }
-                    case 0x0065 -> {
-                        for (int i = 0; i <= x; i++) {
-                            V[i] = memory[this.I + i];
-                        }
-                        I = (char) (I + x + 1);
-                        nextInstruction();
-                    }
-                }
-                break;
-            default:
-                System.err.println("ERROR: Unsupported opcode. Shutting down...");
-                System.exit(-1);
-                break;
+    /**
+     * Runs a number of cycles with the current engine
+     * @param cycles number of cycles to run
+     * @return long Number of cycles executed
+     */
+    public long execute(long cycles) {
+        long executed = engine.execute(cycles);
+        this.cycles += executed;
+        return executed;
+    }
+
+    /**
+     * Emulates one 60Hz frame: runs a number of cycles with the current engine, then ticks the timers once.
+     * While Fx0A waits for a key no instructions run, only the timers tick.
+     * While the engine is paused, by a debugger for example, nothing runs and the timers stand still
+     * @param instructionsPerFrame number of cycles to run
+     * @return long Number of cycles executed
+     */
+    public long runFrame(int instructionsPerFrame) {
+        if (engine.isPaused()) {
+            return 0;
+        }
+        long executed = 0;
+        if (keyWaitRegister < 0) {
+            executed = execute(instructionsPerFrame);
         }
-        decreaseTimers();
-        playSound();
+        tickTimers();
+        return executed;
+    }
+
+    /**
+     * Returns the number of calls made to the audio sink, one per sound timer edge
+     * @return long
+     */
+    public long getAudioCalls() {
+        return audioCalls;
+    }
+
+    /**
+     * Sets the sink the buzzer plays through, closing the current one
+     * @param audio audio sink
+     */
+    public void setAudioSink(AudioSink audio) {
+        this.audio.close();
+        this.audio = audio;
+        tone = false;
+        updateTone();
+    }
+
+    /**
+     * Returns the number of cycles run through execute() and runFrame() since the chip was created
+     * @return long
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * 00E0: Clears the display
+     */
+    void clearScreen() {
+        display.clear();
+        nextInstruction();
+        setRedrawFlag(true);
+    }
+
+    /**
+     * 00EE: Returns from a subroutine
+     */
+    void returnFromSubroutine() {
+        // Read before moving sp, so a return with an empty stack throws with the state untouched
+        pc = (char) (stack[sp - 1] + 2);
+        sp--;
+    }
+
+    /**
+     * 1nnn: Jumps to address nnn
+     * @param nnn address
+     */
+    void jump(int nnn) {
+        pc = (char) nnn;
+    }
+
+    /**
+     * 2nnn: Calls the subroutine at address nnn
+     * @param nnn address
+     */
+    void call(int nnn) {
+        stack[sp] = pc;
+        sp++;
+        pc = (char) nnn;
+    }
+
+    /**
+     * 3xkk: Skips the next instruction if Vx == kk
+     * @param x register
+     * @param kk byte
+     */
+    void skipIfEqual(int x, int kk) {
+        if (V[x] == kk) {
+            skipInstruction();
+        } else {
+            nextInstruction();
+        }
+    }
+
+    /**
+     * 4xkk: Skips the next instruction if Vx != kk
+     * @param x register
+     * @param kk byte
+     */
+    void skipIfNotEqual(int x, int kk) {
+        if (V[x] != kk) {
+            skipInstruction();
+        } else {
+            nextInstruction();
+        }
+    }
+
+    /**
+     * 5xy0: Skips the next instruction if Vx == Vy
+     * @param x register
+     * @param y register
+     */
+    void skipIfRegistersEqual(int x, int y) {
+        if (V[x] == V[y]) {
+            skipInstruction();
+        } else {
+            nextInstruction();
+        }
+    }
+
+    /**
+     * 6xkk: Vx = kk
+     * @param x register
+     * @param kk byte
+     */
+    void load(int x, int kk) {
+        V[x] = (char) kk;
+        nextInstruction();
+    }
+
+    /**
+     * 7xkk: Vx = Vx + kk
+     * @param x register
+     * @param kk byte
+     */
+    void add(int x, int kk) {
+        V[x] = (char) ((V[x] + kk) & 0xFF);
+        nextInstruction();
+    }
+
+    /**
+     * 8xy0: Vx = Vy
+     * @param x register
+     * @param y register
+     */
+    void loadRegister(int x, int y) {
+        V[x] = V[y];
+        nextInstruction();
+    }
+
+    /**
+     * 8xy1: Vx = Vx OR Vy
+     * @param x register
+     * @param y register
+     */
+    void or(int x, int y) {
+        V[x] = (char)(V[x] | V[y]);
+        nextInstruction();
+    }
+
+    /**
+     * 8xy2: Vx = Vx AND Vy
+     * @param x register
+     * @param y register
+     */
+    void and(int x, int y) {
+        V[x] = (char)(V[x] & V[y]);
+        nextInstruction();
+    }
+
+    /**
+     * 8xy3: Vx = Vx XOR Vy
+     * @param x register
+     * @param y register
+     */
+    void xor(int x, int y) {
+        V[x] = (char)(V[x] ^ V[y]);
+        nextInstruction();
+    }
+
+    /**
+     * 8xy4: Vx = Vx + Vy, VF = carry.
+     * Like the other 8xyN flag instructions VF is written last, so it holds the flag when x is F
+     * @param x register
+     * @param y register
+     */
+    void addRegisters(int x, int y) {
+        int sum = V[x] + V[y];
+        V[x] = (char) (sum & 0xFF);
+        V[V_FLAG] = (char) (sum >> 8);
+        nextInstruction();
+    }
+
+    /**
+     * 8xy5: Vx = Vx - Vy, VF = NOT borrow
+     * @param x register
+     * @param y register
+     */
+    void subtract(int x, int y) {
+        char flag = (char) (V[x] >= V[y] ? 1 : 0);
+        V[x] = (char) ((V[x] - V[y]) & 0xFF);
+        V[V_FLAG] = flag;
+        nextInstruction();
+    }
+
+    /**
+     * 8xy6: Vx = Vx SHR 1, VF = shifted out bit
+     * @param x register
+     */
+    void shiftRight(int x) {
+        char flag = (char) (V[x] & 0x1);
+        V[x] >>= 1; // divide by 2 by shifting bit to right
+        V[V_FLAG] = flag;
+        nextInstruction();
+    }
+
+    /**
+     * 8xy6 with the shift quirk: Vx = Vy SHR 1, VF = shifted out bit
+     * @param x register
+     * @param y register
+     */
+    void shiftRightFrom(int x, int y) {
+        char flag = (char) (V[y] & 0x1);
+        V[x] = (char) (V[y] >> 1);
+        V[V_FLAG] = flag;
+        nextInstruction();
+    }
+
+    /**
+     * 8xy7: Vx = Vy - Vx, VF = NOT borrow
+     * @param x register
+     * @param y register
+     */
+    void subtractReverse(int x, int y) {
+        char flag = (char) (V[y] >= V[x] ? 1 : 0);
+        V[x] = (char) ((V[y] - V[x]) & 0xFF);
+        V[V_FLAG] = flag;
+        nextInstruction();
+    }
+
+    /**
+     * 8xyE: Vx = Vx SHL 1, VF = shifted out bit
+     * @param x register
+     */
+    void shiftLeft(int x) {
+        char flag = (char) (V[x] >> 7);
+        V[x] = (char) ((V[x] << 1) & 0xFF); // multiply by 2 by shifting bit to left
+        V[V_FLAG] = flag;
+        nextInstruction();
+    }
+
+    /**
+     * 8xyE with the shift quirk: Vx = Vy SHL 1, VF = shifted out bit
+     * @param x register
+     * @param y register
+     */
+    void shiftLeftFrom(int x, int y) {
+        char flag = (char) (V[y] >> 7);
+        V[x] = (char) ((V[y] << 1) & 0xFF);
+        V[V_FLAG] = flag;
+        nextInstruction();
+    }
+
+    /**
+     * 9xy0: Skips the next instruction if Vx != Vy
+     * @param x register
+     * @param y register
+     */
+    void skipIfRegistersNotEqual(int x, int y) {
+        if (V[x] != V[y]) {
+            skipInstruction();
+        } else {
+            nextInstruction();
+        }
+    }
+
+    /**
+     * Annn: I = nnn
+     * @param nnn address
+     */
+    void loadIndex(int nnn) {
+        I = (char) nnn;
+        nextInstruction();
+    }
+
+    /**
+     * Bnnn: Jumps to address nnn + V0
+     * @param nnn address
+     */
+    void jumpOffset(int nnn) {
+        pc = (char) (nnn + V[0]);
+    }
+
+    /**
+     * Bxnn with the jump quirk: Jumps to address xnn + Vx
+     * @param nnn address
+     * @param x register, the top nibble of the address
+     */
+    void jumpOffset(int nnn, int x) {
+        pc = (char) (nnn + V[x]);
+    }
+
+    /**
+     * Cxkk: Vx = random byte AND kk
+     * @param x register
+     * @param kk byte
+     */
+    void random(int x, int kk) {
+        int randomNumber = random.nextByte() & kk;
+        V[x] = (char) randomNumber;
+        nextInstruction();
+    }
+
+    /**
+     * Dxyn: Draws an n byte sprite from memory at I at (Vx, Vy), VF = collision
+     * @param x register
+     * @param y register
+     * @param height sprite height in bytes
+     */
+    void draw(int x, int y, int height) {
+        int cX = V[x]; // coordinate X
+        int cY = V[y]; // coordinate Y
+
+        // Draw a sprite on the screen at (Vx, Vy) and set Vf to true if collision occurs.
+        boolean collision = display.drawSprite(cX, cY, memory, I, height);
+        V[V_FLAG] = (char) (collision ? 1 : 0);
+
+        nextInstruction();
+        setRedrawFlag(true);
+    }
+
+    /**
+     * Dxy0: Draws a 16x16 sprite from memory at I at (Vx, Vy), VF = collision. SUPER-CHIP
+     * @param x register
+     * @param y register
+     */
+    void drawWide(int x, int y) {
+        boolean collision = display.drawWideSprite(V[x], V[y], memory, I);
+        V[V_FLAG] = (char) (collision ? 1 : 0);
+
+        nextInstruction();
+        setRedrawFlag(true);
+    }
+
+    /**
+     * Dxyn with the clipping quirk: like draw() but pixels past the right and bottom edges are dropped
+     * @param x register
+     * @param y register
+     * @param height sprite height in bytes
+     */
+    void drawClipped(int x, int y, int height) {
+        boolean collision = display.drawSpriteClipped(V[x], V[y], memory, I, height);
+        V[V_FLAG] = (char) (collision ? 1 : 0);
+
+        nextInstruction();
+        setRedrawFlag(true);
+    }
+
+    /**
+     * Dxy0 with the clipping quirk: like drawWide() but pixels past the right and bottom edges are dropped
+     * @param x register
+     * @param y register
+     */
+    void drawWideClipped(int x, int y) {
+        boolean collision = display.drawWideSpriteClipped(V[x], V[y], memory, I);
+        V[V_FLAG] = (char) (collision ? 1 : 0);
+
+        nextInstruction();
+        setRedrawFlag(true);
+    }
+
+    /**
+     * Ex9E: Skips the next instruction if the key in Vx is pressed
+     * @param x register
+     */
+    void skipIfKeyPressed(int x) {
+        int isPressed = 1;
+        if (keypad[V[x]] == isPressed) {
+            skipInstruction();
+        } else {
+            nextInstruction();
+        }
+    }
+
+    /**
+     * ExA1: Skips the next instruction if the key in Vx is not pressed
+     * @param x register
+     */
+    void skipIfKeyNotPressed(int x) {
+        int isNotPressed = 0;
+        if (keypad[V[x]] == isNotPressed) {
+            skipInstruction();
+        } else {
+            nextInstruction();
+        }
+    }
+
+    /**
+     * Fx07: Vx = delay timer
+     * @param x register
+     */
+    void loadDelayTimer(int x) {
+        V[x] = (char) dt;
+        nextInstruction();
+    }
+
+    /**
+     * Fx0A: Waits for the next key press and stores the key in Vx.
+     * The program counter stays on this instruction until keyPressed() completes it
+     * @param x register
+     */
+    void waitForKey(int x) {
+        keyWaitRegister = x;
+    }
+
+    /**
+     * Fx15: delay timer = Vx
+     * @param x register
+     */
+    void setDelayTimer(int x) {
+        dt = V[x];
+        nextInstruction();
+    }
+
+    /**
+     * Fx18: sound timer = Vx
+     * @param x register
+     */
+    void setSoundTimer(int x) {
+        st = V[x];
+        updateTone();
+        nextInstruction();
+    }
+
+    /**
+     * Fx1E: I = I + Vx
+     * @param x register
+     */
+    void addIndex(int x) {
+        I = (char) (I + V[x]);
+        nextInstruction();
+    }
+
+    /**
+     * Fx29: I = location of the font sprite for the digit in Vx
+     * @param x register
+     */
+    void loadFont(int x) {
+        I = (char) (FONT_MEMORY_START + (V[x] * 5));
+        nextInstruction();
+    }
+
+    /**
+     * Fx33: Stores the BCD representation of Vx at I, I + 1 and I + 2
+     * @param x register
+     */
+    void storeBcd(int x) {
+        int tempVx = V[x];
+        int hundreds = (tempVx - (tempVx % 100)) / 100;
+        tempVx -= hundreds * 100;
+        int tens = (tempVx - (tempVx % 10)) / 10;
+        tempVx -= tens * 10;
+        // Highest address first, so a store past the end of memory throws before anything changes
+        memory[I + 2] = (char) tempVx;
+        memory[I + 1] = (char) tens;
+        memory[I] = (char) hundreds;
+        memoryWritten(I, 3);
+        nextInstruction();
+    }
+
+    /**
+     * Fx55: Stores V0 to Vx in memory starting at I
+     * @param x last register
+     */
+    void storeRegisters(int x) {
+        // Highest address first, so a store past the end of memory throws before anything changes
+        for (int i = x; i >= 0; i--) {
+            memory[this.I + i] = V[i];
+        }
+        memoryWritten(I, x + 1);
+        I = (char) (I + x + 1);
+        nextInstruction();
+    }
+
+    /**
+     * Fx65: Reads V0 to Vx from memory starting at I
+     * @param x last register
+     */
+    void loadRegisters(int x) {
+        for (int i = x; i >= 0; i--) {
+            V[i] = memory[this.I + i];
+        }
+        I = (char) (I + x + 1);
+        nextInstruction();
+    }
+
+    /**
+     * Fx55 without the increment quirk: Stores V0 to Vx in memory starting at I, I is unchanged
+     * @param x last register
+     */
+    void storeRegistersKeepIndex(int x) {
+        for (int i = x; i >= 0; i--) {
+            memory[this.I + i] = V[i];
+        }
+        memoryWritten(I, x + 1);
+        nextInstruction();
+    }
+
+    /**
+     * Fx65 without the increment quirk: Reads V0 to Vx from memory starting at I, I is unchanged
+     * @param x last register
+     */
+    void loadRegistersKeepIndex(int x) {
+        for (int i = x; i >= 0; i--) {
+            V[i] = memory[this.I + i];
+        }
+        nextInstruction();
+    }
+
+    /**
+     * 00Cn: Scrolls the display down n rows. SUPER-CHIP.
+     * Like the other extended opcodes it is only in the instruction tables of machines with the extension
+     * @param n number of rows
+     */
+    void scrollDown(int n) {
+        display.scrollDown(n);
+        nextInstruction();
+        setRedrawFlag(true);
+    }
+
+    /**
+     * 00Dn: Scrolls the display up n rows. XO-CHIP
+     * @param n number of rows
+     */
+    void scrollUp(int n) {
+        display.scrollUp(n);
+        nextInstruction();
+        setRedrawFlag(true);
+    }
+
+    /**
+     * 00FB: Scrolls the display right 4 pixels. SUPER-CHIP
+     */
+    void scrollRight() {
+        display.scrollRight(4);
+        nextInstruction();
+        setRedrawFlag(true);
+    }
+
+    /**
+     * 00FC: Scrolls the display left 4 pixels. SUPER-CHIP
+     */
+    void scrollLeft() {
+        display.scrollLeft(4);
+        nextInstruction();
+        setRedrawFlag(true);
+    }
+
+    /**
+     * 00FD: Exits the program. The program counter stays here so the chip counts as halted. SUPER-CHIP
+     */
+    void exit() {
+        // Nothing to do: isHalted() recognises the opcode under pc
+    }
+
+    /**
+     * 00FE: Switches to the 64x32 low resolution display and clears it. SUPER-CHIP
+     */
+    void lowResolution() {
+        display.resize(Framebuffer.WIDTH, Framebuffer.HEIGHT);
+        nextInstruction();
+        setRedrawFlag(true);
+    }
+
+    /**
+     * 00FF: Switches to the 128x64 high resolution display and clears it. SUPER-CHIP
+     */
+    void highResolution() {
+        display.resize(Framebuffer.HIRES_WIDTH, Framebuffer.HIRES_HEIGHT);
+        nextInstruction();
+        setRedrawFlag(true);
+    }
+
+    /**
+     * 5xy2: Stores Vx to Vy, in either order, in memory starting at I. I is unchanged. XO-CHIP.
+     * Other machines decode it as 5xy0
+     * @param x first register
+     * @param y last register
+     */
+    void storeRange(int x, int y) {
+        int step = x <= y ? 1 : -1;
+        int count = Math.abs(y - x) + 1;
+        for (int i = count - 1; i >= 0; i--) {
+            memory[I + i] = V[x + i * step];
+        }
+        memoryWritten(I, count);
+        nextInstruction();
+    }
+
+    /**
+     * 5xy3: Reads Vx to Vy, in either order, from memory starting at I. I is unchanged. XO-CHIP.
+     * Other machines decode it as 5xy0
+     * @param x first register
+     * @param y last register
+     */
+    void loadRange(int x, int y) {
+        int step = x <= y ? 1 : -1;
+        int count = Math.abs(y - x) + 1;
+        for (int i = count - 1; i >= 0; i--) {
+            V[x + i * step] = memory[I + i];
+        }
+        nextInstruction();
+    }
+
+    /**
+     * F000 nnnn: I = the 16 bit address in the next two bytes. XO-CHIP
+     */
+    void loadLongIndex() {
+        I = readOpcode(pc + 2);
+        this.pc += 4;
+    }
+
+    /**
+     * Fn01: Selects the display planes that drawing, clearing and scrolling apply to. XO-CHIP
+     * @param n plane mask
+     */
+    void selectPlanes(int n) {
+        display.setPlaneMask(n);
+        nextInstruction();
+    }
+
+    /**
+     * F002 and Fx3A: Load the audio pattern and set the pitch. XO-CHIP.
+     * The buzzer plays a fixed square wave, so both are accepted and ignored
+     */
+    void audioControl() {
+        nextInstruction();
+    }
+
+    /**
+     * Fx30: I = location of the large font sprite for the digit in Vx. SUPER-CHIP
+     * @param x register
+     */
+    void loadBigFont(int x) {
+        I = (char) (BIG_FONT_MEMORY_START + (V[x] & 0xF) * 10);
+        nextInstruction();
+    }
+
+    /**
+     * Fx75: Stores V0 to Vx in the flag registers. SUPER-CHIP
+     * @param x last register
+     */
+    void storeFlags(int x) {
+        System.arraycopy(V, 0, flags, 0, x + 1);
+        nextInstruction();
+    }
+
+    /**
+     * Fx85: Reads V0 to Vx from the flag registers. SUPER-CHIP
+     * @param x last register
+     */
+    void loadFlags(int x) {
+        System.arraycopy(flags, 0, V, 0, x + 1);
+        nextInstruction();
+    }
+
+    /**
+     * Handles an opcode that the emulator does not know about by stopping the chip
+     * @param opcode CHIP-8 machine instruction
+     */
+    void unsupported(char opcode) {
+        throw new UnsupportedOpcodeException(opcode, pc);
     }
 
     /**
@@ -470,14 +1420,25 @@ public class Chip {
     }
 
     /**
-     * Plays a "beep" sound
+     * Finishes a skip on XO-CHIP: when the skip from an address passed over the first half
+     * of the 4 byte F000 nnnn, skips its second half too
+     * @param from address of the skip instruction
      */
-    private void playSound() {
-        if (st > 0) {
-            midiChannel.noteOn(NOTE_SOUND, 60);
+    void skipLongInstruction(char from) {
+        if (pc == (char) (from + 4) && readOpcode(from + 2) == 0xF000) {
+            this.pc += 2;
         }
-        if (sp == 0 && midiChannel != null) {
-            midiChannel.noteOff(NOTE_SOUND);
+    }
+
+    /**
+     * Turns the buzzer on or off when the sound timer starts or stops running
+     */
+    private void updateTone() {
+        boolean on = st > 0;
+        if (on != tone) {
+            tone = on;
+            audio.setTone(on);
+            audioCalls++;
         }
     }
 
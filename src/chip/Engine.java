@@ -0,0 +1,23 @@
+package chip;
+
+/**
+ * Executes instructions for the chip it is bound to
+ */
+public interface Engine {
+
+    /**
+     * Runs a number of cycles
+     * @param cycles number of cycles to run
+     * @return long Number of cycles executed
+     */
+    long execute(long cycles);
+
+    /**
+     * Returns whether the engine is holding the chip still, in which case runFrame()
+     * neither runs instructions nor ticks the timers
+     * @return boolean
+     */
+    default boolean isPaused() {
+        return false;
+    }
+}
@@ -0,0 +1,22 @@
+package chip;
+
+/**
+ * Gets called by the scheduler around emulated frames
+ */
+public interface FrameListener {
+
+    /**
+     * Called before each emulated frame runs, for example to feed it input
+     * @param chip chip about to run a frame
+     * @return boolean False to skip running this frame, for example while rewinding
+     */
+    default boolean beforeFrame(Chip chip) {
+        return true;
+    }
+
+    /**
+     * Called when the display changed and should be shown, at most once per frame period
+     * @param chip chip whose display should be shown
+     */
+    void present(Chip chip);
+}
@@ -0,0 +1,523 @@
+package chip;
+
+import java.util.Arrays;
+
+/**
+ * Display packed 64 pixels per long, with up to four bitplanes.
+ * The display starts at the CHIP-8 size of 64x32 and can be resized to the 128x64
+ * high resolution mode of SUPER-CHIP and XO-CHIP. Each row takes width / 64 longs and
+ * the leftmost pixel of a row is the most significant bit of its first long, so a sprite
+ * row is drawn with one or two shifted XORs and scrolling moves whole words instead of pixels
+ */
+public class Framebuffer {
+
+    // CHIP-8 display, also the low resolution mode of the extended machines
+    public static final int WIDTH = 64;
+    public static final int HEIGHT = 32;
+    public static final int RESOLUTION = WIDTH * HEIGHT;
+
+    // High resolution mode of SUPER-CHIP and XO-CHIP
+    public static final int HIRES_WIDTH = 128;
+    public static final int HIRES_HEIGHT = 64;
+
+    public static final int MAX_PLANES = 4;
+
+    // RGB colors of the plane combinations, indexed by a pixel's plane bits. Plane 0 alone is white
+    private static final int[] PALETTE = {
+            0x000000, 0xFFFFFF, 0xAAAAAA, 0x555555,
+            0xFF0000, 0x00FF00, 0x0000FF, 0xFFFF00,
+            0x880000, 0x008800, 0x000088, 0x888800,
+            0xFF00FF, 0x00FFFF, 0x880088, 0x008888
+    };
+
+    // Shift that moves a sprite byte into the leftmost 8 pixels of a row
+    private static final int SPRITE_SHIFT = Long.SIZE - 8;
+
+    private int width;
+    private int height;
+    private int wordsPerRow;
+
+    // planes[p][y * wordsPerRow + word], bit 63 of a row's first word is x = 0
+    private long[][] planes;
+
+    // Planes that drawing, clearing and scrolling apply to, bit n for plane n
+    private int planeMask;
+
+    // Bit n set when row n changed since the last call to takeDirtyRows()
+    private long dirtyRows;
+
+    public Framebuffer() {
+        this(WIDTH, HEIGHT, 1);
+    }
+
+    /**
+     * Returns the color a pixel is shown in
+     * @param planeBits bit n set when the pixel is on in plane n
+     * @return int RGB color
+     */
+    public static int getColor(int planeBits) {
+        return PALETTE[planeBits];
+    }
+
+    /**
+     * Creates a blank display
+     * @param width width in pixels, a multiple of 64
+     * @param height height in pixels, at most 64
+     * @param planeCount number of bitplanes, at most MAX_PLANES
+     */
+    public Framebuffer(int width, int height, int planeCount) {
+        if (planeCount < 1 || planeCount > MAX_PLANES) {
+            throw new IllegalArgumentException("Unsupported number of planes: " + planeCount);
+        }
+        planes = new long[planeCount][];
+        planeMask = 1;
+        resize(width, height);
+    }
+
+    /**
+     * Changes the resolution and blanks every plane, as switching display modes does
+     * @param width width in pixels, a multiple of 64
+     * @param height height in pixels, at most 64
+     */
+    public void resize(int width, int height) {
+        if (width <= 0 || width % Long.SIZE != 0 || height <= 0 || height > Long.SIZE) {
+            throw new IllegalArgumentException("Unsupported resolution: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = width / Long.SIZE;
+        for (int p = 0; p < planes.length; p++) {
+            planes[p] = new long[height * wordsPerRow];
+        }
+        markAllDirty();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of longs each row takes
+     * @return int
+     */
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    public int getPlaneCount() {
+        return planes.length;
+    }
+
+    /**
+     * Returns the packed rows of the first plane. Bit 63 of a row's first long is the leftmost pixel
+     * @return long[]
+     */
+    public long[] getRows() {
+        return planes[0];
+    }
+
+    /**
+     * Returns the packed rows of a plane
+     * @param plane plane index
+     * @return long[]
+     */
+    public long[] getPlane(int plane) {
+        return planes[plane];
+    }
+
+    public int getPlaneMask() {
+        return planeMask;
+    }
+
+    /**
+     * Selects the planes that drawing, clearing and scrolling apply to
+     * @param planeMask bit n set to select plane n, bits for missing planes are ignored
+     */
+    public void setPlaneMask(int planeMask) {
+        this.planeMask = planeMask & ((1 << planes.length) - 1);
+    }
+
+    /**
+     * Turns every pixel of the selected planes off
+     */
+    public void clear() {
+        for (int p = 0; p < planes.length; p++) {
+            if ((planeMask & (1 << p)) != 0) {
+                Arrays.fill(planes[p], 0L);
+            }
+        }
+        markAllDirty();
+    }
+
+    /**
+     * Marks every row as changed, for when the rows were replaced as a whole
+     */
+    public void markAllDirty() {
+        dirtyRows = -1L >>> (Long.SIZE - height);
+    }
+
+    /**
+     * Returns which rows changed since the last call and forgets them
+     * @return long Bit n set when row n changed
+     */
+    public long takeDirtyRows() {
+        long dirty = dirtyRows;
+        dirtyRows = 0;
+        return dirty;
+    }
+
+    /**
+     * Returns whether or not a pixel is on in the first plane
+     * @param x column
+     * @param y row
+     * @return boolean
+     */
+    public boolean isPixelSet(int x, int y) {
+        return (planes[0][y * wordsPerRow + (x >>> 6)] & (Long.MIN_VALUE >>> x)) != 0;
+    }
+
+    /**
+     * Returns the color of a pixel, made of one bit from each plane
+     * @param x column
+     * @param y row
+     * @return int Bit n set when the pixel is on in plane n
+     */
+    public int getPixel(int x, int y) {
+        int index = y * wordsPerRow + (x >>> 6);
+        long bit = Long.MIN_VALUE >>> x;
+        int color = 0;
+        for (int p = 0; p < planes.length; p++) {
+            if ((planes[p][index] & bit) != 0) {
+                color |= 1 << p;
+            }
+        }
+        return color;
+    }
+
+    /**
+     * XORs an 8 pixel wide sprite onto the selected planes, wrapping around both edges.
+     * With several planes selected each takes the next height bytes of sprite data
+     * @param x column of the sprite's left edge
+     * @param y row of the sprite's top edge
+     * @param memory memory holding the sprite
+     * @param address address of the first sprite byte
+     * @param height number of sprite bytes per plane
+     * @return boolean True if any pixel was turned off
+     */
+    public boolean drawSprite(int x, int y, char[] memory, int address, int height) {
+        if (planes.length == 1 && wordsPerRow == 1 && planeMask == 1) {
+            checkSprite(memory, address, height);
+            markRowsDirty(y, height);
+            return drawSprite(planes[0], 0, x, y, memory, address, height);
+        }
+        return draw(x, y, memory, address, height, 8, false);
+    }
+
+    /**
+     * XORs an 8 pixel wide sprite onto the selected planes. The sprite's position wraps,
+     * but pixels past the right or bottom edge are dropped instead of wrapping around
+     * @param x column of the sprite's left edge
+     * @param y row of the sprite's top edge
+     * @param memory memory holding the sprite
+     * @param address address of the first sprite byte
+     * @param height number of sprite bytes per plane
+     * @return boolean True if any pixel was turned off
+     */
+    public boolean drawSpriteClipped(int x, int y, char[] memory, int address, int height) {
+        if (planes.length == 1 && wordsPerRow == 1 && planeMask == 1) {
+            checkSprite(memory, address, height);
+            int top = y % HEIGHT;
+            int rows = Math.min(height, HEIGHT - top);
+            markRowsDirty(top, rows);
+            return drawSpriteClipped(planes[0], x % WIDTH, top, memory, address, rows);
+        }
+        return draw(x, y, memory, address, height, 8, true);
+    }
+
+    /**
+     * XORs a 16x16 sprite, two bytes per row, onto the selected planes, wrapping around both edges
+     * @param x column of the sprite's left edge
+     * @param y row of the sprite's top edge
+     * @param memory memory holding the sprite
+     * @param address address of the first sprite byte
+     * @return boolean True if any pixel was turned off
+     */
+    public boolean drawWideSprite(int x, int y, char[] memory, int address) {
+        return draw(x, y, memory, address, 16, 16, false);
+    }
+
+    /**
+     * XORs a 16x16 sprite, two bytes per row, onto the selected planes, dropping pixels past the edges
+     * @param x column of the sprite's left edge
+     * @param y row of the sprite's top edge
+     * @param memory memory holding the sprite
+     * @param address address of the first sprite byte
+     * @return boolean True if any pixel was turned off
+     */
+    public boolean drawWideSpriteClipped(int x, int y, char[] memory, int address) {
+        return draw(x, y, memory, address, 16, 16, true);
+    }
+
+    private boolean draw(int x, int y, char[] memory, int address, int rows, int spriteWidth, boolean clip) {
+        int left = x % width;
+        int top = y % height;
+        int bytesPerRow = spriteWidth / 8;
+        int visibleRows = clip ? Math.min(rows, height - top) : rows;
+        int selectedPlanes = Integer.bitCount(planeMask & ((1 << planes.length) - 1));
+        checkSprite(memory, address, rows * bytesPerRow * selectedPlanes);
+        boolean collision = false;
+        for (int p = 0; p < planes.length; p++) {
+            if ((planeMask & (1 << p)) == 0) {
+                continue;
+            }
+            long[] plane = planes[p];
+            for (int i = 0; i < rows; i++) {
+                long bits = bytesPerRow == 2
+                        ? (memory[address] & 0xFF) << 8 | (memory[address + 1] & 0xFF)
+                        : memory[address] & 0xFF;
+                address += bytesPerRow;
+                if (i >= visibleRows) {
+                    // Clipped rows still use up their sprite data, the next plane's data follows them
+                    continue;
+                }
+                int row = ((top + i) % height) * wordsPerRow;
+                collision |= xorRow(plane, row, left, bits << (Long.SIZE - spriteWidth), clip);
+            }
+        }
+        markRowsDirty(top, visibleRows);
+        return collision;
+    }
+
+    /**
+     * XORs left aligned sprite bits into a row at a column, carrying into the next word and
+     * wrapping from the last word of the row to the first unless clipped
+     * @param plane plane rows
+     * @param row index of the row's first word
+     * @param x column
+     * @param sprite sprite bits, leftmost pixel in bit 63
+     * @param clip drop the bits that would wrap around instead
+     * @return boolean True if any pixel was turned off
+     */
+    private boolean xorRow(long[] plane, int row, int x, long sprite, boolean clip) {
+        int word = row + (x >>> 6);
+        int shift = x & 63;
+        long first = sprite >>> shift;
+        boolean collision = (plane[word] & first) != 0;
+        plane[word] ^= first;
+        if (shift != 0 && !(clip && (x >>> 6) == wordsPerRow - 1)) {
+            long second = sprite << (Long.SIZE - shift);
+            int next = row + ((x >>> 6) + 1) % wordsPerRow;
+            collision |= (plane[next] & second) != 0;
+            plane[next] ^= second;
+        }
+        return collision;
+    }
+
+    /**
+     * Throws before anything is drawn when the sprite data runs past the end of memory,
+     * so a draw that faults leaves the display as it was
+     * @param memory memory holding the sprite
+     * @param address address of the first sprite byte
+     * @param bytes number of sprite bytes the draw reads
+     */
+    private static void checkSprite(char[] memory, int address, int bytes) {
+        if (address + bytes > memory.length) {
+            throw new ArrayIndexOutOfBoundsException("Sprite at " + address + " runs past the end of memory");
+        }
+    }
+
+    private void markRowsDirty(int y, int rows) {
+        if (rows >= height) {
+            markAllDirty();
+            return;
+        }
+        for (int i = 0; i < rows; i++) {
+            dirtyRows |= 1L << ((y + i) % height);
+        }
+    }
+
+    /**
+     * XORs a sprite onto a 64x32 display stored inside a larger array of rows,
+     * for engines that keep many displays side by side
+     * @param rows packed rows
+     * @param offset index of the display's first row
+     * @param x column of the sprite's left edge
+     * @param y row of the sprite's top edge
+     * @param memory memory holding the sprite
+     * @param address address of the first sprite byte
+     * @param height number of sprite bytes
+     * @return boolean True if any pixel was turned off
+     */
+    static boolean drawSprite(long[] rows, int offset, int x, int y, char[] memory, int address, int height) {
+        int shift = x % WIDTH;
+        boolean collision = false;
+        for (int i = 0; i < height; i++) {
+            long spriteMask = Long.rotateRight((long) (memory[address + i] & 0xFF) << SPRITE_SHIFT, shift);
+            int row = offset + (y + i) % HEIGHT;
+            if ((rows[row] & spriteMask) != 0) {
+                collision = true;
+            }
+            rows[row] ^= spriteMask;
+        }
+        return collision;
+    }
+
+    /**
+     * XORs a sprite that fits inside a single plane 64x32 display, dropping pixels past the right edge
+     * @param rows packed rows
+     * @param x column of the sprite's left edge, already wrapped
+     * @param y row of the sprite's top edge, already wrapped
+     * @param memory memory holding the sprite
+     * @param address address of the first sprite byte
+     * @param height number of sprite bytes that fit above the bottom edge
+     * @return boolean True if any pixel was turned off
+     */
+    private static boolean drawSpriteClipped(long[] rows, int x, int y, char[] memory, int address, int height) {
+        boolean collision = false;
+        for (int i = 0; i < height; i++) {
+            long spriteMask = ((long) (memory[address + i] & 0xFF) << SPRITE_SHIFT) >>> x;
+            int row = y + i;
+            if ((rows[row] & spriteMask) != 0) {
+                collision = true;
+            }
+            rows[row] ^= spriteMask;
+        }
+        return collision;
+    }
+
+    /**
+     * Scrolls the selected planes down, blanking the rows scrolled in at the top
+     * @param rows number of rows
+     */
+    public void scrollDown(int rows) {
+        int words = Math.min(rows, height) * wordsPerRow;
+        for (int p = 0; p < planes.length; p++) {
+            if ((planeMask & (1 << p)) == 0) {
+                continue;
+            }
+            long[] plane = planes[p];
+            System.arraycopy(plane, 0, plane, words, plane.length - words);
+            Arrays.fill(plane, 0, words, 0L);
+        }
+        markAllDirty();
+    }
+
+    /**
+     * Scrolls the selected planes up, blanking the rows scrolled in at the bottom
+     * @param rows number of rows
+     */
+    public void scrollUp(int rows) {
+        int words = Math.min(rows, height) * wordsPerRow;
+        for (int p = 0; p < planes.length; p++) {
+            if ((planeMask & (1 << p)) == 0) {
+                continue;
+            }
+            long[] plane = planes[p];
+            System.arraycopy(plane, words, plane, 0, plane.length - words);
+            Arrays.fill(plane, plane.length - words, plane.length, 0L);
+        }
+        markAllDirty();
+    }
+
+    /**
+     * Scrolls the selected planes right by less than 64 pixels, shifting whole words
+     * and carrying the bits that cross a word boundary
+     * @param pixels number of pixels, 1 to 63
+     */
+    public void scrollRight(int pixels) {
+        for (int p = 0; p < planes.length; p++) {
+            if ((planeMask & (1 << p)) == 0) {
+                continue;
+            }
+            long[] plane = planes[p];
+            for (int row = 0; row < plane.length; row += wordsPerRow) {
+                for (int word = wordsPerRow - 1; word > 0; word--) {
+                    plane[row + word] = (plane[row + word] >>> pixels) | (plane[row + word - 1] << (Long.SIZE - pixels));
+                }
+                plane[row] >>>= pixels;
+            }
+        }
+        markAllDirty();
+    }
+
+    /**
+     * Scrolls the selected planes left by less than 64 pixels, shifting whole words
+     * and carrying the bits that cross a word boundary
+     * @param pixels number of pixels, 1 to 63
+     */
+    public void scrollLeft(int pixels) {
+        for (int p = 0; p < planes.length; p++) {
+            if ((planeMask & (1 << p)) == 0) {
+                continue;
+            }
+            long[] plane = planes[p];
+            for (int row = 0; row < plane.length; row += wordsPerRow) {
+                int last = row + wordsPerRow - 1;
+                for (int word = row; word < last; word++) {
+                    plane[word] = (plane[word] << pixels) | (plane[word + 1] >>> (Long.SIZE - pixels));
+                }
+                plane[last] <<= pixels;
+            }
+        }
+        markAllDirty();
+    }
+
+    /**
+     * Returns a copy of every plane, one after the other
+     * @return long[]
+     */
+    public long[] copyPlanes() {
+        long[] copy = new long[planes.length * height * wordsPerRow];
+        copyPlanes(copy, 0);
+        return copy;
+    }
+
+    /**
+     * Copies every plane, one after the other, into an existing array
+     * @param destination array to copy into
+     * @param offset index of the first long to write
+     * @return int Number of longs written
+     */
+    public int copyPlanes(long[] destination, int offset) {
+        int size = height * wordsPerRow;
+        for (int p = 0; p < planes.length; p++) {
+            System.arraycopy(planes[p], 0, destination, offset + p * size, size);
+        }
+        return planes.length * size;
+    }
+
+    /**
+     * Replaces the whole display with one captured by copyPlanes()
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param planeMask selected planes
+     * @param data planes one after the other
+     */
+    public void restore(int width, int height, int planeMask, long[] data) {
+        if (width != this.width || height != this.height) {
+            resize(width, height);
+        }
+        int size = height * wordsPerRow;
+        for (int p = 0; p < planes.length; p++) {
+            System.arraycopy(data, p * size, planes[p], 0, size);
+        }
+        setPlaneMask(planeMask);
+        markAllDirty();
+    }
+
+    /**
+     * Unpacks the first plane into one byte per pixel, 1 when on and 0 when off
+     * @param pixels array of at least width * height bytes, filled row by row
+     */
+    public void toPixels(byte[] pixels) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = (byte) (isPixelSet(x, y) ? 1 : 0);
+            }
+        }
+    }
+}
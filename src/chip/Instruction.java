@@ -0,0 +1,14 @@
+package chip;
+
+/**
+ * A decoded CHIP-8 instruction with its operands already extracted from the opcode
+ */
+@FunctionalInterface
+public interface Instruction {
+
+    /**
+     * Performs the instruction on a chip
+     * @param chip chip to run the instruction on
+     */
+    void execute(Chip chip);
+}
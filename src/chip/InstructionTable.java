@@ -0,0 +1,281 @@
+package chip;
+
+import util.NibbleUtil;
+
+/**
+ * Maps each of the 65536 possible opcodes to its decoded instruction.
+ * There is one table per machine and combination of quirks, built the first time a chip needs it,
+ * with the quirky opcodes bound to the handler for that behaviour and the opcodes the machine does
+ * not have bound to the unsupported handler. The interpreter never decodes the same opcode twice
+ * and never checks a quirk or the machine while running
+ */
+public final class InstructionTable {
+
+    private static final int OPCODES = 0x10000;
+
+    private static final InstructionTable[][] TABLES =
+            new InstructionTable[MachineProfile.values().length][Quirks.COMBINATIONS];
+
+    private final Instruction[] table;
+
+    private InstructionTable(MachineProfile profile, Quirks quirks) {
+        table = new Instruction[OPCODES];
+        for (int opcode = 0; opcode < OPCODES; opcode++) {
+            table[opcode] = decode((char) opcode, profile, quirks);
+        }
+    }
+
+    /**
+     * Returns the table for a machine and a set of quirks, building it on first use
+     * @param profile machine
+     * @param quirks quirks
+     * @return InstructionTable
+     */
+    public static synchronized InstructionTable forMachine(MachineProfile profile, Quirks quirks) {
+        InstructionTable table = TABLES[profile.ordinal()][quirks.getIndex()];
+        if (table == null) {
+            table = new InstructionTable(profile, quirks);
+            TABLES[profile.ordinal()][quirks.getIndex()] = table;
+        }
+        return table;
+    }
+
+    /**
+     * Returns the decoded instruction for an opcode
+     * @param opcode CHIP-8 machine instruction
+     * @return Instruction
+     */
+    public Instruction get(char opcode) {
+        return table[opcode];
+    }
+
+    /**
+     * Returns whether an instruction always continues with the instruction right after it
+     * and leaves memory untouched. Any other instruction ends a straight-line block of code
+     * @param opcode CHIP-8 machine instruction
+     * @return boolean
+     */
+    public static boolean isStraightLine(char opcode) {
+        switch (NibbleUtil.getStartNibble(opcode)) {
+            case 0x0000:
+                return NibbleUtil.getEndNibble(opcode, true) == 0x00E0;
+            case 0x6000:
+            case 0x7000:
+            case 0xA000:
+            case 0xC000:
+            case 0xD000:
+                return true;
+            case 0x8000:
+                switch (NibbleUtil.getEndNibble(opcode)) {
+                    case 0x0000, 0x0001, 0x0002, 0x0003, 0x0004, 0x0005, 0x0006, 0x0007, 0x000E:
+                        return true;
+                    default:
+                        return false;
+                }
+            case 0xF000:
+                switch (NibbleUtil.getKK(opcode)) {
+                    case 0x0007, 0x0015, 0x0018, 0x001E, 0x0029, 0x0065:
+                        return true;
+                    default:
+                        return false;
+                }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Decodes an opcode into an instruction, binding its operands
+     * @param opcode CHIP-8 machine instruction
+     * @param profile machine, which decides the extended opcodes
+     * @param quirks behaviour of the quirky opcodes
+     * @return Instruction
+     */
+    private static Instruction decode(char opcode, MachineProfile profile, Quirks quirks) {
+        Instruction instruction = decodeOpcode(opcode, profile, quirks);
+        return profile.isXoChip() && isSkip(opcode) ? skippingLong(instruction) : instruction;
+    }
+
+    private static Instruction decodeOpcode(char opcode, MachineProfile profile, Quirks quirks) {
+        int x = NibbleUtil.getX(opcode);
+        int y = NibbleUtil.getY(opcode);
+        int kk = NibbleUtil.getKK(opcode);
+        int nnn = NibbleUtil.getNNN(opcode);
+        int n = NibbleUtil.getEndNibble(opcode);
+        boolean superChip = profile.isSuperChip();
+        boolean xoChip = profile.isXoChip();
+
+        switch (NibbleUtil.getStartNibble(opcode)) {
+            case 0x0000: // 0nnn, 00E0, 00EE, 00Cn, 00Dn, 00FB, 00FC, 00FD, 00FE, 00FF
+                if (x == 0 && y == 0xC) {
+                    return superChip ? chip -> chip.scrollDown(n) : unsupported(opcode);
+                }
+                if (x == 0 && y == 0xD) {
+                    return xoChip ? chip -> chip.scrollUp(n) : unsupported(opcode);
+                }
+                switch (opcode) {
+                    case 0x00FB:
+                        return superChip ? Chip::scrollRight : unsupported(opcode);
+                    case 0x00FC:
+                        return superChip ? Chip::scrollLeft : unsupported(opcode);
+                    case 0x00FD:
+                        return superChip ? Chip::exit : unsupported(opcode);
+                    case 0x00FE:
+                        return superChip ? Chip::lowResolution : unsupported(opcode);
+                    case 0x00FF:
+                        return superChip ? Chip::highResolution : unsupported(opcode);
+                }
+                switch (NibbleUtil.getEndNibble(opcode, true)) {
+                    case 0x00E0:
+                        return Chip::clearScreen;
+                    case 0x00EE:
+                        return Chip::returnFromSubroutine;
+                    default:
+                        return chip -> { };
+                }
+            case 0x1000: // 1nnn
+                return chip -> chip.jump(nnn);
+            case 0x2000: // 2nnn
+                return chip -> chip.call(nnn);
+            case 0x3000: // 3xkk
+                return chip -> chip.skipIfEqual(x, kk);
+            case 0x4000: // 4xkk
+                return chip -> chip.skipIfNotEqual(x, kk);
+            case 0x5000: // 5xy0, 5xy2, 5xy3. Machines without 5xy2 and 5xy3, and every other n, compare like 5xy0
+                if (xoChip && n == 0x0002) {
+                    return chip -> chip.storeRange(x, y);
+                }
+                if (xoChip && n == 0x0003) {
+                    return chip -> chip.loadRange(x, y);
+                }
+                return chip -> chip.skipIfRegistersEqual(x, y);
+            case 0x6000: // 6xkk
+                return chip -> chip.load(x, kk);
+            case 0x7000: // 7xkk
+                return chip -> chip.add(x, kk);
+            case 0x8000: // 8xy0, 8xy1, 8xy2, 8xy3, 8xy4, 8xy5, 8xy6, 8xy7, 8xyE
+                switch (n) {
+                    case 0x0000:
+                        return chip -> chip.loadRegister(x, y);
+                    case 0x0001:
+                        return chip -> chip.or(x, y);
+                    case 0x0002:
+                        return chip -> chip.and(x, y);
+                    case 0x0003:
+                        return chip -> chip.xor(x, y);
+                    case 0x0004:
+                        return chip -> chip.addRegisters(x, y);
+                    case 0x0005:
+                        return chip -> chip.subtract(x, y);
+                    case 0x0006:
+                        return quirks.shiftsVy() ? chip -> chip.shiftRightFrom(x, y) : chip -> chip.shiftRight(x);
+                    case 0x0007:
+                        return chip -> chip.subtractReverse(x, y);
+                    case 0x000E:
+                        return quirks.shiftsVy() ? chip -> chip.shiftLeftFrom(x, y) : chip -> chip.shiftLeft(x);
+                    default:
+                        return unsupported(opcode);
+                }
+            case 0x9000: // 9xy0, every n compares
+                return chip -> chip.skipIfRegistersNotEqual(x, y);
+            case 0xA000: // Annn
+                return chip -> chip.loadIndex(nnn);
+            case 0xB000: // Bnnn
+                return quirks.jumpsWithVx() ? chip -> chip.jumpOffset(nnn, x) : chip -> chip.jumpOffset(nnn);
+            case 0xC000: // Cxkk
+                return chip -> chip.random(x, kk);
+            case 0xD000: // Dxyn, Dxy0 draws a 16x16 sprite on the extended machines
+                if (n == 0 && superChip) {
+                    return quirks.clipsSprites() ? chip -> chip.drawWideClipped(x, y) : chip -> chip.drawWide(x, y);
+                }
+                return quirks.clipsSprites() ? chip -> chip.drawClipped(x, y, n) : chip -> chip.draw(x, y, n);
+            case 0xE000: // Ex9E, ExA1
+                switch (n) {
+                    case 0x0001:
+                        return chip -> chip.skipIfKeyNotPressed(x);
+                    case 0x000E:
+                        return chip -> chip.skipIfKeyPressed(x);
+                    default:
+                        return unsupported(opcode);
+                }
+            default: //  Fx07, Fx0A, Fx15, Fx18, Fx1E, Fx29, Fx33, Fx55, Fx65 and the extended F opcodes
+                if (opcode == 0xF000) {
+                    return xoChip ? Chip::loadLongIndex : unsupported(opcode);
+                }
+                if (opcode == 0xF002) {
+                    return xoChip ? Chip::audioControl : unsupported(opcode);
+                }
+                switch (kk) {
+                    case 0x0007:
+                        return chip -> chip.loadDelayTimer(x);
+                    case 0x000A:
+                        return chip -> chip.waitForKey(x);
+                    case 0x0015:
+                        return chip -> chip.setDelayTimer(x);
+                    case 0x0018:
+                        return chip -> chip.setSoundTimer(x);
+                    case 0x001E:
+                        return chip -> chip.addIndex(x);
+                    case 0x0029:
+                        return chip -> chip.loadFont(x);
+                    case 0x0033:
+                        return chip -> chip.storeBcd(x);
+                    case 0x0055:
+                        return quirks.incrementsIndex()
+                                ? chip -> chip.storeRegisters(x) : chip -> chip.storeRegistersKeepIndex(x);
+                    case 0x0065:
+                        return quirks.incrementsIndex()
+                                ? chip -> chip.loadRegisters(x) : chip -> chip.loadRegistersKeepIndex(x);
+                    case 0x0001:
+                        return xoChip ? chip -> chip.selectPlanes(x) : unsupported(opcode);
+                    case 0x0030:
+                        return superChip ? chip -> chip.loadBigFont(x) : unsupported(opcode);
+                    case 0x003A:
+                        return xoChip ? Chip::audioControl : unsupported(opcode);
+                    case 0x0075:
+                        return superChip ? chip -> chip.storeFlags(x) : unsupported(opcode);
+                    case 0x0085:
+                        return superChip ? chip -> chip.loadFlags(x) : unsupported(opcode);
+                    default:
+                        return chip -> { };
+                }
+        }
+    }
+
+    private static Instruction unsupported(char opcode) {
+        return chip -> chip.unsupported(opcode);
+    }
+
+    /**
+     * Returns whether an opcode is one of the conditional skips: 3xkk, 4xkk, 5xy0, 9xy0, Ex9E and ExA1
+     * @param opcode CHIP-8 machine instruction
+     * @return boolean
+     */
+    private static boolean isSkip(char opcode) {
+        switch (NibbleUtil.getStartNibble(opcode)) {
+            case 0x3000:
+            case 0x4000:
+            case 0x9000:
+                return true;
+            case 0x5000:
+                return NibbleUtil.getEndNibble(opcode) != 0x0002 && NibbleUtil.getEndNibble(opcode) != 0x0003;
+            case 0xE000:
+                return NibbleUtil.getEndNibble(opcode) == 0x0001 || NibbleUtil.getEndNibble(opcode) == 0x000E;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Binds a skip for XO-CHIP, where the skipped instruction may be the 4 byte F000 nnnn and is skipped whole
+     * @param skip skip over a 2 byte instruction
+     * @return Instruction
+     */
+    private static Instruction skippingLong(Instruction skip) {
+        return chip -> {
+            char from = chip.getPc();
+            skip.execute(chip);
+            chip.skipLongInstruction(from);
+        };
+    }
+}
@@ -0,0 +1,21 @@
+package chip;
+
+/**
+ * Engine that fetches, decodes and executes one instruction at a time
+ */
+public class Interpreter implements Engine {
+
+    private Chip chip;
+
+    public Interpreter(Chip chip) {
+        this.chip = chip;
+    }
+
+    @Override
+    public long execute(long cycles) {
+        for (long i = 0; i < cycles; i++) {
+            chip.run();
+        }
+        return cycles;
+    }
+}
@@ -0,0 +1,79 @@
+package chip;
+
+/**
+ * The machine a program was written for. Extended machines add opcodes, a larger display and,
+ * for XO-CHIP, more memory and bitplanes. Of the opcodes a profile does not have, 5xy2 and 5xy3
+ * compare like 5xy0 as they always did on plain CHIP-8, and the rest are unsupported
+ */
+public enum MachineProfile {
+
+    CHIP_8("chip8", 4096, 1, false, false),
+    SUPER_CHIP("schip", 4096, 1, true, false),
+    XO_CHIP("xochip", 65536, Framebuffer.MAX_PLANES, true, true);
+
+    private final String name;
+    private final int memoryBytes;
+    private final int planes;
+    private final boolean superChip;
+    private final boolean xoChip;
+
+    MachineProfile(String name, int memoryBytes, int planes, boolean superChip, boolean xoChip) {
+        this.name = name;
+        this.memoryBytes = memoryBytes;
+        this.planes = planes;
+        this.superChip = superChip;
+        this.xoChip = xoChip;
+    }
+
+    /**
+     * Returns the short name used on the command line, such as "schip"
+     * @return String
+     */
+    public String getName() {
+        return name;
+    }
+
+    public int getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Returns the number of display bitplanes
+     * @return int
+     */
+    public int getPlanes() {
+        return planes;
+    }
+
+    /**
+     * Returns whether the SUPER-CHIP opcodes are available: scrolling, high resolution, 16x16 sprites,
+     * the large font and the flag registers
+     * @return boolean
+     */
+    public boolean isSuperChip() {
+        return superChip;
+    }
+
+    /**
+     * Returns whether the XO-CHIP opcodes are available: plane selection, scrolling up,
+     * register ranges and 16 bit addresses
+     * @return boolean
+     */
+    public boolean isXoChip() {
+        return xoChip;
+    }
+
+    /**
+     * Finds a profile by its short name
+     * @param name name such as "chip8", "schip" or "xochip"
+     * @return MachineProfile
+     */
+    public static MachineProfile forName(String name) {
+        for (MachineProfile profile : values()) {
+            if (profile.name.equalsIgnoreCase(name)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown machine: " + name);
+    }
+}
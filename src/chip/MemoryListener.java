@@ -0,0 +1,15 @@
+package chip;
+
+/**
+ * Gets notified when a chip's memory is written to
+ */
+@FunctionalInterface
+public interface MemoryListener {
+
+    /**
+     * Called after memory has been written to
+     * @param address first address written
+     * @param length number of bytes written
+     */
+    void memoryWritten(int address, int length);
+}
@@ -0,0 +1,426 @@
+package chip;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Engine that runs instructions one at a time like the interpreter while counting where the cycles go:
+ * executions per address and per opcode class, time spent drawing, stack depth and a call tree built
+ * from 2nnn/00EE. All counters are preallocated primitive arrays so profiling does not allocate.
+ * Install it with Chip.startProfiling(), the chip pays nothing for it otherwise
+ */
+public class ProfilingEngine implements Engine {
+
+    // Most distinct call paths tracked, deeper or newer paths are counted against their caller
+    private static final int MAX_CALL_PATHS = 4096;
+
+    // Cycles covered by one stack depth sample
+    private static final int DEPTH_SAMPLE_CYCLES = 1024;
+
+    // Stack depth samples kept, older ones are overwritten
+    private static final int DEPTH_SAMPLES = 4096;
+
+    // Address recorded for a caller the profiler did not see, when profiling started inside a subroutine
+    private static final int UNKNOWN_ADDRESS = -1;
+
+    private static final String[] CLASS_NAMES = {
+            "00E0", "00EE", "0nnn", "1nnn", "2nnn", "3xkk", "4xkk", "5xy0", "6xkk", "7xkk",
+            "8xy0", "8xy1", "8xy2", "8xy3", "8xy4", "8xy5", "8xy6", "8xy7", "8xyE", "9xy0",
+            "Annn", "Bnnn", "Cxkk", "Dxyn", "Ex9E", "ExA1", "Fx07", "Fx0A", "Fx15", "Fx18",
+            "Fx1E", "Fx29", "Fx33", "Fx55", "Fx65",
+            "00Cn", "00Dn", "00FB", "00FC", "00FD", "00FE", "00FF", "5xy2", "5xy3",
+            "F000", "Fn01", "F002", "Fx30", "Fx3A", "Fx75", "Fx85", "unknown"
+    };
+
+    // Classes that only depend on the first nibble, by that nibble
+    private static final String[] NIBBLE_CLASS_NAMES = {
+            null, "1nnn", "2nnn", "3xkk", "4xkk", null, "6xkk", "7xkk",
+            null, null, "Annn", "Bnnn", "Cxkk", "Dxyn", null, null
+    };
+
+    private static final int DRAW_CLASS = Arrays.asList(CLASS_NAMES).indexOf("Dxyn");
+
+    // Opcode class of every opcode by machine, an index into CLASS_NAMES, built the first time a machine is profiled
+    private static final byte[][] OPCODE_CLASSES = new byte[MachineProfile.values().length][];
+
+    private Chip chip;
+
+    // Opcode classes for the chip's machine
+    private byte[] opcodeClasses;
+
+    // Engine that was installed before profiling started
+    private Engine previous;
+
+    private long[] addressCounts;
+    private long[] classCounts;
+    private long[] depthCounts;
+    private long cycles;
+
+    private long drawNanos;
+
+    // Call tree: node 0 is the program's entry, every other node is a call made from its parent
+    private int[] nodeParents;
+    private int[] nodeAddresses;
+    private long[] nodeCycles;
+    private int nodes;
+
+    // Open addressing index from (parent, address) to child node, 0 marks a free slot
+    private int[] childIndex;
+
+    // Call tree nodes of the subroutines currently running, nodeStack[0] is the root
+    private int[] nodeStack;
+    private int depth;
+
+    // Deepest stack seen in each DEPTH_SAMPLE_CYCLES window, as a ring
+    private byte[] depthSamples;
+    private long samples;
+    private int windowDepth;
+
+    ProfilingEngine(Chip chip, Engine previous) {
+        this.chip = chip;
+        this.previous = previous;
+        this.opcodeClasses = opcodeClasses(chip.getProfile());
+        this.addressCounts = new long[chip.getMemorySize()];
+        this.classCounts = new long[CLASS_NAMES.length];
+        this.nodeParents = new int[MAX_CALL_PATHS];
+        this.nodeAddresses = new int[MAX_CALL_PATHS];
+        this.nodeCycles = new long[MAX_CALL_PATHS];
+        this.childIndex = new int[MAX_CALL_PATHS * 2];
+        this.depthSamples = new byte[DEPTH_SAMPLES];
+        int stackSize = chip.getStack().length;
+        this.depthCounts = new long[stackSize + 1];
+        this.nodeStack = new int[stackSize + 1];
+        reset();
+    }
+
+    /**
+     * Returns the engine that was installed before profiling started
+     * @return Engine
+     */
+    public Engine getPrevious() {
+        return previous;
+    }
+
+    @Override
+    public long execute(long cycles) {
+        long[] addressCounts = this.addressCounts;
+        long[] classCounts = this.classCounts;
+        byte[] opcodeClasses = this.opcodeClasses;
+        InstructionTable instructions = chip.getInstructionTable();
+        for (long i = 0; i < cycles; i++) {
+            char pc = chip.getPc();
+            char opcode = chip.readOpcode(pc);
+            int opcodeClass = opcodeClasses[opcode];
+
+            addressCounts[pc]++;
+            classCounts[opcodeClass]++;
+            nodeCycles[nodeStack[depth]]++;
+            depthCounts[depth]++;
+
+            if (opcodeClass == DRAW_CLASS) {
+                long start = System.nanoTime();
+                instructions.get(opcode).execute(chip);
+                drawNanos += System.nanoTime() - start;
+            } else {
+                instructions.get(opcode).execute(chip);
+            }
+
+            int sp = chip.getSp();
+            if (sp != depth) {
+                followStack(sp);
+            }
+            sampleDepth();
+        }
+        return cycles;
+    }
+
+    /**
+     * Brings the call tree position in line with the chip's stack pointer after a call or return
+     * @param sp stack pointer after the instruction
+     */
+    private void followStack(int sp) {
+        while (depth > sp) {
+            depth--;
+        }
+        while (depth < sp) {
+            // Only the innermost new frame is known, its address is where the call jumped to
+            int address = depth == sp - 1 ? chip.getPc() : UNKNOWN_ADDRESS;
+            int node = child(nodeStack[depth], address);
+            depth++;
+            nodeStack[depth] = node;
+        }
+        windowDepth = Math.max(windowDepth, depth);
+    }
+
+    private void sampleDepth() {
+        if (++cycles % DEPTH_SAMPLE_CYCLES == 0) {
+            depthSamples[(int) (samples++ % DEPTH_SAMPLES)] = (byte) windowDepth;
+            windowDepth = depth;
+        }
+    }
+
+    /**
+     * Finds or creates the call tree node for a call from a parent node.
+     * When the tree is full the call is counted against the parent
+     * @param parent calling node
+     * @param address address called
+     * @return int Node index
+     */
+    private int child(int parent, int address) {
+        int mask = childIndex.length - 1;
+        int slot = ((parent * 31 + address) * 0x9E3779B1 >>> 16) & mask;
+        while (childIndex[slot] != 0) {
+            int node = childIndex[slot];
+            if (nodeParents[node] == parent && nodeAddresses[node] == address) {
+                return node;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (nodes == MAX_CALL_PATHS) {
+            return parent;
+        }
+        int node = nodes++;
+        nodeParents[node] = parent;
+        nodeAddresses[node] = address;
+        childIndex[slot] = node;
+        return node;
+    }
+
+    /**
+     * Clears every counter. The current call stack is kept as callers of unknown address
+     */
+    public void reset() {
+        Arrays.fill(addressCounts, 0);
+        Arrays.fill(classCounts, 0);
+        Arrays.fill(depthCounts, 0);
+        Arrays.fill(nodeCycles, 0);
+        Arrays.fill(childIndex, 0);
+        Arrays.fill(depthSamples, (byte) 0);
+        cycles = 0;
+        drawNanos = 0;
+        samples = 0;
+        nodes = 1;
+        nodeParents[0] = -1;
+        nodeAddresses[0] = Chip.MEMORY_ROM_START;
+        depth = 0;
+        nodeStack[0] = 0;
+        followStack(chip.getSp());
+        windowDepth = depth;
+    }
+
+    /**
+     * Returns the number of cycles profiled
+     * @return long
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Returns how many times the instruction at an address ran
+     * @param address memory address
+     * @return long
+     */
+    public long getAddressCount(int address) {
+        return addressCounts[address];
+    }
+
+    /**
+     * Returns how many instructions of each class ran, in the order of getClassNames()
+     * @return long[]
+     */
+    public long[] getClassCounts() {
+        return classCounts.clone();
+    }
+
+    /**
+     * Returns the names of the opcode classes, such as "8xy4" or "Dxyn"
+     * @return String[]
+     */
+    public static String[] getClassNames() {
+        return CLASS_NAMES.clone();
+    }
+
+    /**
+     * Returns the time spent executing Dxyn
+     * @return long Nanoseconds
+     */
+    public long getDrawNanos() {
+        return drawNanos;
+    }
+
+    /**
+     * Returns how many cycles ran at each stack depth, indexed by depth
+     * @return long[]
+     */
+    public long[] getDepthCounts() {
+        return depthCounts.clone();
+    }
+
+    /**
+     * Returns the deepest stack seen in each window of 1024 cycles, oldest first.
+     * Only the most recent 4096 windows are kept
+     * @return int[]
+     */
+    public int[] getDepthTimeline() {
+        int count = (int) Math.min(samples, DEPTH_SAMPLES);
+        int[] timeline = new int[count];
+        for (int i = 0; i < count; i++) {
+            timeline[i] = depthSamples[(int) ((samples - count + i) % DEPTH_SAMPLES)];
+        }
+        return timeline;
+    }
+
+    /**
+     * Prints the most executed addresses, busiest first, with the share of cycles each took
+     * @param out stream to print to
+     * @param limit most addresses to print
+     */
+    public void writeHotReport(PrintStream out, int limit) {
+        Integer[] addresses = new Integer[addressCounts.length];
+        for (int address = 0; address < addresses.length; address++) {
+            addresses[address] = address;
+        }
+        Arrays.sort(addresses, (a, b) -> Long.compare(addressCounts[b], addressCounts[a]));
+
+        out.printf("%d cycles profiled, %.3f ms in Dxyn%n", cycles, drawNanos / 1_000_000.0);
+        out.printf("%-8s %-6s %-7s %12s %7s%n", "address", "opcode", "class", "count", "share");
+        for (int i = 0; i < Math.min(limit, addresses.length); i++) {
+            int address = addresses[i];
+            if (addressCounts[address] == 0) {
+                break;
+            }
+            char opcode = address + 1 < chip.getMemorySize() ? chip.readOpcode(address) : 0;
+            out.printf("0x%03X    %04X   %-7s %12d %6.2f%%%n", address, (int) opcode,
+                    CLASS_NAMES[opcodeClasses[opcode]], addressCounts[address],
+                    100.0 * addressCounts[address] / Math.max(1, cycles));
+        }
+    }
+
+    /**
+     * Prints cycles per call path in the folded stack format read by flamegraph tools,
+     * one "0x200;0x2A4;0x310 count" line per path
+     * @param out stream to print to
+     */
+    public void writeFoldedStacks(PrintStream out) {
+        for (int node = 0; node < nodes; node++) {
+            if (nodeCycles[node] > 0) {
+                out.println(path(node) + " " + nodeCycles[node]);
+            }
+        }
+    }
+
+    private String path(int node) {
+        String frame = nodeAddresses[node] == UNKNOWN_ADDRESS
+                ? "?" : String.format("0x%03X", nodeAddresses[node]);
+        return nodeParents[node] < 0 ? frame : path(nodeParents[node]) + ";" + frame;
+    }
+
+    /**
+     * Returns the opcode class of every opcode on a machine, building the classes on first use
+     * @param profile machine
+     * @return byte[] Index into CLASS_NAMES by opcode
+     */
+    private static synchronized byte[] opcodeClasses(MachineProfile profile) {
+        byte[] classes = OPCODE_CLASSES[profile.ordinal()];
+        if (classes == null) {
+            List<String> names = Arrays.asList(CLASS_NAMES);
+            classes = new byte[0x10000];
+            for (int opcode = 0; opcode < classes.length; opcode++) {
+                classes[opcode] = (byte) names.indexOf(className(opcode, profile));
+            }
+            OPCODE_CLASSES[profile.ordinal()] = classes;
+        }
+        return classes;
+    }
+
+    /**
+     * Names the class of an opcode the way CHIP-8 references write it, after the instruction
+     * InstructionTable decodes it to on a machine. Opcodes that are no instruction of the machine are "unknown"
+     * @param opcode CHIP-8 machine instruction
+     * @param profile machine
+     * @return String
+     */
+    private static String className(int opcode, MachineProfile profile) {
+        boolean superChip = profile.isSuperChip();
+        boolean xoChip = profile.isXoChip();
+        int n = opcode & 0xF;
+        int kk = opcode & 0xFF;
+        switch (opcode >> 12) {
+            case 0x0:
+                if ((opcode & 0xFFF0) == 0x00C0) {
+                    return superChip ? "00Cn" : "unknown";
+                }
+                if ((opcode & 0xFFF0) == 0x00D0) {
+                    return xoChip ? "00Dn" : "unknown";
+                }
+                switch (opcode) {
+                    case 0x00FB:
+                        return superChip ? "00FB" : "unknown";
+                    case 0x00FC:
+                        return superChip ? "00FC" : "unknown";
+                    case 0x00FD:
+                        return superChip ? "00FD" : "unknown";
+                    case 0x00FE:
+                        return superChip ? "00FE" : "unknown";
+                    case 0x00FF:
+                        return superChip ? "00FF" : "unknown";
+                }
+                // Like the table, only the low byte picks 00E0 and 00EE
+                return kk == 0xE0 ? "00E0" : kk == 0xEE ? "00EE" : "0nnn";
+            case 0x5:
+                if (xoChip && (n == 0x2 || n == 0x3)) {
+                    return "5xy" + n;
+                }
+                return "5xy0";
+            case 0x8:
+                return n <= 7 ? "8xy" + n : n == 0xE ? "8xyE" : "unknown";
+            case 0x9:
+                return "9xy0";
+            case 0xE:
+                return n == 0x1 ? "ExA1" : n == 0xE ? "Ex9E" : "unknown";
+            case 0xF:
+                if (opcode == 0xF000) {
+                    return xoChip ? "F000" : "unknown";
+                }
+                if (opcode == 0xF002) {
+                    return xoChip ? "F002" : "unknown";
+                }
+                switch (kk) {
+                    case 0x07:
+                        return "Fx07";
+                    case 0x0A:
+                        return "Fx0A";
+                    case 0x15:
+                        return "Fx15";
+                    case 0x18:
+                        return "Fx18";
+                    case 0x1E:
+                        return "Fx1E";
+                    case 0x29:
+                        return "Fx29";
+                    case 0x33:
+                        return "Fx33";
+                    case 0x55:
+                        return "Fx55";
+                    case 0x65:
+                        return "Fx65";
+                    case 0x01:
+                        return xoChip ? "Fn01" : "unknown";
+                    case 0x30:
+                        return superChip ? "Fx30" : "unknown";
+                    case 0x3A:
+                        return xoChip ? "Fx3A" : "unknown";
+                    case 0x75:
+                        return superChip ? "Fx75" : "unknown";
+                    case 0x85:
+                        return superChip ? "Fx85" : "unknown";
+                    default:
+                        return "unknown";
+                }
+            default:
+                return NIBBLE_CLASS_NAMES[opcode >> 12];
+        }
+    }
+}
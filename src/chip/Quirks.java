@@ -0,0 +1,170 @@
+package chip;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Behaviours that differ between CHIP-8 interpreters and that ROMs silently depend on.
+ * Quirks are resolved once, when a ROM loads, into an instruction table whose handlers
+ * are specialized for them, so executing an instruction never checks a quirk
+ */
+public final class Quirks {
+
+    // Flag names used by parse() and toString()
+    private static final String SHIFT_VY = "shift-vy";
+    private static final String INCREMENT_INDEX = "increment-index";
+    private static final String JUMP_VX = "jump-vx";
+    private static final String CLIP = "clip";
+
+    // Number of different quirk combinations, see getIndex()
+    static final int COMBINATIONS = 16;
+
+    // What this emulator has always done, which the ROMs in roms/ expect
+    public static final Quirks CHIP_8 = new Quirks(false, true, false, false);
+
+    // The original COSMAC VIP interpreter
+    public static final Quirks COSMAC_VIP = new Quirks(true, true, false, true);
+
+    // SUPER-CHIP 1.1 on the HP 48
+    public static final Quirks SUPER_CHIP = new Quirks(false, false, true, true);
+
+    // Octo's XO-CHIP
+    public static final Quirks XO_CHIP = new Quirks(true, true, false, false);
+
+    // 8xy6 and 8xyE shift Vy into Vx instead of shifting Vx in place
+    private final boolean shiftsVy;
+
+    // Fx55 and Fx65 leave I pointing past the last register
+    private final boolean incrementsIndex;
+
+    // Bnnn jumps to nnn + Vx, where x is the top nibble of nnn, instead of nnn + V0
+    private final boolean jumpsWithVx;
+
+    // Dxyn drops the pixels past the right and bottom edges instead of wrapping them around
+    private final boolean clipsSprites;
+
+    public Quirks(boolean shiftsVy, boolean incrementsIndex, boolean jumpsWithVx, boolean clipsSprites) {
+        this.shiftsVy = shiftsVy;
+        this.incrementsIndex = incrementsIndex;
+        this.jumpsWithVx = jumpsWithVx;
+        this.clipsSprites = clipsSprites;
+    }
+
+    /**
+     * Returns the quirks programs for a machine usually expect
+     * @param profile machine
+     * @return Quirks
+     */
+    public static Quirks forProfile(MachineProfile profile) {
+        switch (profile) {
+            case SUPER_CHIP:
+                return SUPER_CHIP;
+            case XO_CHIP:
+                return XO_CHIP;
+            default:
+                return CHIP_8;
+        }
+    }
+
+    /**
+     * Parses a preset name (chip8, vip, schip, xochip) or a comma separated list of the quirks
+     * that are on: shift-vy, increment-index, jump-vx, clip. "none" turns every quirk off
+     * @param text preset or quirk list
+     * @return Quirks
+     */
+    public static Quirks parse(String text) {
+        switch (text) {
+            case "chip8":
+                return CHIP_8;
+            case "vip":
+                return COSMAC_VIP;
+            case "schip":
+                return SUPER_CHIP;
+            case "xochip":
+                return XO_CHIP;
+            case "none":
+                return new Quirks(false, false, false, false);
+            default:
+                break;
+        }
+        boolean shiftsVy = false;
+        boolean incrementsIndex = false;
+        boolean jumpsWithVx = false;
+        boolean clipsSprites = false;
+        for (String flag : text.split(",")) {
+            switch (flag.trim()) {
+                case SHIFT_VY:
+                    shiftsVy = true;
+                    break;
+                case INCREMENT_INDEX:
+                    incrementsIndex = true;
+                    break;
+                case JUMP_VX:
+                    jumpsWithVx = true;
+                    break;
+                case CLIP:
+                    clipsSprites = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown quirk: " + flag);
+            }
+        }
+        return new Quirks(shiftsVy, incrementsIndex, jumpsWithVx, clipsSprites);
+    }
+
+    public boolean shiftsVy() {
+        return shiftsVy;
+    }
+
+    public boolean incrementsIndex() {
+        return incrementsIndex;
+    }
+
+    public boolean jumpsWithVx() {
+        return jumpsWithVx;
+    }
+
+    public boolean clipsSprites() {
+        return clipsSprites;
+    }
+
+    /**
+     * Returns a number from 0 to COMBINATIONS - 1 that is the same for equal quirks
+     * @return int
+     */
+    int getIndex() {
+        return (shiftsVy ? 1 : 0) | (incrementsIndex ? 2 : 0) | (jumpsWithVx ? 4 : 0) | (clipsSprites ? 8 : 0);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Quirks quirks && quirks.getIndex() == getIndex();
+    }
+
+    @Override
+    public int hashCode() {
+        return getIndex();
+    }
+
+    /**
+     * Returns the quirks in the list format parse() reads
+     * @return String
+     */
+    @Override
+    public String toString() {
+        List<String> flags = new ArrayList<>();
+        if (shiftsVy) {
+            flags.add(SHIFT_VY);
+        }
+        if (incrementsIndex) {
+            flags.add(INCREMENT_INDEX);
+        }
+        if (jumpsWithVx) {
+            flags.add(JUMP_VX);
+        }
+        if (clipsSprites) {
+            flags.add(CLIP);
+        }
+        return flags.isEmpty() ? "none" : String.join(",", flags);
+    }
+}
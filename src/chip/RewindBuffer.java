@@ -0,0 +1,249 @@
+package chip;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+
+/**
+ * Bounded history of machine states, one per 60Hz frame, that can be stepped backwards.
+ * Only the latest state is kept whole. Every older frame is stored as the XOR of its
+ * serialized snapshot with the next one, run-length encoded, which is a few dozen bytes
+ * for a typical frame. Memory pages the two snapshots share were not written in between,
+ * so only the registers, the display and the written pages are compared.
+ * Recording a frame reuses its buffers and only allocates the snapshot and the encoded delta.
+ * When the history grows past its memory budget the oldest frames go first
+ */
+public class RewindBuffer {
+
+    // Rough per-frame bookkeeping cost on top of the encoded delta
+    private static final int FRAME_OVERHEAD_BYTES = 16;
+
+    private long budgetBytes;
+    private long usedBytes;
+
+    // Encoded deltas, oldest first. Applying the newest one to latest gives the frame before it
+    private ArrayDeque<byte[]> deltas;
+
+    // Newest recorded frame, and its serialized registers and display
+    private Snapshot latest;
+    private byte[] latestHeader;
+
+    // Serialized registers and display of the frame being recorded
+    private byte[] currentHeader;
+
+    // Encoder output, trimmed into a new delta once a frame is encoded
+    private byte[] scratch;
+    private int scratchLength;
+
+    // Identical bytes seen since the last literal run, not written yet
+    private int pendingZeros;
+
+    // One page of each frame, copied out when a page was written
+    private byte[] olderPage;
+    private byte[] newerPage;
+
+    // Whole serialized state that deltas are applied to when stepping back
+    private byte[] state;
+
+    /**
+     * Creates a rewind buffer
+     * @param budgetBytes memory the recorded deltas may use
+     */
+    public RewindBuffer(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        this.deltas = new ArrayDeque<>();
+        this.olderPage = new byte[Snapshot.PAGE_BYTES];
+        this.newerPage = new byte[Snapshot.PAGE_BYTES];
+    }
+
+    /**
+     * Records the chip's current state as the newest frame
+     * @param chip chip to record
+     */
+    public void record(Chip chip) {
+        Snapshot current = chip.snapshot();
+        int headerLength = current.getHeaderLength();
+        if (currentHeader == null || currentHeader.length != headerLength) {
+            currentHeader = new byte[headerLength];
+        }
+        current.writeHeader(currentHeader, current.getRedrawFlag());
+
+        if (latest != null && latestHeader.length == headerLength && latest.getProfile() == current.getProfile()) {
+            byte[] delta = encode(latest, latestHeader, current, currentHeader);
+            deltas.addLast(delta);
+            usedBytes += delta.length + FRAME_OVERHEAD_BYTES;
+            while (usedBytes > budgetBytes && !deltas.isEmpty()) {
+                usedBytes -= deltas.removeFirst().length + FRAME_OVERHEAD_BYTES;
+            }
+        } else {
+            clearDeltas();
+        }
+
+        latest = current;
+        byte[] header = latestHeader;
+        latestHeader = currentHeader;
+        currentHeader = header;
+    }
+
+    /**
+     * Puts the chip back to the frame recorded before the newest one, and forgets the newest one
+     * @param chip chip to rewind
+     * @return boolean False if there is no older frame
+     */
+    public boolean stepBack(Chip chip) {
+        if (deltas.isEmpty()) {
+            return false;
+        }
+        byte[] delta = deltas.removeLast();
+        usedBytes -= delta.length + FRAME_OVERHEAD_BYTES;
+
+        int length = latest.getStateLength();
+        if (state == null || state.length != length) {
+            state = new byte[length];
+        }
+        System.arraycopy(latestHeader, 0, state, 0, latestHeader.length);
+        for (int page = 0; page < latest.getPages().length; page++) {
+            latest.copyPage(page, state, latestHeader.length + page * Snapshot.PAGE_BYTES);
+        }
+        apply(delta, state);
+        try {
+            latest = Snapshot.fromBytes(state);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.arraycopy(state, 0, latestHeader, 0, latestHeader.length);
+        chip.restore(latest);
+        return true;
+    }
+
+    /**
+     * Returns the number of frames that can be stepped back
+     * @return int
+     */
+    public int getFrames() {
+        return deltas.size();
+    }
+
+    /**
+     * Returns the memory used by the recorded deltas
+     * @return long
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Forgets all recorded frames
+     */
+    public void clear() {
+        clearDeltas();
+        latest = null;
+    }
+
+    private void clearDeltas() {
+        deltas.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Run-length encodes the XOR of two serialized states of the same layout.
+     * The output is a sequence of (zero run length, literal length, literal bytes) with varint lengths.
+     * Pages the snapshots share are known to be equal and count as zeros without being read
+     * @param older frame the delta leads back to
+     * @param olderHeader serialized registers and display of the older frame
+     * @param newer frame the delta is applied to
+     * @param newerHeader serialized registers and display of the newer frame
+     * @return byte[]
+     */
+    private byte[] encode(Snapshot older, byte[] olderHeader, Snapshot newer, byte[] newerHeader) {
+        // Worst case is a varint pair around every other byte
+        int maxLength = newer.getStateLength() * 2 + 16;
+        if (scratch == null || scratch.length < maxLength) {
+            scratch = new byte[maxLength];
+        }
+        scratchLength = 0;
+        pendingZeros = 0;
+
+        encodeRange(olderHeader, newerHeader, newerHeader.length);
+        for (int page = 0; page < newer.getPages().length; page++) {
+            if (newer.sharesPage(older, page)) {
+                pendingZeros += Snapshot.PAGE_BYTES;
+            } else {
+                older.copyPage(page, olderPage, 0);
+                newer.copyPage(page, newerPage, 0);
+                encodeRange(olderPage, newerPage, Snapshot.PAGE_BYTES);
+            }
+        }
+
+        byte[] delta = new byte[scratchLength];
+        System.arraycopy(scratch, 0, delta, 0, scratchLength);
+        return delta;
+    }
+
+    /**
+     * Encodes the next bytes of the two states, carrying trailing zeros over to the next range
+     * @param older bytes of the older state
+     * @param newer bytes of the newer state
+     * @param length number of bytes
+     */
+    private void encodeRange(byte[] older, byte[] newer, int length) {
+        int i = 0;
+        while (i < length) {
+            int zeroStart = i;
+            while (i < length && older[i] == newer[i]) {
+                i++;
+            }
+            pendingZeros += i - zeroStart;
+            if (i == length) {
+                break;
+            }
+            int literalStart = i;
+            while (i < length && older[i] != newer[i]) {
+                i++;
+            }
+            scratchLength = writeVarint(scratch, scratchLength, pendingZeros);
+            scratchLength = writeVarint(scratch, scratchLength, i - literalStart);
+            for (int j = literalStart; j < i; j++) {
+                scratch[scratchLength++] = (byte) (older[j] ^ newer[j]);
+            }
+            pendingZeros = 0;
+        }
+    }
+
+    /**
+     * XORs an encoded delta into a state in place
+     * @param delta delta returned by encode()
+     * @param state state to change
+     */
+    static void apply(byte[] delta, byte[] state) {
+        int position = 0;
+        int i = 0;
+        while (i < delta.length) {
+            int zeros = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = delta[i++];
+                zeros |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            int literals = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = delta[i++];
+                literals |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            position += zeros;
+            for (int j = 0; j < literals; j++) {
+                state[position++] ^= delta[i++];
+            }
+        }
+    }
+
+    private static int writeVarint(byte[] out, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[offset++] = (byte) value;
+        return offset;
+    }
+}
@@ -0,0 +1,208 @@
+package chip;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a chip in real time at a fixed 60Hz frame rate.
+ * Every frame runs a configurable number of instructions and ticks the timers exactly once.
+ * The display is presented at most once per frame period, and when the emulator falls behind
+ * it catches up by running frames back to back, presenting only every few of them.
+ * Sleeps are shortened by the measured wake-up overshoot so no time is spent spinning
+ */
+public class Scheduler implements Runnable {
+
+    public static final int FRAMES_PER_SECOND = 60;
+    public static final long FRAME_NANOS = 1_000_000_000L / FRAMES_PER_SECOND;
+
+    // Roughly 600 instructions per second, about what the original interpreters ran at
+    public static final int DEFAULT_INSTRUCTIONS_PER_FRAME = 10;
+
+    // Frames that may be run back to back before the schedule gives up and resynchronizes
+    private static final int MAX_CATCH_UP_FRAMES = 5;
+
+    // Weight of a new sample in the moving overshoot estimate, as a power of two
+    private static final int OVERSHOOT_SMOOTHING_SHIFT = 3;
+
+    private Chip chip;
+    private FrameListener listener;
+    private volatile int instructionsPerFrame;
+    private volatile boolean running;
+
+    // Moving estimate of how late the thread wakes up after sleeping
+    private volatile long overshootEstimate;
+
+    // Statistics, written by the scheduler thread only
+    private volatile long framesRun;
+    private volatile long framesPresented;
+    private volatile long framesSkipped;
+    private volatile long lastJitterNanos;
+    private volatile long maxJitterNanos;
+    private volatile long totalJitterNanos;
+    private volatile long jitterSamples;
+    private volatile long lastOvershootNanos;
+
+    // System.nanoTime() the scheduler started at, for measuring timer drift
+    private volatile long startNanos;
+
+    public Scheduler(Chip chip, int instructionsPerFrame, FrameListener listener) {
+        this.chip = chip;
+        this.instructionsPerFrame = instructionsPerFrame;
+        this.listener = listener;
+    }
+
+    public int getInstructionsPerFrame() {
+        return instructionsPerFrame;
+    }
+
+    public void setInstructionsPerFrame(int instructionsPerFrame) {
+        this.instructionsPerFrame = instructionsPerFrame;
+    }
+
+    /**
+     * Stops the scheduler after the current frame
+     */
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        running = true;
+        long deadline = System.nanoTime();
+        startNanos = deadline;
+        // Frames run since the display was last presented or last had nothing new to show
+        int unpresented = 0;
+        while (running) {
+            long now = System.nanoTime();
+            if (now < deadline) {
+                sleepUntil(deadline);
+                now = System.nanoTime();
+            }
+
+            // Too far behind to catch up, drop the missed frames instead of running them all
+            if (now - deadline > MAX_CATCH_UP_FRAMES * FRAME_NANOS) {
+                framesSkipped += (now - deadline) / FRAME_NANOS;
+                deadline = now;
+            }
+
+            if (listener.beforeFrame(chip)) {
+                chip.runFrame(instructionsPerFrame);
+                framesRun++;
+            }
+            deadline += FRAME_NANOS;
+            unpresented++;
+
+            // Frames run while catching up are not shown, but a host that never quite catches up
+            // still gets one presented every few frames instead of a frozen screen
+            if (!chip.getRedrawFlag()) {
+                unpresented = 0;
+            } else if (System.nanoTime() < deadline || unpresented >= MAX_CATCH_UP_FRAMES) {
+                chip.setRedrawFlag(false);
+                listener.present(chip);
+                framesPresented++;
+                unpresented = 0;
+            }
+        }
+    }
+
+    /**
+     * Sleeps until a deadline, waking up early by the expected overshoot
+     * @param deadline System.nanoTime() to wake up at
+     */
+    private void sleepUntil(long deadline) {
+        long sleep = deadline - System.nanoTime() - overshootEstimate;
+        if (sleep > 0) {
+            LockSupport.parkNanos(sleep);
+        }
+        long wakeUp = System.nanoTime();
+
+        // Jitter is how far from the deadline the thread actually woke up
+        long jitter = Math.abs(wakeUp - deadline);
+        lastJitterNanos = jitter;
+        maxJitterNanos = Math.max(maxJitterNanos, jitter);
+        totalJitterNanos += jitter;
+        jitterSamples++;
+
+        if (sleep > 0) {
+            long overshoot = wakeUp - (deadline - overshootEstimate);
+            lastOvershootNanos = overshoot;
+            overshootEstimate += (overshoot - overshootEstimate) >> OVERSHOOT_SMOOTHING_SHIFT;
+            overshootEstimate = Math.max(0, Math.min(overshootEstimate, FRAME_NANOS / 2));
+        }
+    }
+
+    /**
+     * Returns the number of emulated frames run
+     * @return long
+     */
+    public long getFramesRun() {
+        return framesRun;
+    }
+
+    /**
+     * Returns the number of frames handed to the listener for presenting
+     * @return long
+     */
+    public long getFramesPresented() {
+        return framesPresented;
+    }
+
+    /**
+     * Returns the number of frames dropped because the emulator fell too far behind
+     * @return long
+     */
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    /**
+     * Returns how far from its deadline the last wake-up was, in nanoseconds
+     * @return long
+     */
+    public long getLastJitterNanos() {
+        return lastJitterNanos;
+    }
+
+    /**
+     * Returns the largest wake-up jitter seen, in nanoseconds
+     * @return long
+     */
+    public long getMaxJitterNanos() {
+        return maxJitterNanos;
+    }
+
+    /**
+     * Returns the mean wake-up jitter, in nanoseconds
+     * @return long
+     */
+    public long getMeanJitterNanos() {
+        long samples = jitterSamples;
+        return samples == 0 ? 0 : totalJitterNanos / samples;
+    }
+
+    /**
+     * Returns how much later than planned the last sleep woke up, in nanoseconds
+     * @return long
+     */
+    public long getLastOvershootNanos() {
+        return lastOvershootNanos;
+    }
+
+    /**
+     * Returns how far the timers have fallen behind the wall clock, in nanoseconds.
+     * The timers tick once per frame run, so skipped and rewound frames add to the drift
+     * @return long
+     */
+    public long getTimerDriftNanos() {
+        long start = startNanos;
+        return start == 0 ? 0 : (System.nanoTime() - start) - framesRun * FRAME_NANOS;
+    }
+
+    /**
+     * Returns the current estimate of sleep overshoot that sleeps are shortened by, in nanoseconds
+     * @return long
+     */
+    public long getOvershootEstimateNanos() {
+        return overshootEstimate;
+    }
+}
@@ -0,0 +1,416 @@
+package chip;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Immutable copy of a chip's whole machine state.
+ * Memory is split into pages that consecutive snapshots share when they were not written in between,
+ * so taking a snapshot every frame only copies what the program changed
+ */
+public final class Snapshot {
+
+    public static final int PAGE_BYTES = 256;
+
+    // "C8SS" followed by the format version
+    private static final int MAGIC = 0x43385353;
+    private static final int VERSION = 3;
+
+    private final MachineProfile profile;
+
+    // Never modified once captured, may be shared with other snapshots
+    private final char[][] pages;
+
+    private final char[] V;
+    private final char I;
+    private final char pc;
+    private final char[] stack;
+    private final int sp;
+    private final int dt;
+    private final int st;
+    private final byte[] keypad;
+    private final int keyWaitRegister;
+    private final char[] flags;
+    private final int displayWidth;
+    private final int displayHeight;
+    private final int planeMask;
+    // Every plane of the display, one after the other
+    private final long[] display;
+    private final boolean redrawFlag;
+    private final long randomState;
+
+    Snapshot(MachineProfile profile, char[][] pages, char[] V, char I, char pc, char[] stack, int sp, int dt,
+             int st, byte[] keypad, int keyWaitRegister, char[] flags, int displayWidth, int displayHeight,
+             int planeMask, long[] display, boolean redrawFlag, long randomState) {
+        this.profile = profile;
+        this.pages = pages;
+        this.V = V;
+        this.I = I;
+        this.pc = pc;
+        this.stack = stack;
+        this.sp = sp;
+        this.dt = dt;
+        this.st = st;
+        this.keypad = keypad;
+        this.keyWaitRegister = keyWaitRegister;
+        this.flags = flags;
+        this.displayWidth = displayWidth;
+        this.displayHeight = displayHeight;
+        this.planeMask = planeMask;
+        this.display = display;
+        this.redrawFlag = redrawFlag;
+        this.randomState = randomState;
+    }
+
+    /**
+     * Returns the number of pages a memory of the given size is split into
+     * @param memoryBytes memory size
+     * @return int
+     */
+    public static int pageCount(int memoryBytes) {
+        return (memoryBytes + PAGE_BYTES - 1) / PAGE_BYTES;
+    }
+
+    char[][] getPages() {
+        return pages;
+    }
+
+    /**
+     * Copies the array parts of the state into a chip's arrays
+     * @param V registers
+     * @param stack stack
+     * @param keypad keypad
+     * @param flags SUPER-CHIP flag registers
+     */
+    void copyRegisters(char[] V, char[] stack, byte[] keypad, char[] flags) {
+        System.arraycopy(this.V, 0, V, 0, V.length);
+        System.arraycopy(this.stack, 0, stack, 0, stack.length);
+        System.arraycopy(this.keypad, 0, keypad, 0, keypad.length);
+        System.arraycopy(this.flags, 0, flags, 0, flags.length);
+    }
+
+    /**
+     * Returns every display plane, one after the other, as captured by Framebuffer.copyPlanes()
+     * @return long[]
+     */
+    long[] getDisplay() {
+        return display;
+    }
+
+    /**
+     * Returns the machine the snapshot was taken on
+     * @return MachineProfile
+     */
+    public MachineProfile getProfile() {
+        return profile;
+    }
+
+    public int getDisplayWidth() {
+        return displayWidth;
+    }
+
+    public int getDisplayHeight() {
+        return displayHeight;
+    }
+
+    public int getPlaneMask() {
+        return planeMask;
+    }
+
+    public char getI() {
+        return I;
+    }
+
+    public char getPc() {
+        return pc;
+    }
+
+    public int getSp() {
+        return sp;
+    }
+
+    public int getDt() {
+        return dt;
+    }
+
+    public int getSt() {
+        return st;
+    }
+
+    /**
+     * Returns the register a pending Fx0A stores the next key in, or -1
+     * @return int
+     */
+    public int getKeyWaitRegister() {
+        return keyWaitRegister;
+    }
+
+    public boolean getRedrawFlag() {
+        return redrawFlag;
+    }
+
+    public long getRandomState() {
+        return randomState;
+    }
+
+    /**
+     * Returns a V register
+     * @param x register
+     * @return char
+     */
+    public char getRegister(int x) {
+        return V[x];
+    }
+
+    /**
+     * Returns a byte of memory
+     * @param address memory address
+     * @return char
+     */
+    public char getMemory(int address) {
+        return pages[address / PAGE_BYTES][address % PAGE_BYTES];
+    }
+
+    /**
+     * Returns whether two snapshots share a memory page instead of holding separate copies
+     * @param other other snapshot
+     * @param page page index
+     * @return boolean
+     */
+    public boolean sharesPage(Snapshot other, int page) {
+        return pages[page] == other.pages[page];
+    }
+
+    /**
+     * Writes the snapshot in its compact binary format.
+     * Memory is written one byte per address, registers and the stack as 16 bit values
+     * @param out output
+     * @throws IOException when writing fails
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        write(out, redrawFlag);
+    }
+
+    /**
+     * Writes the snapshot in its binary format
+     * @param out output
+     * @param redrawFlag redraw flag to write in place of the captured one
+     * @throws IOException when writing fails
+     */
+    private void write(DataOutput out, boolean redrawFlag) throws IOException {
+        byte[] header = new byte[getHeaderLength()];
+        writeHeader(header, redrawFlag);
+        out.write(header);
+        byte[] page = new byte[PAGE_BYTES];
+        for (int i = 0; i < pages.length; i++) {
+            copyPage(i, page, 0);
+            out.write(page);
+        }
+    }
+
+    /**
+     * Returns the length of the binary format
+     * @return int
+     */
+    int getStateLength() {
+        return getHeaderLength() + pages.length * PAGE_BYTES;
+    }
+
+    /**
+     * Returns the length of everything in the binary format that comes before the memory pages
+     * @return int
+     */
+    int getHeaderLength() {
+        return 25 + (V.length + stack.length + flags.length) * 2 + keypad.length + 7 + display.length * 8 + 2;
+    }
+
+    /**
+     * Writes everything in the binary format that comes before the memory pages, big-endian like DataOutput
+     * @param out array of at least getHeaderLength() bytes
+     * @param redrawFlag redraw flag to write in place of the captured one
+     */
+    void writeHeader(byte[] out, boolean redrawFlag) {
+        int offset = putInt(out, 0, MAGIC);
+        out[offset++] = VERSION;
+        out[offset++] = (byte) profile.ordinal();
+        offset = putShort(out, offset, pc);
+        offset = putShort(out, offset, I);
+        out[offset++] = (byte) sp;
+        out[offset++] = (byte) keyWaitRegister;
+        offset = putShort(out, offset, dt);
+        offset = putShort(out, offset, st);
+        out[offset++] = (byte) (redrawFlag ? 1 : 0);
+        offset = putLong(out, offset, randomState);
+        for (char register : V) {
+            offset = putShort(out, offset, register);
+        }
+        for (char address : stack) {
+            offset = putShort(out, offset, address);
+        }
+        System.arraycopy(keypad, 0, out, offset, keypad.length);
+        offset += keypad.length;
+        for (char flag : flags) {
+            offset = putShort(out, offset, flag);
+        }
+        offset = putShort(out, offset, displayWidth);
+        offset = putShort(out, offset, displayHeight);
+        out[offset++] = (byte) planeMask;
+        offset = putShort(out, offset, display.length);
+        for (long row : display) {
+            offset = putLong(out, offset, row);
+        }
+        putShort(out, offset, pages.length);
+    }
+
+    /**
+     * Copies a memory page into an array, one byte per address as in the binary format
+     * @param page page index
+     * @param out array to copy into
+     * @param offset index of the page's first byte in out
+     */
+    void copyPage(int page, byte[] out, int offset) {
+        char[] values = pages[page];
+        for (int i = 0; i < PAGE_BYTES; i++) {
+            out[offset + i] = (byte) values[i];
+        }
+    }
+
+    private static int putShort(byte[] out, int offset, int value) {
+        out[offset] = (byte) (value >>> 8);
+        out[offset + 1] = (byte) value;
+        return offset + 2;
+    }
+
+    private static int putInt(byte[] out, int offset, int value) {
+        offset = putShort(out, offset, value >>> 16);
+        return putShort(out, offset, value);
+    }
+
+    private static int putLong(byte[] out, int offset, long value) {
+        offset = putInt(out, offset, (int) (value >>> 32));
+        return putInt(out, offset, (int) value);
+    }
+
+    /**
+     * Reads a snapshot written by writeTo()
+     * @param in input
+     * @return Snapshot
+     * @throws IOException when reading fails, the data is not a snapshot, its registers are out of range
+     * or its display or memory does not fit its machine
+     */
+    public static Snapshot readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+            throw new IOException("Not a CHIP-8 snapshot");
+        }
+        int machine = in.readUnsignedByte();
+        if (machine >= MachineProfile.values().length) {
+            throw new IOException("Unknown machine in snapshot: " + machine);
+        }
+        MachineProfile profile = MachineProfile.values()[machine];
+        char pc = in.readChar();
+        char I = in.readChar();
+        int sp = in.readUnsignedByte();
+        int keyWaitRegister = in.readByte();
+        int dt = in.readChar();
+        int st = in.readChar();
+        boolean redrawFlag = in.readBoolean();
+        long randomState = in.readLong();
+        // I is not checked, Fx1E and Fx55 can leave it past the end of memory without faulting
+        if (pc >= profile.getMemoryBytes()) {
+            throw new IOException("Program counter " + (int) pc + " in snapshot is outside " + profile.getName() + " memory");
+        }
+        if (sp > 16) {
+            throw new IOException("Stack pointer " + sp + " in snapshot is outside the stack");
+        }
+        if (keyWaitRegister < -1 || keyWaitRegister > 15) {
+            throw new IOException("Fx0A register " + keyWaitRegister + " in snapshot is not a register");
+        }
+        char[] V = new char[16];
+        for (int i = 0; i < V.length; i++) {
+            V[i] = in.readChar();
+        }
+        char[] stack = new char[16];
+        for (int i = 0; i < stack.length; i++) {
+            stack[i] = in.readChar();
+        }
+        byte[] keypad = new byte[16];
+        in.readFully(keypad);
+        char[] flags = new char[16];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = in.readChar();
+        }
+        int displayWidth = in.readUnsignedShort();
+        int displayHeight = in.readUnsignedShort();
+        int planeMask = in.readUnsignedByte();
+        boolean lowResolution = displayWidth == Framebuffer.WIDTH && displayHeight == Framebuffer.HEIGHT;
+        boolean highResolution = displayWidth == Framebuffer.HIRES_WIDTH && displayHeight == Framebuffer.HIRES_HEIGHT;
+        if (!lowResolution && !(highResolution && profile.isSuperChip())) {
+            throw new IOException("Display of " + displayWidth + "x" + displayHeight + " in snapshot does not fit a "
+                    + profile.getName() + " machine");
+        }
+        int displayLength = in.readUnsignedShort();
+        int planesLength = profile.getPlanes() * displayWidth * displayHeight / Long.SIZE;
+        if (displayLength != planesLength) {
+            throw new IOException("Display of " + displayLength + " longs in snapshot, a " + profile.getName()
+                    + " machine at " + displayWidth + "x" + displayHeight + " has " + planesLength);
+        }
+        long[] display = new long[displayLength];
+        for (int i = 0; i < display.length; i++) {
+            display[i] = in.readLong();
+        }
+        int pageCount = in.readUnsignedShort();
+        if (pageCount != pageCount(profile.getMemoryBytes())) {
+            throw new IOException("Memory of " + pageCount + " pages in snapshot, a " + profile.getName()
+                    + " machine has " + pageCount(profile.getMemoryBytes()));
+        }
+        char[][] pages = new char[pageCount][PAGE_BYTES];
+        for (char[] page : pages) {
+            for (int i = 0; i < page.length; i++) {
+                page[i] = (char) in.readUnsignedByte();
+            }
+        }
+        return new Snapshot(profile, pages, V, I, pc, stack, sp, dt, st, keypad, keyWaitRegister, flags,
+                displayWidth, displayHeight, planeMask, display, redrawFlag, randomState);
+    }
+
+    /**
+     * Returns the snapshot in its compact binary format
+     * @return byte[]
+     */
+    public byte[] toBytes() {
+        return toBytes(redrawFlag);
+    }
+
+    /**
+     * Returns the machine state in the binary format with the redraw flag cleared.
+     * The flag only says whether the display was presented, which depends on timing,
+     * so runs that did the same work give the same bytes however they were shown
+     * @return byte[]
+     */
+    public byte[] toStateBytes() {
+        return toBytes(false);
+    }
+
+    private byte[] toBytes(boolean redrawFlag) {
+        byte[] bytes = new byte[getStateLength()];
+        writeHeader(bytes, redrawFlag);
+        int offset = getHeaderLength();
+        for (int page = 0; page < pages.length; page++) {
+            copyPage(page, bytes, offset + page * PAGE_BYTES);
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads a snapshot from its compact binary format
+     * @param bytes data returned by toBytes()
+     * @return Snapshot
+     * @throws IOException when the data is not a snapshot
+     */
+    public static Snapshot fromBytes(byte[] bytes) throws IOException {
+        return readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
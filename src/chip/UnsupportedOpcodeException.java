@@ -0,0 +1,26 @@
+package chip;
+
+/**
+ * Thrown when a chip runs into an opcode it can not execute
+ */
+public class UnsupportedOpcodeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final char opcode;
+    private final char address;
+
+    public UnsupportedOpcodeException(char opcode, char address) {
+        super(String.format("Unsupported Opcode: %04X at %03X", (int) opcode, (int) address));
+        this.opcode = opcode;
+        this.address = address;
+    }
+
+    public char getOpcode() {
+        return opcode;
+    }
+
+    public char getAddress() {
+        return address;
+    }
+}
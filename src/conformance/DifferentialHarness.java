@@ -0,0 +1,263 @@
+package conformance;
+
+import chip.BatchEngine;
+import chip.BlockCacheEngine;
+import chip.Chip;
+import util.XorShiftRandom;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Runs random programs on the interpreter, the block cache engine and the batch engine
+ * side by side and checks that all three end every program in exactly the same state.
+ * A program that faults must fault on every engine, and is compared in the state it faulted in.
+ * Programs are mostly valid instructions with jumps kept inside the program and I kept
+ * near the data area, with random key changes between frames, so every opcode gets exercised
+ */
+public class DifferentialHarness {
+
+    // Instructions in a random program
+    private static final int PROGRAM_INSTRUCTIONS = 128;
+
+    // Programs run in lockstep by one batch engine
+    private static final int BATCH_LANES = 64;
+
+    // Chance out of 256 that an instruction is a completely random opcode
+    private static final int RANDOM_OPCODE_CHANCE = 8;
+
+    private XorShiftRandom random;
+    private int frames;
+    private int instructionsPerFrame;
+
+    private long programs;
+    private long faulted;
+    private long mismatches;
+    private long cycles;
+
+    /**
+     * Creates a harness
+     * @param seed seed for the random programs
+     * @param frames frames each program runs
+     * @param instructionsPerFrame cycles per frame
+     */
+    public DifferentialHarness(long seed, int frames, int instructionsPerFrame) {
+        this.random = new XorShiftRandom(seed);
+        this.frames = frames;
+        this.instructionsPerFrame = instructionsPerFrame;
+    }
+
+    /**
+     * Runs random programs, printing the first few that end differently
+     * @param count number of programs to run
+     * @param out stream to print mismatches to
+     * @return long Number of programs that ended differently
+     */
+    public long run(long count, PrintStream out) {
+        while (programs < count) {
+            int lanes = (int) Math.min(BATCH_LANES, count - programs);
+            runBatch(lanes, out);
+        }
+        return mismatches;
+    }
+
+    private void runBatch(int lanes, PrintStream out) {
+        Chip[] interpreted = new Chip[lanes];
+        Chip[] blockCached = new Chip[lanes];
+        boolean[] interpreterFaulted = new boolean[lanes];
+        boolean[] blockFaulted = new boolean[lanes];
+        byte[][] roms = new byte[lanes][];
+        BatchEngine batch = new BatchEngine(lanes);
+
+        for (int lane = 0; lane < lanes; lane++) {
+            roms[lane] = randomProgram();
+            long seed = random.nextLong();
+            interpreted[lane] = createChip(roms[lane], seed);
+            blockCached[lane] = createChip(roms[lane], seed);
+            blockCached[lane].setEngine(new BlockCacheEngine(blockCached[lane]));
+            batch.load(lane, interpreted[lane]);
+        }
+
+        for (int frame = 0; frame < frames; frame++) {
+            for (int lane = 0; lane < lanes; lane++) {
+                // Change keys now and then so Ex9E, ExA1 and Fx0A take both paths
+                if ((random.nextByte() & 0x7) == 0) {
+                    int keys = random.nextByte() & random.nextByte() & 0xFF | (random.nextByte() & 0x3) << 8;
+                    interpreted[lane].setKeys(keys);
+                    blockCached[lane].setKeys(keys);
+                    batch.setKeys(lane, keys);
+                }
+                interpreterFaulted[lane] = runFrame(interpreted[lane], interpreterFaulted[lane]);
+                blockFaulted[lane] = runFrame(blockCached[lane], blockFaulted[lane]);
+            }
+            cycles += batch.runFrame(instructionsPerFrame) * 3;
+        }
+
+        Chip scratch = new Chip(true);
+        for (int lane = 0; lane < lanes; lane++) {
+            programs++;
+            boolean batchFaulted = batch.isFailed(lane);
+            String difference = null;
+            if (interpreterFaulted[lane] || blockFaulted[lane] || batchFaulted) {
+                faulted++;
+                if (interpreterFaulted[lane] != blockFaulted[lane] || blockFaulted[lane] != batchFaulted) {
+                    difference = String.format("faults: interpreter %b, block cache %b, batch %b",
+                            interpreterFaulted[lane], blockFaulted[lane], batchFaulted);
+                }
+            }
+            if (difference == null) {
+                // A faulted machine stops on the faulting instruction, so its state is compared there
+                batch.store(lane, scratch);
+                byte[] expected = interpreted[lane].snapshot().toBytes();
+                difference = !Arrays.equals(expected, blockCached[lane].snapshot().toBytes()) ? "block cache state differs"
+                        : !Arrays.equals(expected, scratch.snapshot().toBytes()) ? "batch state differs" : null;
+            }
+            if (difference != null) {
+                mismatches++;
+                if (mismatches <= 10) {
+                    out.printf("MISMATCH program %d (%s): %s%n", programs, difference, toHex(roms[lane]));
+                }
+            }
+        }
+    }
+
+    private static Chip createChip(byte[] rom, long seed) {
+        Chip chip = new Chip(true);
+        chip.loadRom(rom);
+        chip.setRandom(new XorShiftRandom(seed));
+        return chip;
+    }
+
+    /**
+     * Runs a frame on a chip unless it already faulted
+     * @param chip chip to run
+     * @param faulted whether the chip already faulted
+     * @return boolean Whether the chip has faulted
+     */
+    private boolean runFrame(Chip chip, boolean faulted) {
+        if (faulted) {
+            return true;
+        }
+        try {
+            chip.runFrame(instructionsPerFrame);
+            return false;
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Generates a program of mostly valid instructions
+     * @return byte[]
+     */
+    private byte[] randomProgram() {
+        byte[] rom = new byte[PROGRAM_INSTRUCTIONS * 2];
+        for (int i = 0; i < PROGRAM_INSTRUCTIONS; i++) {
+            int opcode = randomInstruction();
+            rom[i * 2] = (byte) (opcode >> 8);
+            rom[i * 2 + 1] = (byte) opcode;
+        }
+        return rom;
+    }
+
+    private int randomInstruction() {
+        int x = random.nextByte() & 0xF;
+        int y = random.nextByte() & 0xF;
+        int kk = random.nextByte() & 0xFF;
+        // Jump targets stay inside the program, on instruction boundaries
+        int target = 0x200 + ((random.nextByte() & 0xFF) % PROGRAM_INSTRUCTIONS) * 2;
+        if ((random.nextByte() & 0xFF) < RANDOM_OPCODE_CHANCE) {
+            return (random.nextByte() & 0xFF) << 8 | kk;
+        }
+        switch (random.nextByte() & 0x1F) {
+            case 0:
+                return 0x00E0;
+            case 1:
+                return 0x00EE;
+            case 2:
+                return 0x1000 | target;
+            case 3:
+                return 0x2000 | target;
+            case 4:
+                return 0x3000 | x << 8 | kk;
+            case 5:
+                return 0x4000 | x << 8 | kk;
+            case 6:
+                return 0x5000 | x << 8 | y << 4;
+            case 7:
+            case 8:
+                return 0x6000 | x << 8 | kk;
+            case 9:
+            case 10:
+                return 0x7000 | x << 8 | kk;
+            case 11:
+            case 12:
+            case 13:
+                int[] operations = {0x0, 0x1, 0x2, 0x3, 0x4, 0x5, 0x6, 0x7, 0xE};
+                return 0x8000 | x << 8 | y << 4 | operations[(kk & 0xFF) % operations.length];
+            case 14:
+                return 0x9000 | x << 8 | y << 4;
+            case 15:
+            case 16:
+                // Keep I in the data area above the program
+                return 0xA000 | (0x300 + kk);
+            case 17:
+                return 0xB000 | (target - 0x100 & 0xFFF);
+            case 18:
+                return 0xC000 | x << 8 | kk;
+            case 19:
+            case 20:
+                return 0xD000 | x << 8 | y << 4 | (kk & 0xF);
+            case 21:
+                return 0xE09E | x << 8;
+            case 22:
+                return 0xE0A1 | x << 8;
+            case 23:
+                return 0xF007 | x << 8;
+            case 24:
+                return 0xF00A | x << 8;
+            case 25:
+                return 0xF015 | x << 8;
+            case 26:
+                return 0xF018 | x << 8;
+            case 27:
+                return 0xF01E | (x & 0x3) << 8;
+            case 28:
+                return 0xF029 | x << 8;
+            case 29:
+                return 0xF033 | x << 8;
+            case 30:
+                return 0xF055 | x << 8;
+            default:
+                return 0xF065 | x << 8;
+        }
+    }
+
+    private static String toHex(byte[] rom) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : rom) {
+            hex.append(String.format("%02X", b & 0xFF));
+        }
+        return hex.toString();
+    }
+
+    public long getPrograms() {
+        return programs;
+    }
+
+    /**
+     * Returns the number of programs that hit an instruction the engines stop on
+     * @return long
+     */
+    public long getFaulted() {
+        return faulted;
+    }
+
+    /**
+     * Returns the number of cycles run, summed over all three engines
+     * @return long
+     */
+    public long getCycles() {
+        return cycles;
+    }
+}
@@ -0,0 +1,24 @@
+package conformance;
+
+import chip.MachineProfile;
+import chip.Quirks;
+
+/**
+ * The ways this emulator can execute a program, all of which must agree instruction for instruction
+ */
+public enum EngineKind {
+    INTERPRETER,
+    BLOCK_CACHE,
+    BATCH;
+
+    /**
+     * Returns whether the engine can run programs written for a machine with a set of quirks.
+     * The batch engine only implements plain CHIP-8 with the CHIP-8 quirks
+     * @param profile machine
+     * @param quirks quirks
+     * @return boolean
+     */
+    public boolean supports(MachineProfile profile, Quirks quirks) {
+        return this != BATCH || (profile == MachineProfile.CHIP_8 && quirks.equals(Quirks.CHIP_8));
+    }
+}
@@ -0,0 +1,142 @@
+package conformance;
+
+import chip.BatchEngine;
+import chip.BlockCacheEngine;
+import chip.Chip;
+import chip.MachineProfile;
+import chip.Quirks;
+import util.XorShiftRandom;
+
+/**
+ * A single program running on one of the engines, seen through a common interface.
+ * Whatever the engine, the resulting state is read back from a Chip
+ */
+public abstract class Machine {
+
+    protected Chip chip;
+    protected boolean faulted;
+
+    protected Machine(MachineProfile profile, Quirks quirks, byte[] rom, long seed) {
+        chip = new Chip(profile, true);
+        if (!chip.loadRom(rom)) {
+            throw new IllegalArgumentException("Program does not fit in memory");
+        }
+        chip.setQuirks(quirks);
+        chip.setRandom(new XorShiftRandom(seed));
+    }
+
+    /**
+     * Creates a machine running a program
+     * @param kind engine to run the program on
+     * @param profile machine the program is written for, which the engine has to support
+     * @param quirks quirks the program expects, which the engine has to support
+     * @param rom program bytes
+     * @param seed seed for Cxkk
+     * @return Machine
+     */
+    public static Machine create(EngineKind kind, MachineProfile profile, Quirks quirks, byte[] rom, long seed) {
+        if (!kind.supports(profile, quirks)) {
+            throw new IllegalArgumentException(kind + " does not run " + profile.getName()
+                    + " programs with quirks " + quirks);
+        }
+        switch (kind) {
+            case BATCH:
+                return new BatchMachine(profile, quirks, rom, seed);
+            case BLOCK_CACHE:
+                ChipMachine machine = new ChipMachine(profile, quirks, rom, seed);
+                machine.chip.setEngine(new BlockCacheEngine(machine.chip));
+                return machine;
+            default:
+                return new ChipMachine(profile, quirks, rom, seed);
+        }
+    }
+
+    /**
+     * Sets which keys are held down
+     * @param mask bit n set when key n is held down
+     */
+    public abstract void setKeys(int mask);
+
+    /**
+     * Runs a number of cycles without ticking the timers
+     * @param cycles cycles to run
+     */
+    public abstract void execute(int cycles);
+
+    /**
+     * Returns the machine's state. Only valid until the machine runs again
+     * @return Chip
+     */
+    public abstract Chip getState();
+
+    /**
+     * Returns whether the program hit an instruction the chip throws on
+     * @return boolean
+     */
+    public boolean isFaulted() {
+        return faulted;
+    }
+
+    /**
+     * Runs programs on a chip with its own engine
+     */
+    private static class ChipMachine extends Machine {
+
+        ChipMachine(MachineProfile profile, Quirks quirks, byte[] rom, long seed) {
+            super(profile, quirks, rom, seed);
+        }
+
+        @Override
+        public void setKeys(int mask) {
+            chip.setKeys(mask);
+        }
+
+        @Override
+        public void execute(int cycles) {
+            if (faulted || chip.isWaitingForKey()) {
+                return;
+            }
+            try {
+                chip.execute(cycles);
+            } catch (RuntimeException e) {
+                faulted = true;
+            }
+        }
+
+        @Override
+        public Chip getState() {
+            return chip;
+        }
+    }
+
+    /**
+     * Runs programs on a single lane of a batch engine
+     */
+    private static class BatchMachine extends Machine {
+
+        private BatchEngine batch;
+
+        BatchMachine(MachineProfile profile, Quirks quirks, byte[] rom, long seed) {
+            super(profile, quirks, rom, seed);
+            batch = new BatchEngine(1);
+            batch.load(0, chip);
+        }
+
+        @Override
+        public void setKeys(int mask) {
+            batch.setKeys(0, mask);
+        }
+
+        @Override
+        public void execute(int cycles) {
+            batch.execute(cycles);
+            faulted = batch.isFailed(0);
+        }
+
+        @Override
+        public Chip getState() {
+            batch.store(0, chip);
+            return chip;
+        }
+    }
+}
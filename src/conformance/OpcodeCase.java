@@ -0,0 +1,359 @@
+package conformance;
+
+import chip.Chip;
+import chip.Framebuffer;
+import chip.MachineProfile;
+import chip.Quirks;
+import chip.Snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One opcode run from a known state, with the state it must leave behind.
+ * The starting state is built by setup instructions placed before the opcode, so a case
+ * only uses the program counter, registers and memory like a real ROM would.
+ * Cases are built fluently:
+ * new OpcodeCase("8xy4 sets VF on carry").set(1, 0xFF).set(2, 0x01).run(0x8124).expect(1, 0x00).expect(0xF, 1)
+ */
+public class OpcodeCase {
+
+    // Address the data given to data() is placed at
+    public static final int DATA_ADDRESS = 0x300;
+
+    private String name;
+    private MachineProfile profile = MachineProfile.CHIP_8;
+    private Quirks quirks;
+    private List<Integer> setup;
+    private int opcode = -1;
+    private int[] operands;
+    private int extraCycles;
+    private int keys;
+    private int pressAfter = -1;
+    private int[] data;
+    private List<Check> checks;
+    private boolean expectsFault;
+
+    public OpcodeCase(String name) {
+        this.name = name;
+        this.setup = new ArrayList<>();
+        this.data = new int[0];
+        this.operands = new int[0];
+        this.checks = new ArrayList<>();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MachineProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Returns the quirks the case runs with, the machine's usual ones unless set with with()
+     * @return Quirks
+     */
+    public Quirks getQuirks() {
+        return quirks != null ? quirks : Quirks.forProfile(profile);
+    }
+
+    /**
+     * Runs the case on another machine than CHIP-8
+     * @param profile machine
+     * @return OpcodeCase
+     */
+    public OpcodeCase on(MachineProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /**
+     * Runs the case with other quirks than the machine's usual ones
+     * @param quirks quirks
+     * @return OpcodeCase
+     */
+    public OpcodeCase with(Quirks quirks) {
+        this.quirks = quirks;
+        return this;
+    }
+
+    /**
+     * Adds a setup instruction, run before the opcode under test
+     * @param opcode CHIP-8 machine instruction
+     * @return OpcodeCase
+     */
+    public OpcodeCase before(int opcode) {
+        setup.add(opcode);
+        return this;
+    }
+
+    /**
+     * Sets Vx before the opcode runs, with 6xkk
+     * @param x register
+     * @param kk byte
+     * @return OpcodeCase
+     */
+    public OpcodeCase set(int x, int kk) {
+        return before(0x6000 | (x << 8) | kk);
+    }
+
+    /**
+     * Sets I before the opcode runs, with Annn
+     * @param nnn address
+     * @return OpcodeCase
+     */
+    public OpcodeCase index(int nnn) {
+        return before(0xA000 | nnn);
+    }
+
+    /**
+     * Places bytes at DATA_ADDRESS
+     * @param bytes data
+     * @return OpcodeCase
+     */
+    public OpcodeCase data(int... bytes) {
+        this.data = bytes;
+        return this;
+    }
+
+    /**
+     * Holds keys down from the start
+     * @param mask bit n set when key n is held down
+     * @return OpcodeCase
+     */
+    public OpcodeCase keys(int mask) {
+        this.keys = mask;
+        return this;
+    }
+
+    /**
+     * Sets the opcode under test
+     * @param opcode CHIP-8 machine instruction
+     * @return OpcodeCase
+     */
+    public OpcodeCase run(int opcode) {
+        this.opcode = opcode;
+        return this;
+    }
+
+    /**
+     * Places 16 bit words right after the opcode under test, such as the address of F000 nnnn
+     * or an instruction the opcode skips
+     * @param words words
+     * @return OpcodeCase
+     */
+    public OpcodeCase followedBy(int... words) {
+        this.operands = words;
+        return this;
+    }
+
+    /**
+     * Runs more cycles after the opcode, for opcodes that jump into code placed after them
+     * @param cycles cycles to run
+     * @return OpcodeCase
+     */
+    public OpcodeCase thenRun(int cycles) {
+        this.extraCycles = cycles;
+        return this;
+    }
+
+    /**
+     * Presses a key after the opcode has run
+     * @param key key from 0x0 to 0xF
+     * @return OpcodeCase
+     */
+    public OpcodeCase thenPress(int key) {
+        this.pressAfter = key;
+        return this;
+    }
+
+    public OpcodeCase expect(int x, int value) {
+        return check((chip, snapshot, at) -> snapshot.getRegister(x) == value ? null
+                : String.format("V%X = %02X, expected %02X", x, (int) snapshot.getRegister(x), value));
+    }
+
+    public OpcodeCase expectI(int value) {
+        return check((chip, snapshot, at) -> snapshot.getI() == value ? null
+                : String.format("I = %03X, expected %03X", (int) snapshot.getI(), value));
+    }
+
+    /**
+     * Expects the program counter to have moved a number of bytes from the opcode under test
+     * @param bytes 2 for the next instruction, 4 for a skip, 0 for staying in place
+     * @return OpcodeCase
+     */
+    public OpcodeCase expectAdvance(int bytes) {
+        return check((chip, snapshot, at) -> snapshot.getPc() == at + bytes ? null
+                : String.format("pc = %03X, expected %03X", (int) snapshot.getPc(), at + bytes));
+    }
+
+    public OpcodeCase expectPc(int value) {
+        return check((chip, snapshot, at) -> snapshot.getPc() == value ? null
+                : String.format("pc = %03X, expected %03X", (int) snapshot.getPc(), value));
+    }
+
+    public OpcodeCase expectSp(int value) {
+        return check((chip, snapshot, at) -> snapshot.getSp() == value ? null
+                : String.format("sp = %d, expected %d", snapshot.getSp(), value));
+    }
+
+    public OpcodeCase expectDt(int value) {
+        return check((chip, snapshot, at) -> snapshot.getDt() == value ? null
+                : String.format("dt = %d, expected %d", snapshot.getDt(), value));
+    }
+
+    public OpcodeCase expectSt(int value) {
+        return check((chip, snapshot, at) -> snapshot.getSt() == value ? null
+                : String.format("st = %d, expected %d", snapshot.getSt(), value));
+    }
+
+    public OpcodeCase expectMemory(int address, int value) {
+        return check((chip, snapshot, at) -> snapshot.getMemory(address) == value ? null
+                : String.format("memory[%03X] = %02X, expected %02X", address, (int) snapshot.getMemory(address), value));
+    }
+
+    public OpcodeCase expectPixel(int x, int y, boolean set) {
+        return check((chip, snapshot, at) -> chip.getFramebuffer().isPixelSet(x, y) == set ? null
+                : String.format("pixel (%d, %d) is %s", x, y, set ? "clear" : "set"));
+    }
+
+    /**
+     * Expects the color of a pixel, made of one bit from each plane
+     * @param x column
+     * @param y row
+     * @param color bit n set when the pixel is on in plane n
+     * @return OpcodeCase
+     */
+    public OpcodeCase expectColor(int x, int y, int color) {
+        return check((chip, snapshot, at) -> chip.getFramebuffer().getPixel(x, y) == color ? null
+                : String.format("pixel (%d, %d) has color %d, expected %d", x, y,
+                chip.getFramebuffer().getPixel(x, y), color));
+    }
+
+    public OpcodeCase expectResolution(int width, int height) {
+        return check((chip, snapshot, at) -> {
+            Framebuffer framebuffer = chip.getFramebuffer();
+            return framebuffer.getWidth() == width && framebuffer.getHeight() == height ? null
+                    : String.format("display is %dx%d, expected %dx%d",
+                    framebuffer.getWidth(), framebuffer.getHeight(), width, height);
+        });
+    }
+
+    public OpcodeCase expectBlankScreen() {
+        return check((chip, snapshot, at) -> {
+            Framebuffer framebuffer = chip.getFramebuffer();
+            for (int p = 0; p < framebuffer.getPlaneCount(); p++) {
+                long[] rows = framebuffer.getPlane(p);
+                for (int word = 0; word < rows.length; word++) {
+                    if (rows[word] != 0) {
+                        return "screen is not blank at row " + word / framebuffer.getWordsPerRow();
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    public OpcodeCase expectWaiting(boolean waiting) {
+        return check((chip, snapshot, at) -> chip.isWaitingForKey() == waiting ? null
+                : waiting ? "not waiting for a key" : "still waiting for a key");
+    }
+
+    /**
+     * Expects the opcode to stop the program, as an unknown opcode does
+     * @return OpcodeCase
+     */
+    public OpcodeCase expectFault() {
+        this.expectsFault = true;
+        return this;
+    }
+
+    private OpcodeCase check(Check check) {
+        checks.add(check);
+        return this;
+    }
+
+    /**
+     * Returns the address the opcode under test is placed at
+     * @return int
+     */
+    public int getOpcodeAddress() {
+        return 0x200 + setup.size() * 2;
+    }
+
+    /**
+     * Assembles the setup, the opcode under test and the data into a program
+     * @return byte[]
+     */
+    public byte[] toRom() {
+        if (opcode < 0) {
+            throw new IllegalStateException("No opcode to test in " + name);
+        }
+        int length = data.length > 0 ? DATA_ADDRESS - 0x200 + data.length : (setup.size() + 1 + operands.length) * 2;
+        byte[] rom = new byte[length];
+        int address = 0;
+        for (int instruction : setup) {
+            rom[address++] = (byte) (instruction >> 8);
+            rom[address++] = (byte) instruction;
+        }
+        rom[address++] = (byte) (opcode >> 8);
+        rom[address++] = (byte) opcode;
+        for (int word : operands) {
+            rom[address++] = (byte) (word >> 8);
+            rom[address++] = (byte) word;
+        }
+        for (int i = 0; i < data.length; i++) {
+            rom[DATA_ADDRESS - 0x200 + i] = (byte) data[i];
+        }
+        return rom;
+    }
+
+    /**
+     * Runs the case on an engine
+     * @param kind engine to run on
+     * @return List of failure messages, empty if the engine behaved as expected
+     */
+    public List<String> verify(EngineKind kind) {
+        Machine machine = Machine.create(kind, profile, getQuirks(), toRom(), 1);
+        machine.setKeys(keys);
+        machine.execute(setup.size() + 1 + extraCycles);
+        if (pressAfter >= 0) {
+            machine.setKeys(keys | (1 << pressAfter));
+        }
+
+        List<String> failures = new ArrayList<>();
+        if (machine.isFaulted() != expectsFault) {
+            failures.add(expectsFault ? "expected a fault" : "faulted");
+            return failures;
+        }
+        if (expectsFault) {
+            return failures;
+        }
+
+        Chip chip = machine.getState();
+        Snapshot snapshot = chip.snapshot();
+        for (Check check : checks) {
+            String failure = check.verify(chip, snapshot, getOpcodeAddress());
+            if (failure != null) {
+                failures.add(failure);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * One expectation about the state after the opcode ran
+     */
+    @FunctionalInterface
+    private interface Check {
+
+        /**
+         * @param chip state after the case ran
+         * @param snapshot snapshot of that state
+         * @param opcodeAddress address of the opcode under test
+         * @return String A failure message, or null if the state is as expected
+         */
+        String verify(Chip chip, Snapshot snapshot, int opcodeAddress);
+    }
+}
@@ -0,0 +1,235 @@
+package conformance;
+
+import chip.MachineProfile;
+import chip.Quirks;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Golden expected states for every CHIP-8 opcode and the SUPER-CHIP and XO-CHIP extensions,
+ * checked on every engine that runs the machine.
+ * Flag instructions write VF last, so VF holds the flag when it is also the target register
+ */
+public final class OpcodeSuite {
+
+    private OpcodeSuite() {
+    }
+
+    /**
+     * Returns every case
+     * @return List of OpcodeCase
+     */
+    public static List<OpcodeCase> cases() {
+        return List.of(
+                new OpcodeCase("00E0 clears the screen")
+                        .set(0, 0).before(0xF029).before(0xD005).run(0x00E0)
+                        .expectBlankScreen().expectAdvance(2),
+                new OpcodeCase("00EE returns to the instruction after the call")
+                        .before(0x2204).before(0x1202).run(0x00EE)
+                        .expectPc(0x202).expectSp(0),
+                new OpcodeCase("1nnn jumps")
+                        .run(0x1234).expectPc(0x234),
+                new OpcodeCase("2nnn calls")
+                        .run(0x2345).expectPc(0x345).expectSp(1),
+                new OpcodeCase("3xkk skips when equal")
+                        .set(1, 0x12).run(0x3112).expectAdvance(4),
+                new OpcodeCase("3xkk does not skip when different")
+                        .set(1, 0x12).run(0x3113).expectAdvance(2),
+                new OpcodeCase("4xkk skips when different")
+                        .set(1, 0x12).run(0x4113).expectAdvance(4),
+                new OpcodeCase("4xkk does not skip when equal")
+                        .set(1, 0x12).run(0x4112).expectAdvance(2),
+                new OpcodeCase("5xy0 skips when equal")
+                        .set(1, 0x34).set(2, 0x34).run(0x5120).expectAdvance(4),
+                new OpcodeCase("5xy0 does not skip when different")
+                        .set(1, 0x34).set(2, 0x35).run(0x5120).expectAdvance(2),
+                new OpcodeCase("6xkk loads")
+                        .run(0x6A5C).expect(0xA, 0x5C).expectAdvance(2),
+                new OpcodeCase("7xkk adds and wraps without touching VF")
+                        .set(1, 0xFF).set(0xF, 0x05).run(0x7102).expect(1, 0x01).expect(0xF, 0x05),
+                new OpcodeCase("8xy0 copies")
+                        .set(2, 0x77).run(0x8120).expect(1, 0x77),
+                new OpcodeCase("8xy1 ors")
+                        .set(1, 0x0F).set(2, 0x30).run(0x8121).expect(1, 0x3F),
+                new OpcodeCase("8xy2 ands")
+                        .set(1, 0x3C).set(2, 0x0F).run(0x8122).expect(1, 0x0C),
+                new OpcodeCase("8xy3 xors")
+                        .set(1, 0x3C).set(2, 0x0F).run(0x8123).expect(1, 0x33),
+                new OpcodeCase("8xy4 adds without carry")
+                        .set(1, 0x10).set(2, 0x20).run(0x8124).expect(1, 0x30).expect(0xF, 0),
+                new OpcodeCase("8xy4 wraps and sets VF on carry")
+                        .set(1, 0xFF).set(2, 0x01).run(0x8124).expect(1, 0x00).expect(0xF, 1),
+                new OpcodeCase("8xy4 into VF keeps the carry")
+                        .set(0xF, 0xFF).set(2, 0x02).run(0x8F24).expect(0xF, 1),
+                new OpcodeCase("8xy5 subtracts without borrow")
+                        .set(1, 0x30).set(2, 0x10).run(0x8125).expect(1, 0x20).expect(0xF, 1),
+                new OpcodeCase("8xy5 wraps and clears VF on borrow")
+                        .set(1, 0x10).set(2, 0x30).run(0x8125).expect(1, 0xE0).expect(0xF, 0),
+                new OpcodeCase("8xy5 of equal values has no borrow")
+                        .set(1, 0x42).set(2, 0x42).run(0x8125).expect(1, 0x00).expect(0xF, 1),
+                new OpcodeCase("8xy6 shifts right into VF")
+                        .set(1, 0x05).run(0x8126).expect(1, 0x02).expect(0xF, 1),
+                new OpcodeCase("8xy7 subtracts in reverse without borrow")
+                        .set(1, 0x10).set(2, 0x30).run(0x8127).expect(1, 0x20).expect(0xF, 1),
+                new OpcodeCase("8xy7 wraps and clears VF on borrow")
+                        .set(1, 0x30).set(2, 0x10).run(0x8127).expect(1, 0xE0).expect(0xF, 0),
+                new OpcodeCase("8xyE shifts left and sets VF to the top bit")
+                        .set(1, 0x81).run(0x812E).expect(1, 0x02).expect(0xF, 1),
+                new OpcodeCase("8xyE without top bit clears VF")
+                        .set(1, 0x40).run(0x812E).expect(1, 0x80).expect(0xF, 0),
+                new OpcodeCase("8xyF is not an instruction")
+                        .run(0x812F).expectFault(),
+                new OpcodeCase("9xy0 skips when different")
+                        .set(1, 0x34).set(2, 0x35).run(0x9120).expectAdvance(4),
+                new OpcodeCase("9xy0 does not skip when equal")
+                        .set(1, 0x34).set(2, 0x34).run(0x9120).expectAdvance(2),
+                new OpcodeCase("Annn loads I")
+                        .run(0xA123).expectI(0x123),
+                new OpcodeCase("Bnnn jumps offset by V0")
+                        .set(0, 0x10).run(0xB300).expectPc(0x310),
+                new OpcodeCase("Cxkk masks the random byte")
+                        .set(1, 0xFF).run(0xC100).expect(1, 0x00),
+                new OpcodeCase("Dxyn draws a sprite")
+                        .set(0, 0).before(0xF029).set(1, 2).set(2, 3).run(0xD125)
+                        .expectPixel(2, 3, true).expectPixel(5, 3, true).expectPixel(6, 3, false)
+                        .expectPixel(3, 4, false).expect(0xF, 0),
+                new OpcodeCase("Dxyn erases and reports a collision")
+                        .set(0, 0).before(0xF029).before(0xD005).run(0xD005)
+                        .expectBlankScreen().expect(0xF, 1),
+                new OpcodeCase("Ex9E skips when the key is down")
+                        .keys(1 << 5).set(1, 5).run(0xE19E).expectAdvance(4),
+                new OpcodeCase("Ex9E does not skip when the key is up")
+                        .keys(1 << 4).set(1, 5).run(0xE19E).expectAdvance(2),
+                new OpcodeCase("ExA1 skips when the key is up")
+                        .keys(1 << 4).set(1, 5).run(0xE1A1).expectAdvance(4),
+                new OpcodeCase("ExA1 does not skip when the key is down")
+                        .keys(1 << 5).set(1, 5).run(0xE1A1).expectAdvance(2),
+                new OpcodeCase("Ex00 is not an instruction")
+                        .run(0xE100).expectFault(),
+                new OpcodeCase("Fx07 reads the delay timer")
+                        .set(1, 0x20).before(0xF115).run(0xF207).expect(2, 0x20),
+                new OpcodeCase("Fx0A waits for a key")
+                        .run(0xF10A).thenRun(3).expectAdvance(0).expectWaiting(true),
+                new OpcodeCase("Fx0A stores the pressed key")
+                        .run(0xF10A).thenRun(3).thenPress(7)
+                        .expect(1, 7).expectAdvance(2).expectWaiting(false),
+                new OpcodeCase("Fx0A ignores keys already down")
+                        .keys(1 << 3).run(0xF10A).thenRun(3).expectAdvance(0).expectWaiting(true),
+                new OpcodeCase("Fx15 sets the delay timer")
+                        .set(1, 0x3C).run(0xF115).expectDt(0x3C),
+                new OpcodeCase("Fx18 sets the sound timer")
+                        .set(1, 0x3C).run(0xF118).expectSt(0x3C),
+                new OpcodeCase("Fx1E adds to I")
+                        .index(0x300).set(1, 0x10).run(0xF11E).expectI(0x310),
+                new OpcodeCase("Fx29 points I at the digit's font sprite")
+                        .set(1, 0xA).run(0xF129).expectI(0x50 + 0xA * 5),
+                new OpcodeCase("Fx33 stores BCD")
+                        .index(0x300).set(1, 254).run(0xF133)
+                        .expectMemory(0x300, 2).expectMemory(0x301, 5).expectMemory(0x302, 4),
+                new OpcodeCase("Fx55 stores registers and advances I")
+                        .index(0x300).set(0, 1).set(1, 2).set(2, 3).run(0xF255)
+                        .expectMemory(0x300, 1).expectMemory(0x301, 2).expectMemory(0x302, 3)
+                        .expectMemory(0x303, 0).expectI(0x303),
+                new OpcodeCase("Fx65 loads registers and advances I")
+                        .data(9, 8, 7, 6).index(0x300).run(0xF265)
+                        .expect(0, 9).expect(1, 8).expect(2, 7).expect(3, 0).expectI(0x303),
+                new OpcodeCase("00FF is unsupported on CHIP-8")
+                        .run(0x00FF).expectFault(),
+                new OpcodeCase("Fx75 is unsupported on CHIP-8")
+                        .run(0xF175).expectFault(),
+                new OpcodeCase("F000 is unsupported on SUPER-CHIP").on(MachineProfile.SUPER_CHIP)
+                        .run(0xF000).followedBy(0x1234).expectFault(),
+                new OpcodeCase("Dxy0 draws nothing on CHIP-8")
+                        .data(0xFF).index(0x300).run(0xD000).expectPixel(0, 0, false).expect(0xF, 0).expectAdvance(2),
+                new OpcodeCase("5xy2 compares like 5xy0 on CHIP-8")
+                        .set(1, 3).set(2, 3).run(0x5122).expectAdvance(4),
+                new OpcodeCase("00FF switches to high resolution").on(MachineProfile.SUPER_CHIP)
+                        .run(0x00FF).expectResolution(128, 64).expectBlankScreen().expectAdvance(2),
+                new OpcodeCase("00FE switches back to low resolution").on(MachineProfile.SUPER_CHIP)
+                        .before(0x00FF).run(0x00FE).expectResolution(64, 32).expectAdvance(2),
+                new OpcodeCase("00FD exits").on(MachineProfile.SUPER_CHIP)
+                        .run(0x00FD).thenRun(3).expectAdvance(0),
+                new OpcodeCase("00Cn scrolls down n rows").on(MachineProfile.SUPER_CHIP)
+                        .set(0, 0).before(0xF029).before(0xD005).run(0x00C2)
+                        .expectPixel(0, 0, false).expectPixel(0, 2, true).expectPixel(1, 6, true),
+                new OpcodeCase("00FB scrolls right 4 pixels").on(MachineProfile.SUPER_CHIP)
+                        .set(0, 0).before(0xF029).before(0xD005).run(0x00FB)
+                        .expectPixel(0, 0, false).expectPixel(4, 0, true).expectPixel(7, 0, true),
+                new OpcodeCase("00FC scrolls left 4 pixels").on(MachineProfile.SUPER_CHIP)
+                        .set(0, 0).set(1, 4).before(0xF029).before(0xD105).run(0x00FC)
+                        .expectPixel(0, 0, true).expectPixel(3, 0, true).expectPixel(4, 0, false),
+                new OpcodeCase("Dxy0 draws a 16x16 sprite").on(MachineProfile.SUPER_CHIP)
+                        .data(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF,
+                                0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF)
+                        .index(0x300).run(0xD000)
+                        .expectPixel(15, 15, true).expectPixel(16, 0, false).expectPixel(0, 16, false).expect(0xF, 0),
+                new OpcodeCase("Fx30 points I at the digit's large font sprite").on(MachineProfile.SUPER_CHIP)
+                        .set(1, 3).run(0xF130).expectI(0xA0 + 3 * 10),
+                new OpcodeCase("Fx75 and Fx85 save and restore registers").on(MachineProfile.SUPER_CHIP)
+                        .set(0, 1).set(1, 2).before(0xF175).set(0, 0).set(1, 0).run(0xF185)
+                        .expect(0, 1).expect(1, 2),
+                new OpcodeCase("F000 nnnn loads a 16 bit address into I").on(MachineProfile.XO_CHIP)
+                        .run(0xF000).followedBy(0x1234).expectI(0x1234).expectAdvance(4),
+                new OpcodeCase("Skips step over all of F000 nnnn").on(MachineProfile.XO_CHIP)
+                        .set(1, 5).run(0x3105).followedBy(0xF000, 0x1234).expectAdvance(6),
+                new OpcodeCase("5xy2 stores a range of registers").on(MachineProfile.XO_CHIP)
+                        .index(0x300).set(1, 7).set(2, 8).set(3, 9).run(0x5132)
+                        .expectMemory(0x300, 7).expectMemory(0x301, 8).expectMemory(0x302, 9)
+                        .expectI(0x300).expectAdvance(2),
+                new OpcodeCase("5xy3 loads a range of registers in reverse").on(MachineProfile.XO_CHIP)
+                        .data(1, 2, 3).index(0x300).run(0x5313)
+                        .expect(3, 1).expect(2, 2).expect(1, 3).expectI(0x300),
+                new OpcodeCase("Fn01 selects the planes Dxyn draws to").on(MachineProfile.XO_CHIP)
+                        .before(0xF201).set(0, 0).before(0xF029).run(0xD005)
+                        .expectColor(0, 0, 2).expectColor(0, 1, 2).expectColor(1, 1, 0),
+                new OpcodeCase("8xy6 shifts Vy into Vx with the shift quirk").with(Quirks.COSMAC_VIP)
+                        .set(1, 0).set(2, 5).run(0x8126).expect(1, 2).expect(2, 5).expect(0xF, 1),
+                new OpcodeCase("8xyE shifts Vy into Vx with the shift quirk").with(Quirks.COSMAC_VIP)
+                        .set(1, 0).set(2, 0x81).run(0x812E).expect(1, 2).expect(0xF, 1),
+                new OpcodeCase("Fx55 leaves I alone without the increment quirk").with(Quirks.SUPER_CHIP)
+                        .index(0x300).set(0, 1).run(0xF055).expectMemory(0x300, 1).expectI(0x300),
+                new OpcodeCase("Fx65 leaves I alone without the increment quirk").with(Quirks.SUPER_CHIP)
+                        .data(9).index(0x300).run(0xF065).expect(0, 9).expectI(0x300),
+                new OpcodeCase("Bxnn adds Vx with the jump quirk").with(Quirks.SUPER_CHIP)
+                        .set(0, 8).set(2, 4).run(0xB230).expectPc(0x234),
+                new OpcodeCase("Dxyn wraps sprites around the edges")
+                        .set(0, 62).set(1, 30).set(2, 0).before(0xF229).run(0xD015)
+                        .expectPixel(62, 30, true).expectPixel(0, 30, true).expectPixel(62, 0, true),
+                new OpcodeCase("Dxyn clips sprites at the edges with the clip quirk").with(Quirks.COSMAC_VIP)
+                        .set(0, 62).set(1, 30).set(2, 0).before(0xF229).run(0xD015)
+                        .expectPixel(62, 30, true).expectPixel(0, 30, false).expectPixel(62, 0, false)
+                        .expect(0xF, 0),
+                new OpcodeCase("Dxy0 clips wide sprites with the clip quirk").on(MachineProfile.SUPER_CHIP)
+                        .data(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF,
+                                0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF)
+                        .set(0, 56).set(1, 24).index(0x300).run(0xD010)
+                        .expectPixel(63, 31, true).expectPixel(0, 24, false).expectPixel(56, 0, false)
+        );
+    }
+
+    /**
+     * Runs every case on every engine and prints the failures
+     * @param out stream to print to
+     * @return int Number of failed case runs
+     */
+    public static int run(PrintStream out) {
+        int failed = 0;
+        int runs = 0;
+        for (OpcodeCase opcodeCase : cases()) {
+            for (EngineKind kind : EngineKind.values()) {
+                if (!kind.supports(opcodeCase.getProfile(), opcodeCase.getQuirks())) {
+                    continue;
+                }
+                List<String> failures = opcodeCase.verify(kind);
+                runs++;
+                if (!failures.isEmpty()) {
+                    failed++;
+                    out.printf("FAIL %s on %s: %s%n", opcodeCase.getName(), kind, String.join(", ", failures));
+                }
+            }
+        }
+        out.printf("Opcode conformance: %d of %d case runs passed%n", runs - failed, runs);
+        return failed;
+    }
+}
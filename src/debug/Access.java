@@ -0,0 +1,18 @@
+package debug;
+
+/**
+ * Kind of memory access a watchpoint stops on
+ */
+public enum Access {
+    READ,
+    WRITE,
+    READ_WRITE;
+
+    boolean reads() {
+        return this != WRITE;
+    }
+
+    boolean writes() {
+        return this != READ;
+    }
+}
@@ -0,0 +1,37 @@
+package debug;
+
+/**
+ * One subroutine on the call stack
+ */
+public final class CallFrame {
+
+    private final int entry;
+    private final int pc;
+
+    CallFrame(int entry, int pc) {
+        this.entry = entry;
+        this.pc = pc;
+    }
+
+    /**
+     * Returns the address the subroutine starts at, 0x200 for the program itself
+     * @return int
+     */
+    public int getEntry() {
+        return entry;
+    }
+
+    /**
+     * Returns the instruction the subroutine is at: the next instruction for the innermost frame,
+     * the 2nnn it is waiting on for every other frame
+     * @return int
+     */
+    public int getPc() {
+        return pc;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("0x%03X in 0x%03X", pc, entry);
+    }
+}
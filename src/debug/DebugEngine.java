@@ -0,0 +1,289 @@
+package debug;
+
+import chip.Chip;
+import chip.Engine;
+
+/**
+ * Engine that runs instructions one at a time like the interpreter while checking breakpoints,
+ * watchpoints and watched registers. The debugger only installs it while something is armed,
+ * so the chip pays nothing for debugging otherwise
+ */
+class DebugEngine implements Engine {
+
+    private final Debugger debugger;
+    private final Chip chip;
+
+    // Engine that was installed before debugging started
+    private Engine previous;
+
+    // Set by address or opcode, filled in by the debugger
+    private final boolean[] breakpoints;
+    private final boolean[] opcodeBreakpoints;
+    private final boolean[] watchedReads;
+    private final boolean[] watchedWrites;
+
+    // Whether any byte is watched at all, so instructions that access memory are only decoded when needed
+    private boolean watchingMemory;
+
+    // Bit n set to watch Vn, bit INDEX_REGISTER to watch I
+    private int watchedRegisters;
+
+    // Value of every watched register after the last instruction
+    private final int[] registerValues;
+
+    private boolean paused;
+
+    // Run the next instruction without checking it, to move off the instruction the chip stopped before
+    private boolean resuming;
+
+    // Instructions left until a single step stops, 0 when not stepping
+    private long steps;
+
+    // Stop once the program counter is here with the stack this deep, -1 when not stepping over
+    private int targetPc;
+    private int targetSp;
+
+    DebugEngine(Debugger debugger, Chip chip) {
+        this.debugger = debugger;
+        this.chip = chip;
+        this.breakpoints = new boolean[chip.getMemorySize()];
+        this.opcodeBreakpoints = new boolean[0x10000];
+        this.watchedReads = new boolean[chip.getMemorySize()];
+        this.watchedWrites = new boolean[chip.getMemorySize()];
+        this.registerValues = new int[Stop.INDEX_REGISTER + 1];
+        this.targetPc = -1;
+    }
+
+    @Override
+    public long execute(long cycles) {
+        if (paused) {
+            return 0;
+        }
+        for (long i = 0; i < cycles; i++) {
+            int pc = chip.getPc();
+            if (!resuming) {
+                Stop stop = checkBefore(pc);
+                if (stop != null) {
+                    stop(stop);
+                    return i;
+                }
+            }
+            resuming = false;
+
+            chip.run();
+
+            Stop stop = checkAfter();
+            if (stop != null) {
+                stop(stop);
+                return i + 1;
+            }
+        }
+        return cycles;
+    }
+
+    /**
+     * Checks the instruction about to run against breakpoints and memory watchpoints
+     * @param pc address of the instruction
+     * @return Stop Where to stop, or null to run it
+     */
+    private Stop checkBefore(int pc) {
+        if (breakpoints[pc]) {
+            return Stop.at(StopReason.BREAKPOINT, pc);
+        }
+        char opcode = (char) (chip.getMemory(pc) << 8 | chip.getMemory(pc + 1));
+        if (opcodeBreakpoints[opcode]) {
+            return Stop.at(StopReason.OPCODE, pc);
+        }
+        if (watchingMemory) {
+            return checkMemory(pc, opcode);
+        }
+        return null;
+    }
+
+    /**
+     * Checks the bytes an instruction reads or writes through I against the memory watchpoints
+     * @param pc address of the instruction
+     * @param opcode instruction
+     * @return Stop Where to stop, or null to run it
+     */
+    private Stop checkMemory(int pc, char opcode) {
+        int x = (opcode & 0x0F00) >> 8;
+        int y = (opcode & 0x00F0) >> 4;
+        int n = opcode & 0x000F;
+        int kk = opcode & 0x00FF;
+        boolean xoChip = chip.getProfile().isXoChip();
+
+        int length = 0;
+        boolean write = false;
+        switch (opcode & 0xF000) {
+            case 0xD000:
+                int rows = n == 0 && chip.getProfile().isSuperChip() ? 32 : n;
+                length = rows * Math.max(1, Integer.bitCount(chip.getFramebuffer().getPlaneMask()));
+                break;
+            case 0x5000:
+                if (xoChip && (n == 0x2 || n == 0x3)) {
+                    length = Math.abs(y - x) + 1;
+                    write = n == 0x2;
+                }
+                break;
+            case 0xF000:
+                if (kk == 0x33) {
+                    length = 3;
+                    write = true;
+                } else if (kk == 0x55 || kk == 0x65) {
+                    length = x + 1;
+                    write = kk == 0x55;
+                }
+                break;
+            default:
+                break;
+        }
+
+        boolean[] watched = write ? watchedWrites : watchedReads;
+        int start = chip.getI();
+        int end = Math.min(start + length, watched.length);
+        for (int address = start; address < end; address++) {
+            if (watched[address]) {
+                return new Stop(write ? StopReason.WRITE : StopReason.READ, pc, address, -1, 0, 0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks watched registers and stepping after an instruction ran
+     * @return Stop Where to stop, or null to go on
+     */
+    private Stop checkAfter() {
+        int pc = chip.getPc();
+        if (watchedRegisters != 0) {
+            for (int register = 0; register <= Stop.INDEX_REGISTER; register++) {
+                if ((watchedRegisters & (1 << register)) == 0) {
+                    continue;
+                }
+                int value = readRegister(register);
+                if (value != registerValues[register]) {
+                    int old = registerValues[register];
+                    captureRegisters();
+                    return new Stop(StopReason.REGISTER, pc, -1, register, old, value);
+                }
+            }
+        }
+        if (steps > 0 && --steps == 0) {
+            return Stop.at(StopReason.STEP, pc);
+        }
+        if (pc == targetPc && chip.getSp() == targetSp) {
+            return Stop.at(StopReason.STEP, pc);
+        }
+        return null;
+    }
+
+    /**
+     * Pauses the chip and reports why. Whatever stopped it also ends a step or step over in progress
+     * @param stop why and where
+     */
+    private void stop(Stop stop) {
+        paused = true;
+        cancelStep();
+        debugger.stopped(stop);
+    }
+
+    private int readRegister(int register) {
+        return register == Stop.INDEX_REGISTER ? chip.getI() : chip.getRegister(register);
+    }
+
+    /**
+     * Remembers the current value of every watched register, so only later changes stop the chip
+     */
+    void captureRegisters() {
+        for (int register = 0; register <= Stop.INDEX_REGISTER; register++) {
+            registerValues[register] = readRegister(register);
+        }
+    }
+
+    @Override
+    public boolean isPaused() {
+        return paused;
+    }
+
+    void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    /**
+     * Lets the chip run on, starting with the instruction it stopped before
+     */
+    void resume() {
+        paused = false;
+        resuming = true;
+        captureRegisters();
+    }
+
+    /**
+     * Resumes for a number of instructions, then stops with StopReason.STEP
+     * @param steps instructions to run
+     */
+    void stepInstructions(long steps) {
+        this.steps = steps;
+        resume();
+    }
+
+    /**
+     * Resumes until the program counter reaches an address with the stack as deep as it is now
+     * @param pc address to stop at
+     */
+    void runTo(int pc) {
+        this.targetPc = pc;
+        this.targetSp = chip.getSp();
+        resume();
+    }
+
+    /**
+     * Returns whether a step or step over has not finished yet
+     * @return boolean
+     */
+    boolean isStepping() {
+        return steps > 0 || targetPc >= 0;
+    }
+
+    /**
+     * Forgets a step or step over that has not finished yet
+     */
+    void cancelStep() {
+        steps = 0;
+        targetPc = -1;
+    }
+
+    Engine getPrevious() {
+        return previous;
+    }
+
+    void setPrevious(Engine previous) {
+        this.previous = previous;
+    }
+
+    boolean[] getBreakpoints() {
+        return breakpoints;
+    }
+
+    boolean[] getOpcodeBreakpoints() {
+        return opcodeBreakpoints;
+    }
+
+    boolean[] getWatchedReads() {
+        return watchedReads;
+    }
+
+    boolean[] getWatchedWrites() {
+        return watchedWrites;
+    }
+
+    void setWatchingMemory(boolean watchingMemory) {
+        this.watchingMemory = watchingMemory;
+    }
+
+    void setWatchedRegisters(int watchedRegisters) {
+        this.watchedRegisters = watchedRegisters;
+        captureRegisters();
+    }
+}
@@ -0,0 +1,314 @@
+package debug;
+
+import chip.Chip;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Breakpoints, watchpoints, stepping and a call stack view for a chip.
+ * While a breakpoint, watchpoint or watched register is armed, or the chip is paused or stepping,
+ * the debugger puts its own engine in front of the chip's engine. Once everything is cleared the
+ * chip's engine goes back in place, so a chip with an idle debugger runs exactly as fast as one without.
+ * Call it from the thread that runs the chip
+ */
+public class Debugger {
+
+    // Range of memory watched by watchMemory()
+    private static final class MemoryWatch {
+        private final int address;
+        private final int length;
+        private final Access access;
+
+        MemoryWatch(int address, int length, Access access) {
+            this.address = address;
+            this.length = length;
+            this.access = access;
+        }
+    }
+
+    private Chip chip;
+    private DebugEngine engine;
+
+    private SortedSet<Integer> breakpoints;
+
+    // Opcode breakpoints as (opcode, mask) pairs packed into an int, opcode in the high half
+    private List<Integer> opcodeBreakpoints;
+
+    private List<MemoryWatch> memoryWatches;
+
+    // Bit n set to watch Vn, bit Stop.INDEX_REGISTER to watch I
+    private int watchedRegisters;
+
+    private Stop lastStop;
+
+    private StopListener listener;
+
+    public Debugger(Chip chip) {
+        this.chip = chip;
+        this.engine = new DebugEngine(this, chip);
+        this.breakpoints = new TreeSet<>();
+        this.opcodeBreakpoints = new ArrayList<>();
+        this.memoryWatches = new ArrayList<>();
+    }
+
+    /**
+     * Stops the chip before it runs the instruction at an address
+     * @param address memory address
+     */
+    public void addBreakpoint(int address) {
+        checkAddress(address);
+        breakpoints.add(address);
+        engine.getBreakpoints()[address] = true;
+        arm();
+    }
+
+    public void removeBreakpoint(int address) {
+        if (breakpoints.remove(address)) {
+            engine.getBreakpoints()[address] = false;
+            arm();
+        }
+    }
+
+    /**
+     * Returns the addresses with a breakpoint, lowest first
+     * @return SortedSet of Integer
+     */
+    public SortedSet<Integer> getBreakpoints() {
+        return Collections.unmodifiableSortedSet(breakpoints);
+    }
+
+    /**
+     * Stops the chip before it runs any instruction whose bits under a mask match an opcode,
+     * for example opcode 0xD000 with mask 0xF000 for every Dxyn
+     * @param opcode bits to match
+     * @param mask bits of the instruction that are compared, 0xFFFF for a single opcode
+     */
+    public void addOpcodeBreakpoint(int opcode, int mask) {
+        int breakpoint = (opcode & mask) << 16 | mask;
+        if (!opcodeBreakpoints.contains(breakpoint)) {
+            opcodeBreakpoints.add(breakpoint);
+            updateOpcodeBreakpoints();
+        }
+    }
+
+    public void removeOpcodeBreakpoint(int opcode, int mask) {
+        if (opcodeBreakpoints.remove(Integer.valueOf((opcode & mask) << 16 | mask))) {
+            updateOpcodeBreakpoints();
+        }
+    }
+
+    /**
+     * Stops the chip before an instruction reads or writes memory in a range through I:
+     * Dxyn reading a sprite, Fx33, Fx55 and Fx65, and XO-CHIP's 5xy2 and 5xy3
+     * @param address first watched address
+     * @param length number of watched bytes
+     * @param access accesses to stop on
+     */
+    public void watchMemory(int address, int length, Access access) {
+        checkAddress(address);
+        checkAddress(address + length - 1);
+        memoryWatches.add(new MemoryWatch(address, length, access));
+        updateMemoryWatches();
+    }
+
+    /**
+     * Removes every memory watchpoint that starts at an address
+     * @param address first watched address
+     */
+    public void unwatchMemory(int address) {
+        if (memoryWatches.removeIf(watch -> watch.address == address)) {
+            updateMemoryWatches();
+        }
+    }
+
+    /**
+     * Stops the chip right after an instruction changes a register
+     * @param register 0 to 15 for V0 to VF, Stop.INDEX_REGISTER for I
+     */
+    public void watchRegister(int register) {
+        if (register < 0 || register > Stop.INDEX_REGISTER) {
+            throw new IllegalArgumentException("No such register: " + register);
+        }
+        watchedRegisters |= 1 << register;
+        engine.setWatchedRegisters(watchedRegisters);
+        arm();
+    }
+
+    public void unwatchRegister(int register) {
+        watchedRegisters &= ~(1 << register);
+        engine.setWatchedRegisters(watchedRegisters);
+        arm();
+    }
+
+    /**
+     * Removes every breakpoint and watch. A paused chip stays paused
+     */
+    public void clear() {
+        breakpoints.clear();
+        Arrays.fill(engine.getBreakpoints(), false);
+        opcodeBreakpoints.clear();
+        updateOpcodeBreakpoints();
+        memoryWatches.clear();
+        updateMemoryWatches();
+        watchedRegisters = 0;
+        engine.setWatchedRegisters(0);
+        arm();
+    }
+
+    /**
+     * Stops the chip before its next instruction
+     */
+    public void pause() {
+        if (!engine.isPaused()) {
+            engine.cancelStep();
+            engine.setPaused(true);
+            arm();
+            stopped(Stop.at(StopReason.PAUSE, chip.getPc()));
+        }
+    }
+
+    /**
+     * Lets a paused chip run on. The instruction it stopped before runs even if it has a breakpoint
+     */
+    public void resume() {
+        if (engine.isPaused()) {
+            engine.resume();
+            arm();
+        }
+    }
+
+    public boolean isPaused() {
+        return chip.getEngine() == engine && engine.isPaused();
+    }
+
+    /**
+     * Runs the next instruction right away and stops after it, unless a watched register stops it first.
+     * Timers do not tick while stepping
+     * @return Stop
+     */
+    public Stop step() {
+        engine.stepInstructions(1);
+        arm();
+        chip.execute(1);
+        return lastStop;
+    }
+
+    /**
+     * Runs a 2nnn call until the subroutine returns, then stops. Anything else is a single step.
+     * The call runs with the chip's frames and timers, the chip stops once it returns
+     * or when a breakpoint or watchpoint is hit on the way
+     */
+    public void stepOver() {
+        int pc = chip.getPc();
+        if ((chip.getMemory(pc) & 0xF0) != 0x20) {
+            step();
+            return;
+        }
+        engine.runTo(pc + 2);
+        arm();
+    }
+
+    /**
+     * Returns where the chip stopped last
+     * @return Stop, or null if it never stopped
+     */
+    public Stop getLastStop() {
+        return lastStop;
+    }
+
+    /**
+     * Returns the subroutines that are running, innermost first. The last frame is the program itself
+     * @return List of CallFrame
+     */
+    public List<CallFrame> getCallStack() {
+        List<CallFrame> frames = new ArrayList<>();
+        int pc = chip.getPc();
+        for (int level = chip.getSp(); level >= 0; level--) {
+            int entry = Chip.MEMORY_ROM_START;
+            if (level > 0) {
+                int call = chip.getStackEntry(level - 1);
+                entry = (chip.getMemory(call) & 0x0F) << 8 | chip.getMemory(call + 1);
+            }
+            frames.add(new CallFrame(entry, pc));
+            if (level > 0) {
+                pc = chip.getStackEntry(level - 1);
+            }
+        }
+        return frames;
+    }
+
+    public void setStopListener(StopListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Called by the engine when the chip stopped
+     * @param stop why and where
+     */
+    void stopped(Stop stop) {
+        lastStop = stop;
+        if (listener != null) {
+            listener.stopped(stop);
+        }
+    }
+
+    private void updateOpcodeBreakpoints() {
+        boolean[] matches = engine.getOpcodeBreakpoints();
+        Arrays.fill(matches, false);
+        for (int breakpoint : opcodeBreakpoints) {
+            int opcode = breakpoint >>> 16;
+            int mask = breakpoint & 0xFFFF;
+            for (int candidate = 0; candidate < matches.length; candidate++) {
+                if ((candidate & mask) == opcode) {
+                    matches[candidate] = true;
+                }
+            }
+        }
+        arm();
+    }
+
+    private void updateMemoryWatches() {
+        boolean[] reads = engine.getWatchedReads();
+        boolean[] writes = engine.getWatchedWrites();
+        Arrays.fill(reads, false);
+        Arrays.fill(writes, false);
+        for (MemoryWatch watch : memoryWatches) {
+            if (watch.access.reads()) {
+                Arrays.fill(reads, watch.address, watch.address + watch.length, true);
+            }
+            if (watch.access.writes()) {
+                Arrays.fill(writes, watch.address, watch.address + watch.length, true);
+            }
+        }
+        engine.setWatchingMemory(!memoryWatches.isEmpty());
+        arm();
+    }
+
+    /**
+     * Puts the debug engine in front of the chip's engine while it has anything to do,
+     * and takes it out again once it has not
+     */
+    private void arm() {
+        boolean armed = !breakpoints.isEmpty() || !opcodeBreakpoints.isEmpty() || !memoryWatches.isEmpty()
+                || watchedRegisters != 0 || engine.isPaused() || engine.isStepping();
+        boolean installed = chip.getEngine() == engine;
+        if (armed && !installed) {
+            engine.setPrevious(chip.getEngine());
+            engine.captureRegisters();
+            chip.setEngine(engine);
+        } else if (!armed && installed) {
+            chip.setEngine(engine.getPrevious());
+        }
+    }
+
+    private void checkAddress(int address) {
+        if (address < 0 || address >= chip.getMemorySize()) {
+            throw new IllegalArgumentException(String.format("Address 0x%X is outside memory", address));
+        }
+    }
+}
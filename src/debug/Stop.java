@@ -0,0 +1,89 @@
+package debug;
+
+/**
+ * Where a debugger stopped the chip and why
+ */
+public final class Stop {
+
+    // Register number of I in register watches and stops, after V0 to VF
+    public static final int INDEX_REGISTER = 16;
+
+    private final StopReason reason;
+    private final int pc;
+    private final int address;
+    private final int register;
+    private final int oldValue;
+    private final int newValue;
+
+    Stop(StopReason reason, int pc, int address, int register, int oldValue, int newValue) {
+        this.reason = reason;
+        this.pc = pc;
+        this.address = address;
+        this.register = register;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    static Stop at(StopReason reason, int pc) {
+        return new Stop(reason, pc, -1, -1, 0, 0);
+    }
+
+    public StopReason getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns the address of the instruction that runs next
+     * @return int
+     */
+    public int getPc() {
+        return pc;
+    }
+
+    /**
+     * Returns the first watched address the next instruction accesses, for READ and WRITE stops
+     * @return int Address, or -1 for other stops
+     */
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the register that changed, for REGISTER stops: 0 to 15 for V0 to VF, INDEX_REGISTER for I
+     * @return int Register, or -1 for other stops
+     */
+    public int getRegister() {
+        return register;
+    }
+
+    public int getOldValue() {
+        return oldValue;
+    }
+
+    public int getNewValue() {
+        return newValue;
+    }
+
+    @Override
+    public String toString() {
+        switch (reason) {
+            case READ:
+            case WRITE:
+                return String.format("%s of 0x%03X at 0x%03X", reason.name().toLowerCase(), address, pc);
+            case REGISTER:
+                return String.format("%s changed from 0x%X to 0x%X, now at 0x%03X",
+                        registerName(register), oldValue, newValue, pc);
+            default:
+                return String.format("%s at 0x%03X", reason.name().toLowerCase(), pc);
+        }
+    }
+
+    /**
+     * Names a register the way the disassembler does, V0 to VF or I
+     * @param register register number
+     * @return String
+     */
+    public static String registerName(int register) {
+        return register == INDEX_REGISTER ? "I" : String.format("V%X", register);
+    }
+}
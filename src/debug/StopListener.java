@@ -0,0 +1,14 @@
+package debug;
+
+/**
+ * Gets notified when a debugger stops the chip
+ */
+@FunctionalInterface
+public interface StopListener {
+
+    /**
+     * Called on the thread running the chip, right after it stopped
+     * @param stop why and where the chip stopped
+     */
+    void stopped(Stop stop);
+}
@@ -0,0 +1,21 @@
+package debug;
+
+/**
+ * Why a debugger stopped the chip
+ */
+public enum StopReason {
+    // The program counter reached a breakpoint
+    BREAKPOINT,
+    // The next instruction matches an opcode breakpoint
+    OPCODE,
+    // The next instruction reads watched memory
+    READ,
+    // The next instruction writes watched memory
+    WRITE,
+    // The last instruction changed a watched register
+    REGISTER,
+    // A single step or step over finished
+    STEP,
+    // Debugger.pause() was called
+    PAUSE
+}
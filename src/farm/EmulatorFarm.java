@@ -0,0 +1,268 @@
+package farm;
+
+import analysis.ControlFlowGraph;
+import chip.BlockCacheEngine;
+import chip.Chip;
+import chip.Scheduler;
+import rom.RomImage;
+import util.XorShiftRandom;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs many headless chips in parallel on a work-stealing pool.
+ * Instances have no display, no audio and share the decode table,
+ * so each one costs little more than its memory and registers
+ */
+public class EmulatorFarm {
+
+    // Cycles each instance runs before its progress is published
+    public static final int DEFAULT_BATCH_CYCLES = 10_000;
+
+    private ForkJoinPool pool;
+    private List<Instance> instances;
+    private int instructionsPerFrame;
+    private int batchCycles;
+
+    // Run ROM images on block cache engines instead of the interpreter
+    private boolean blockCache;
+
+    // Engines with the blocks of each ROM compiled ahead of time, by ROM hash. New instances share their blocks
+    private Map<String, BlockCacheEngine> prebuiltBlocks;
+
+    /**
+     * Creates a farm with one worker per available core
+     */
+    public EmulatorFarm() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a farm
+     * @param parallelism number of worker threads
+     */
+    public EmulatorFarm(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.instances = new ArrayList<>();
+        this.instructionsPerFrame = Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME;
+        this.batchCycles = DEFAULT_BATCH_CYCLES;
+        this.prebuiltBlocks = new HashMap<>();
+    }
+
+    public void setInstructionsPerFrame(int instructionsPerFrame) {
+        this.instructionsPerFrame = instructionsPerFrame;
+    }
+
+    public void setBatchCycles(int batchCycles) {
+        this.batchCycles = batchCycles;
+    }
+
+    /**
+     * Makes instances added from ROM images run on block cache engines. The ROM is analyzed once
+     * and its blocks compiled once, then every instance starts with them already in its cache
+     * @param blockCache true for block cache engines, false for the interpreter
+     */
+    public void setBlockCache(boolean blockCache) {
+        this.blockCache = blockCache;
+    }
+
+    /**
+     * Creates a headless instance running a ROM
+     * @param rom program bytes
+     * @param seed seed for the instance's random number generator
+     * @return Chip
+     */
+    public Chip add(byte[] rom, long seed) {
+        Chip chip = new Chip(true);
+        if (!chip.loadRom(rom)) {
+            throw new IllegalArgumentException("ROM does not fit in memory");
+        }
+        chip.setRandom(new XorShiftRandom(seed));
+        add(chip);
+        return chip;
+    }
+
+    /**
+     * Creates a headless instance running a cached ROM image, copied into the chip in one go
+     * @param rom program image
+     * @param seed seed for the instance's random number generator
+     * @return Chip
+     */
+    public Chip add(RomImage rom, long seed) {
+        Chip chip = new Chip(true);
+        if (!chip.loadRom(rom)) {
+            throw new IllegalArgumentException("ROM does not fit in memory");
+        }
+        chip.setRandom(new XorShiftRandom(seed));
+        if (blockCache) {
+            BlockCacheEngine engine = new BlockCacheEngine(chip);
+            engine.shareBlocks(prebuiltBlocks.computeIfAbsent(rom.getHash(), hash -> prebuild(rom)));
+            chip.setEngine(engine);
+        }
+        add(chip);
+        return chip;
+    }
+
+    /**
+     * Compiles the blocks of a ROM on a chip of its own, for instances to share
+     * @param rom program image
+     * @return BlockCacheEngine
+     */
+    private static BlockCacheEngine prebuild(RomImage rom) {
+        Chip chip = new Chip(true);
+        chip.loadRom(rom);
+        BlockCacheEngine engine = new BlockCacheEngine(chip);
+        new ControlFlowGraph(chip, rom.getSize()).prebuild(engine);
+        return engine;
+    }
+
+    /**
+     * Adds an existing chip to the farm. It should be headless
+     * @param chip chip to run
+     */
+    public void add(Chip chip) {
+        instances.add(new Instance(chip));
+    }
+
+    /**
+     * Returns the number of instances in the farm
+     * @return int
+     */
+    public int size() {
+        return instances.size();
+    }
+
+    /**
+     * Returns an instance's chip
+     * @param index instance index
+     * @return Chip
+     */
+    public Chip getChip(int index) {
+        return instances.get(index).chip;
+    }
+
+    /**
+     * Returns the error that stopped an instance, if any: an unsupported opcode,
+     * a stack overflow or underflow, or anything else the chip threw
+     * @param index instance index
+     * @return RuntimeException, or null if the instance did not fail
+     */
+    public RuntimeException getFailure(int index) {
+        return instances.get(index).failure;
+    }
+
+    /**
+     * Runs every instance for a number of cycles and waits for all of them to finish.
+     * Halted and failed instances stop early
+     * @param cycles cycles to run per instance
+     * @return FarmResult
+     */
+    public FarmResult run(long cycles) {
+        LongAdder executed = new LongAdder();
+        long start = System.nanoTime();
+        pool.invoke(new Step(0, instances.size(), cycles, executed));
+        long elapsed = System.nanoTime() - start;
+
+        int failed = 0;
+        int halted = 0;
+        for (Instance instance : instances) {
+            if (instance.failure != null) {
+                failed++;
+            } else if (instance.chip.isHalted()) {
+                halted++;
+            }
+        }
+        return new FarmResult(instances.size(), executed.sum(), elapsed, halted, failed);
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Runs a single instance in batches
+     * @param instance instance to run
+     * @param cycles cycles to run
+     * @param executed counter for the cycles executed
+     */
+    private void runInstance(Instance instance, long cycles, LongAdder executed) {
+        Chip chip = instance.chip;
+        long done = 0;
+        try {
+            while (done < cycles && instance.failure == null && !chip.isHalted()) {
+                long batchEnd = Math.min(cycles, done + batchCycles);
+                long batchDone = 0;
+                while (done + batchDone < batchEnd) {
+                    long frame = chip.runFrame((int) Math.min(instructionsPerFrame, batchEnd - done - batchDone));
+                    if (frame == 0) {
+                        break;
+                    }
+                    batchDone += frame;
+                }
+                done += batchDone;
+                executed.add(batchDone);
+                if (batchDone == 0) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            // A faulting program only stops its own instance
+            instance.failure = e;
+        }
+    }
+
+    /**
+     * Splits a range of instances in half until a single instance is left to run,
+     * so idle workers can steal whole halves from busy ones
+     */
+    private class Step extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final long cycles;
+        private final LongAdder executed;
+
+        private Step(int from, int to, long cycles, LongAdder executed) {
+            this.from = from;
+            this.to = to;
+            this.cycles = cycles;
+            this.executed = executed;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) {
+                    runInstance(instances.get(from), cycles, executed);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Step(from, middle, cycles, executed), new Step(middle, to, cycles, executed));
+        }
+    }
+
+    /**
+     * A chip in the farm and the error that stopped it
+     */
+    private static final class Instance {
+
+        private final Chip chip;
+        private RuntimeException failure;
+
+        private Instance(Chip chip) {
+            this.chip = chip;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package farm;
+
+/**
+ * Aggregated outcome of one farm run
+ */
+public class FarmResult {
+
+    private final int instances;
+    private final long cycles;
+    private final long elapsedNanos;
+    private final int halted;
+    private final int failed;
+
+    public FarmResult(int instances, long cycles, long elapsedNanos, int halted, int failed) {
+        this.instances = instances;
+        this.cycles = cycles;
+        this.elapsedNanos = elapsedNanos;
+        this.halted = halted;
+        this.failed = failed;
+    }
+
+    public int getInstances() {
+        return instances;
+    }
+
+    /**
+     * Returns the cycles executed by all instances together
+     * @return long
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the number of instances that halted before running all their cycles
+     * @return int
+     */
+    public int getHalted() {
+        return halted;
+    }
+
+    /**
+     * Returns the number of instances stopped by an error, see EmulatorFarm.getFailure()
+     * @return int
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Returns the combined throughput of all instances
+     * @return double
+     */
+    public double getInstructionsPerSecond() {
+        return elapsedNanos > 0 ? cycles * 1_000_000_000.0 / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d instances, %d cycles in %.3f s (%.0f instructions/sec), %d halted, %d failed",
+                instances, cycles, elapsedNanos / 1_000_000_000.0, getInstructionsPerSecond(), halted, failed);
+    }
+}
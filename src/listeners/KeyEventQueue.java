@@ -0,0 +1,142 @@
+package listeners;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single producer, single consumer queue of timestamped key edges.
+ * The EDT offers presses and releases, the emulator thread polls them, and no
+ * event is lost between two polls however quickly a key is tapped.
+ * A release that does not fit is set aside and handed out once the queue has been read empty,
+ * since a lost release would leave the key held; a press that does not fit is dropped
+ */
+public class KeyEventQueue {
+
+    // Set in an event when the key went down, clear when it went up
+    public static final int PRESSED = 0x10;
+    private static final int KEY_MASK = 0xF;
+
+    private final int[] events;
+    private final long[] times;
+    private final int mask;
+
+    // Next position to read, written by the consumer only
+    private final AtomicLong head;
+
+    // Next position to write, written by the producer only
+    private final AtomicLong tail;
+
+    // Bit n set when a release of key n did not fit, set by the producer and cleared by the consumer
+    private final AtomicInteger pendingReleases;
+
+    // Time of each set-aside release, written before its bit is set
+    private final long[] releaseTimes;
+
+    // Time of the event last returned by poll(), consumer side only
+    private long lastTime;
+
+    /**
+     * Creates a queue
+     * @param capacity maximum number of unread events, rounded up to a power of two
+     */
+    public KeyEventQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        events = new int[size];
+        times = new long[size];
+        mask = size - 1;
+        head = new AtomicLong();
+        tail = new AtomicLong();
+        pendingReleases = new AtomicInteger();
+        releaseTimes = new long[KEY_MASK + 1];
+    }
+
+    /**
+     * Adds a key edge. Called by the producer thread only
+     * @param key key from 0x0 to 0xF
+     * @param pressed true when the key went down
+     * @param time System.nanoTime() of the edge
+     * @return boolean False if a press was dropped, because the queue was full or a release of the key is set aside.
+     * Releases are always taken
+     */
+    public boolean offer(int key, boolean pressed, long time) {
+        int bit = 1 << key;
+        // The press has to come after the set-aside release, which the consumer only gets once the queue is empty
+        if (pressed && (pendingReleases.get() & bit) != 0) {
+            return false;
+        }
+        long position = tail.get();
+        if (position - head.get() > mask) {
+            if (pressed) {
+                return false;
+            }
+            releaseTimes[key] = time;
+            if ((pendingReleases.get() & bit) == 0) {
+                pendingReleases.getAndAdd(bit);
+            }
+            return true;
+        }
+        int index = (int) position & mask;
+        events[index] = key | (pressed ? PRESSED : 0);
+        times[index] = time;
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * Takes the oldest key edge. Called by the consumer thread only
+     * @return int The event, or -1 if the queue is empty
+     */
+    public int poll() {
+        long position = head.get();
+        if (position == tail.get()) {
+            return pollPendingRelease();
+        }
+        int index = (int) position & mask;
+        int event = events[index];
+        lastTime = times[index];
+        head.lazySet(position + 1);
+        return event;
+    }
+
+    /**
+     * Takes a release that did not fit in the queue
+     * @return int The event, or -1 if no release was set aside
+     */
+    private int pollPendingRelease() {
+        int pending = pendingReleases.get();
+        if (pending == 0) {
+            return -1;
+        }
+        int key = Integer.numberOfTrailingZeros(pending);
+        lastTime = releaseTimes[key];
+        // Only the consumer clears bits, and the producer can not set this one again until it is clear
+        pendingReleases.getAndAdd(-(1 << key));
+        return key;
+    }
+
+    /**
+     * Returns the System.nanoTime() of the event last returned by poll()
+     * @return long
+     */
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    /**
+     * Returns the key of an event
+     * @param event event returned by poll()
+     * @return int
+     */
+    public static int getKey(int event) {
+        return event & KEY_MASK;
+    }
+
+    /**
+     * Returns whether an event is a press
+     * @param event event returned by poll()
+     * @return boolean
+     */
+    public static boolean isPress(int event) {
+        return (event & PRESSED) != 0;
+    }
+}
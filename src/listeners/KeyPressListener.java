@@ -3,15 +3,27 @@ package listeners;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class KeyPressListener implements KeyListener {
 
+    private static final int QUEUE_CAPACITY = 256;
+
     private int[] keyCodes;
-    private byte[] keyBuffer;
 
-    public KeyPressListener(int[] keyCodes, byte[] keyBuffer) {
+    // Bit n set while CHIP-8 key n is held down, published atomically. Only the EDT changes it,
+    // and only after the edge is in the queue, so it always matches the edges the emulator thread gets
+    private AtomicInteger keyMask;
+
+    // Every press and release, in order, for the emulator thread
+    private KeyEventQueue events;
+
+    private volatile boolean rewindHeld;
+
+    public KeyPressListener(int[] keyCodes) {
         this.keyCodes = keyCodes;
-        this.keyBuffer = keyBuffer;
+        this.keyMask = new AtomicInteger();
+        this.events = new KeyEventQueue(QUEUE_CAPACITY);
         fillKeyCodes();
     }
 
@@ -19,21 +31,49 @@ public class KeyPressListener implements KeyListener {
         return keyCodes;
     }
 
-    public byte[] getKeyBuffer() {
-        return keyBuffer;
+    /**
+     * Returns which keys are held down right now
+     * @return int Bit n set when key n is held down
+     */
+    public int getKeyMask() {
+        return keyMask.get();
+    }
+
+    public KeyEventQueue getKeyEvents() {
+        return events;
+    }
+
+    public boolean isRewindHeld() {
+        return rewindHeld;
     }
 
     @Override
     public void keyPressed(KeyEvent e) {
-        if(keyCodes[e.getKeyCode()] != -1) {
-            keyBuffer[keyCodes[e.getKeyCode()]] = 1;
+        if(e.getKeyCode() == KeyEvent.VK_BACK_SPACE) {
+            rewindHeld = true;
+        }
+        if(e.getKeyCode() < keyCodes.length && keyCodes[e.getKeyCode()] != -1) {
+            int bit = 1 << keyCodes[e.getKeyCode()];
+            // Auto-repeat sends more presses for a held key, only the first one is an edge.
+            // A press the full queue dropped leaves the key up, so the next repeat tries again
+            if((keyMask.get() & bit) == 0 && events.offer(keyCodes[e.getKeyCode()], true, System.nanoTime())) {
+                keyMask.getAndUpdate(mask -> mask | bit);
+            }
         }
     }
 
     @Override
     public void keyReleased(KeyEvent e) {
-        if(keyCodes[e.getKeyCode()] != -1) {
-            keyBuffer[keyCodes[e.getKeyCode()]] = 0;
+        if(e.getKeyCode() == KeyEvent.VK_BACK_SPACE) {
+            rewindHeld = false;
+        }
+        if(e.getKeyCode() < keyCodes.length && keyCodes[e.getKeyCode()] != -1) {
+            int bit = 1 << keyCodes[e.getKeyCode()];
+            // The key only counts as up once the emulator thread can see the release. The queue takes
+            // every release, even when full, so a key never stays held after it was let go
+            if((keyMask.get() & bit) != 0 && events.offer(keyCodes[e.getKeyCode()], false, System.nanoTime())) {
+                keyMask.getAndUpdate(mask -> mask & ~bit);
+            }
         }
     }
 
@@ -0,0 +1,68 @@
+package main;
+
+import analysis.BasicBlock;
+import analysis.ControlFlowGraph;
+import analysis.MemoryWrite;
+import chip.MachineProfile;
+import rom.RomImage;
+import rom.RomLibrary;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+
+public class AnalyzeMain {
+
+    /**
+     * Usage: AnalyzeMain <rom> [--machine=chip8|schip|xochip] [--dot=file]
+     */
+    public static void main(String[] args) throws IOException {
+        String rom = null;
+        String dot = null;
+        MachineProfile machine = MachineProfile.CHIP_8;
+        for (String arg : args) {
+            if (arg.startsWith("--machine=")) {
+                machine = MachineProfile.forName(arg.substring("--machine=".length()));
+            } else if (arg.startsWith("--dot=")) {
+                dot = arg.substring("--dot=".length());
+            } else {
+                rom = arg;
+            }
+        }
+        if (rom == null) {
+            System.err.println("Usage: AnalyzeMain <rom> [--machine=chip8|schip|xochip] [--dot=file]");
+            System.exit(1);
+        }
+
+        RomImage image = RomLibrary.getShared().load(Paths.get(rom));
+        ControlFlowGraph graph = ControlFlowGraph.analyze(image, machine);
+        graph.writeListing(System.out);
+
+        int instructions = 0;
+        for (BasicBlock block : graph.getBlocks()) {
+            instructions += block.getInstructions().length;
+        }
+        int dataBytes = 0;
+        for (int address = ControlFlowGraph.ENTRY; address < ControlFlowGraph.ENTRY + image.getSize(); address++) {
+            if (graph.isData(address)) {
+                dataBytes++;
+            }
+        }
+        int selfModifying = 0;
+        for (MemoryWrite write : graph.getWrites()) {
+            if (write.isSelfModifying()) {
+                selfModifying++;
+            }
+        }
+        System.out.println();
+        System.out.printf("; %d instructions in %d blocks, %d data bytes, %d stores (%d over code)%n",
+                instructions, graph.getBlocks().size(), dataBytes, graph.getWrites().size(), selfModifying);
+
+        if (dot != null) {
+            try (PrintStream out = new PrintStream(dot)) {
+                graph.writeDot(out);
+            }
+            System.out.println("; wrote control flow graph to " + dot);
+        }
+    }
+}
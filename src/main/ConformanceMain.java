@@ -0,0 +1,41 @@
+package main;
+
+import chip.Scheduler;
+import conformance.DifferentialHarness;
+import conformance.OpcodeSuite;
+
+public class ConformanceMain {
+
+    /**
+     * Usage: ConformanceMain [--programs=n] [--frames=n] [--seed=n]
+     * Exits with 1 if any opcode case fails or any engines disagree
+     */
+    public static void main(String[] args) {
+        long programs = 100_000;
+        int frames = 60;
+        long seed = 1;
+        for (String arg : args) {
+            if (arg.startsWith("--programs=")) {
+                programs = Long.parseLong(arg.substring("--programs=".length()));
+            } else if (arg.startsWith("--frames=")) {
+                frames = Integer.parseInt(arg.substring("--frames=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else {
+                System.err.println("Usage: ConformanceMain [--programs=n] [--frames=n] [--seed=n]");
+                System.exit(1);
+            }
+        }
+
+        int failedCases = OpcodeSuite.run(System.out);
+
+        DifferentialHarness harness = new DifferentialHarness(seed, frames, Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME);
+        long start = System.nanoTime();
+        long mismatches = harness.run(programs, System.out);
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("Differential: %d programs (%d faulted), %d mismatches, %d cycles in %.1f s%n",
+                harness.getPrograms(), harness.getFaulted(), mismatches, harness.getCycles(), seconds);
+
+        System.exit(failedCases == 0 && mismatches == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,271 @@
+package main;
+
+import analysis.Disassembler;
+import chip.Chip;
+import chip.MachineProfile;
+import chip.Quirks;
+import chip.Scheduler;
+import debug.Access;
+import debug.CallFrame;
+import debug.Debugger;
+import debug.Stop;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+public class DebugMain {
+
+    // Frames "continue" runs at most without being stopped, one minute of emulated time
+    private static final int DEFAULT_CONTINUE_FRAMES = 60 * 60;
+
+    // Instructions "list" shows when not told how many
+    private static final int DEFAULT_LIST_LENGTH = 8;
+
+    private static final String HELP = String.join("\n",
+            "break <addr>                 stop before the instruction at addr",
+            "delete <addr>                remove a breakpoint",
+            "opbreak <opcode> [mask]      stop before opcodes matching under mask (default FFFF)",
+            "watch <addr> [len] [r|w|rw]  stop before len bytes at addr are read or written (default 1 w)",
+            "unwatch <addr>               remove the watchpoints starting at addr",
+            "reg <V0-VF|I>                stop after the register changes",
+            "unreg <V0-VF|I>              stop watching the register",
+            "step                         run one instruction",
+            "next                         run one instruction, running a 2nnn call until it returns",
+            "continue [frames]            run frames until something stops the chip",
+            "keys <mask>                  hold down the keys whose bits are set",
+            "regs                         show the registers",
+            "bt                           show the call stack",
+            "x <addr> [len]               dump memory",
+            "list [n]                     disassemble from the program counter",
+            "quit");
+
+    private Chip chip;
+    private Debugger debugger;
+    private int instructionsPerFrame = Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME;
+
+    public DebugMain(String rom, MachineProfile machine) {
+        this.chip = new Chip(machine, true);
+        if (!chip.loadRom(rom)) {
+            throw new IllegalArgumentException("Could not load ROM: " + rom);
+        }
+        this.debugger = new Debugger(chip);
+    }
+
+    public void setInstructionsPerFrame(int instructionsPerFrame) {
+        this.instructionsPerFrame = instructionsPerFrame;
+    }
+
+    public Chip getChip() {
+        return chip;
+    }
+
+    /**
+     * Reads commands until "quit" or the end of input
+     * @param in commands, one per line
+     * @throws IOException when the commands can not be read
+     */
+    public void repl(BufferedReader in) throws IOException {
+        showPosition();
+        System.out.print("> ");
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            String[] words = line.trim().split("\\s+");
+            if (words[0].equals("quit") || words[0].equals("q")) {
+                return;
+            }
+            try {
+                command(words);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+            System.out.print("> ");
+        }
+    }
+
+    private void command(String[] words) {
+        switch (words[0]) {
+            case "":
+                break;
+            case "break", "b":
+                debugger.addBreakpoint(hex(words[1]));
+                break;
+            case "delete", "d":
+                debugger.removeBreakpoint(hex(words[1]));
+                break;
+            case "opbreak", "ob":
+                debugger.addOpcodeBreakpoint(hex(words[1]), words.length > 2 ? hex(words[2]) : 0xFFFF);
+                break;
+            case "watch", "w":
+                debugger.watchMemory(hex(words[1]), words.length > 2 ? Integer.parseInt(words[2]) : 1,
+                        access(words.length > 3 ? words[3] : "w"));
+                break;
+            case "unwatch":
+                debugger.unwatchMemory(hex(words[1]));
+                break;
+            case "reg":
+                debugger.watchRegister(register(words[1]));
+                break;
+            case "unreg":
+                debugger.unwatchRegister(register(words[1]));
+                break;
+            case "step", "s":
+                System.out.println(debugger.step());
+                showPosition();
+                break;
+            case "next", "n":
+                debugger.stepOver();
+                if (!debugger.isPaused()) {
+                    runUntilStopped(DEFAULT_CONTINUE_FRAMES);
+                } else {
+                    System.out.println(debugger.getLastStop());
+                    showPosition();
+                }
+                break;
+            case "continue", "c":
+                debugger.resume();
+                runUntilStopped(words.length > 1 ? Integer.parseInt(words[1]) : DEFAULT_CONTINUE_FRAMES);
+                break;
+            case "keys":
+                chip.setKeys(hex(words[1]));
+                break;
+            case "regs":
+                showRegisters();
+                break;
+            case "bt":
+                int level = 0;
+                for (CallFrame frame : debugger.getCallStack()) {
+                    System.out.printf("#%d %s%n", level++, frame);
+                }
+                break;
+            case "x":
+                dump(hex(words[1]), words.length > 2 ? Integer.parseInt(words[2]) : 16);
+                break;
+            case "list", "l":
+                list(chip.getPc(), words.length > 1 ? Integer.parseInt(words[1]) : DEFAULT_LIST_LENGTH);
+                break;
+            default:
+                System.out.println(HELP);
+                break;
+        }
+    }
+
+    /**
+     * Runs frames until the debugger stops the chip, the program halts or the frames run out
+     * @param frames most frames to run
+     */
+    private void runUntilStopped(int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            if (debugger.isPaused()) {
+                System.out.println(debugger.getLastStop());
+                showPosition();
+                return;
+            }
+            if (chip.isHalted()) {
+                System.out.printf("halted at 0x%03X%n", (int) chip.getPc());
+                showPosition();
+                return;
+            }
+            chip.runFrame(instructionsPerFrame);
+        }
+        System.out.printf("ran %d frames%n", frames);
+        showPosition();
+    }
+
+    private void showPosition() {
+        list(chip.getPc(), 1);
+    }
+
+    private void showRegisters() {
+        StringBuilder registers = new StringBuilder();
+        for (int x = 0; x < 16; x++) {
+            registers.append(String.format("V%X=%02X ", x, (int) chip.getRegister(x)));
+        }
+        System.out.println(registers.toString().trim());
+        System.out.printf("I=%03X PC=%03X SP=%d cycles=%d%n",
+                (int) chip.getI(), (int) chip.getPc(), chip.getSp(), chip.getCycles());
+    }
+
+    private void dump(int address, int length) {
+        int end = Math.min(address + length, chip.getMemorySize());
+        for (int row = address; row < end; row += 16) {
+            StringBuilder line = new StringBuilder(String.format("0x%03X ", row));
+            for (int i = row; i < Math.min(row + 16, end); i++) {
+                line.append(String.format(" %02X", (int) chip.getMemory(i)));
+            }
+            System.out.println(line);
+        }
+    }
+
+    private void list(int address, int count) {
+        for (int i = 0; i < count && address + 1 < chip.getMemorySize(); i++) {
+            char opcode = word(address);
+            char next = address + 3 < chip.getMemorySize() ? word(address + 2) : 0;
+            System.out.printf("%s 0x%03X  %04X  %s%n", address == chip.getPc() ? "=>" : "  ",
+                    address, (int) opcode, Disassembler.disassemble(opcode, next, chip.getProfile()));
+            address += opcode == 0xF000 && chip.getProfile().isXoChip() ? 4 : 2;
+        }
+    }
+
+    private char word(int address) {
+        return (char) (chip.getMemory(address) << 8 | chip.getMemory(address + 1));
+    }
+
+    private static int hex(String text) {
+        return Integer.parseInt(text.startsWith("0x") ? text.substring(2) : text, 16);
+    }
+
+    private static int register(String name) {
+        if (name.equalsIgnoreCase("I")) {
+            return Stop.INDEX_REGISTER;
+        }
+        if (name.length() == 2 && Character.toUpperCase(name.charAt(0)) == 'V') {
+            return Character.digit(name.charAt(1), 16);
+        }
+        throw new IllegalArgumentException("No such register: " + name);
+    }
+
+    private static Access access(String name) {
+        switch (name) {
+            case "r":
+                return Access.READ;
+            case "w":
+                return Access.WRITE;
+            case "rw":
+                return Access.READ_WRITE;
+            default:
+                throw new IllegalArgumentException("Access must be r, w or rw: " + name);
+        }
+    }
+
+    /**
+     * Usage: DebugMain <rom> [--machine=chip8|schip|xochip] [--quirks=preset|list] [--ipf=n]
+     */
+    public static void main(String[] args) throws IOException {
+        String rom = null;
+        MachineProfile machine = MachineProfile.CHIP_8;
+        Quirks quirks = null;
+        int instructionsPerFrame = Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME;
+        for (String arg : args) {
+            if (arg.startsWith("--machine=")) {
+                machine = MachineProfile.forName(arg.substring("--machine=".length()));
+            } else if (arg.startsWith("--quirks=")) {
+                quirks = Quirks.parse(arg.substring("--quirks=".length()));
+            } else if (arg.startsWith("--ipf=")) {
+                instructionsPerFrame = Integer.parseInt(arg.substring("--ipf=".length()));
+            } else {
+                rom = arg;
+            }
+        }
+        if (rom == null) {
+            System.err.println("Usage: DebugMain <rom> [--machine=chip8|schip|xochip] [--quirks=preset|list] [--ipf=n]");
+            System.exit(1);
+        }
+
+        DebugMain main = new DebugMain(rom, machine);
+        main.setInstructionsPerFrame(instructionsPerFrame);
+        if (quirks != null) {
+            main.getChip().setQuirks(quirks);
+        }
+        main.repl(new BufferedReader(new InputStreamReader(System.in)));
+    }
+}
@@ -0,0 +1,48 @@
+package main;
+
+import farm.EmulatorFarm;
+import farm.FarmResult;
+import rom.RomImage;
+import rom.RomLibrary;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+public class FarmMain {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: FarmMain <rom> <instances> <cycles per instance> [--threads=n] [--batch=n] [--engine=interpreter|block]");
+            System.exit(1);
+        }
+        RomImage rom = RomLibrary.getShared().load(Paths.get(args[0]));
+        int count = Integer.parseInt(args[1]);
+        long cycles = Long.parseLong(args[2]);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batch = EmulatorFarm.DEFAULT_BATCH_CYCLES;
+        boolean blockCache = false;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].startsWith("--threads=")) {
+                threads = Integer.parseInt(args[i].substring("--threads=".length()));
+            } else if (args[i].startsWith("--batch=")) {
+                batch = Integer.parseInt(args[i].substring("--batch=".length()));
+            } else if (args[i].equals("--engine=block")) {
+                blockCache = true;
+            } else if (args[i].equals("--engine=interpreter")) {
+                blockCache = false;
+            }
+        }
+
+        EmulatorFarm farm = new EmulatorFarm(threads);
+        farm.setBatchCycles(batch);
+        farm.setBlockCache(blockCache);
+        for (int i = 0; i < count; i++) {
+            farm.add(rom, i);
+        }
+
+        FarmResult result = farm.run(cycles);
+        farm.shutdown();
+        System.out.println(result);
+    }
+}
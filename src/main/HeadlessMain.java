@@ -0,0 +1,211 @@
+package main;
+
+import chip.BlockCacheEngine;
+import chip.Chip;
+import chip.MachineProfile;
+import chip.Quirks;
+import chip.ProfilingEngine;
+import chip.Scheduler;
+import util.XorShiftRandom;
+import video.FrameRecorder;
+import video.FrameSinks;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+public class HeadlessMain {
+
+    // Cycles run before measuring allocations, so the JIT and any caches have settled.
+    // After a shorter warm-up a late recompilation can still allocate once while measuring
+    private static final long ALLOCATION_WARMUP_CYCLES = 5_000_000;
+
+    // Addresses listed in the profile report
+    private static final int PROFILE_REPORT_ADDRESSES = 20;
+
+    // Image pixels per display pixel of recorded frames
+    private static final int DEFAULT_RECORD_SCALE = 4;
+
+    private Chip chip;
+    private int instructionsPerFrame = Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME;
+
+    // Records the display after every frame, or null
+    private FrameRecorder recorder;
+
+    public HeadlessMain(String rom, boolean blockCache) {
+        this(rom, MachineProfile.CHIP_8, blockCache);
+    }
+
+    public HeadlessMain(String rom, MachineProfile machine, boolean blockCache) {
+        this.chip = new Chip(machine, true);
+        if (!chip.loadRom(rom)) {
+            throw new IllegalArgumentException("Could not load ROM: " + rom);
+        }
+        if (blockCache) {
+            chip.setEngine(new BlockCacheEngine(chip));
+        }
+    }
+
+    public void setInstructionsPerFrame(int instructionsPerFrame) {
+        this.instructionsPerFrame = instructionsPerFrame;
+    }
+
+    public void setRecorder(FrameRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Runs the chip as fast as possible without a display or audio.
+     * Time is virtual: the timers tick once every instructionsPerFrame cycles
+     * @param maxCycles cycles to run, or a negative value to run until the program halts
+     * @return long Number of cycles executed
+     */
+    public long run(long maxCycles) {
+        long cycles = 0;
+        while (maxCycles < 0 || cycles < maxCycles) {
+            // A halted program only spins in place, so checking once a frame is enough
+            if (chip.isHalted()) {
+                break;
+            }
+            long batch = maxCycles < 0 ? instructionsPerFrame : Math.min(instructionsPerFrame, maxCycles - cycles);
+            cycles += chip.runFrame((int) batch);
+            if (recorder != null) {
+                recorder.capture(chip);
+            }
+        }
+        return cycles;
+    }
+
+    /**
+     * Measures how many bytes the current thread allocates while running cycles after a warm-up.
+     * Whatever reading the counter allocates by itself is measured on an empty interval and
+     * subtracted, so an allocation-free run measures exactly zero
+     * @param cycles cycles to measure
+     * @return long Bytes allocated, or -1 if the JVM can not measure it
+     */
+    public long measureAllocations(long cycles) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+                || !threads.isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        run(ALLOCATION_WARMUP_CYCLES);
+
+        long threadId = Thread.currentThread().getId();
+        long overhead = threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        overhead = before - overhead;
+        run(cycles);
+        return threads.getThreadAllocatedBytes(threadId) - before - overhead;
+    }
+
+    public Chip getChip() {
+        return chip;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String rom = null;
+        long maxCycles = -1;
+        boolean blockCache = false;
+        boolean checkAllocations = false;
+        boolean profile = false;
+        String foldedStacks = null;
+        String record = null;
+        int scale = DEFAULT_RECORD_SCALE;
+        Long seed = null;
+        MachineProfile machine = MachineProfile.CHIP_8;
+        Quirks quirks = null;
+        int instructionsPerFrame = Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME;
+        for (String arg : args) {
+            if (arg.equals("--engine=block")) {
+                blockCache = true;
+            } else if (arg.equals("--engine=interpreter")) {
+                blockCache = false;
+            } else if (arg.equals("--check-allocations")) {
+                checkAllocations = true;
+            } else if (arg.equals("--profile")) {
+                profile = true;
+            } else if (arg.startsWith("--profile=")) {
+                profile = true;
+                foldedStacks = arg.substring("--profile=".length());
+            } else if (arg.startsWith("--machine=")) {
+                machine = MachineProfile.forName(arg.substring("--machine=".length()));
+            } else if (arg.startsWith("--quirks=")) {
+                quirks = Quirks.parse(arg.substring("--quirks=".length()));
+            } else if (arg.startsWith("--record=")) {
+                record = arg.substring("--record=".length());
+            } else if (arg.startsWith("--scale=")) {
+                scale = Integer.parseInt(arg.substring("--scale=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--ipf=")) {
+                instructionsPerFrame = Integer.parseInt(arg.substring("--ipf=".length()));
+            } else if (rom == null) {
+                rom = arg;
+            } else {
+                maxCycles = Long.parseLong(arg);
+            }
+        }
+        if (rom == null) {
+            System.err.println("Usage: HeadlessMain <rom> [cycles] [--machine=chip8|schip|xochip] [--quirks=preset|list] [--engine=interpreter|block] [--seed=n] [--ipf=n] [--check-allocations] [--profile[=folded-stacks-file]] [--record=file.gif|directory|-] [--scale=n]");
+            System.exit(1);
+        }
+
+        HeadlessMain main = new HeadlessMain(rom, machine, blockCache);
+        main.setInstructionsPerFrame(instructionsPerFrame);
+        if (quirks != null) {
+            main.getChip().setQuirks(quirks);
+        }
+        if (seed != null) {
+            main.getChip().setRandom(new XorShiftRandom(seed));
+        }
+
+        if (checkAllocations) {
+            long cycles = maxCycles < 0 ? 10_000_000 : maxCycles;
+            long allocated = main.measureAllocations(cycles);
+            if (allocated < 0) {
+                System.err.println("Allocation check: not supported by this JVM");
+                System.exit(1);
+            }
+            System.out.printf("Allocated %d bytes over %d cycles%n", allocated, cycles);
+            if (allocated > 0) {
+                System.err.println("Allocation check FAILED: steady-state cycles allocate on the heap");
+                System.exit(2);
+            }
+            return;
+        }
+
+        ProfilingEngine profiler = profile ? main.getChip().startProfiling() : null;
+        FrameRecorder recorder = null;
+        if (record != null) {
+            recorder = new FrameRecorder(FrameSinks.open(record), machine, scale);
+            main.setRecorder(recorder);
+        }
+        // Raw frames go to standard output, so the reports move out of their way
+        PrintStream report = FrameSinks.STDOUT.equals(record) ? System.err : System.out;
+
+        long start = System.nanoTime();
+        long cycles = main.run(maxCycles);
+        long elapsed = System.nanoTime() - start;
+
+        double seconds = elapsed / 1_000_000_000.0;
+        report.printf("Executed %d cycles in %.3f s (%.0f instructions/sec)%n",
+                cycles, seconds, seconds > 0 ? cycles / seconds : 0);
+
+        if (recorder != null) {
+            recorder.close();
+            report.printf("Recorded %d frames to %s, %d unchanged frames skipped%n",
+                    recorder.getFrames(), record, recorder.getFramesSkipped());
+        }
+
+        if (profiler != null) {
+            profiler.writeHotReport(report, PROFILE_REPORT_ADDRESSES);
+            if (foldedStacks != null) {
+                try (PrintStream out = new PrintStream(foldedStacks)) {
+                    profiler.writeFoldedStacks(out);
+                }
+                report.println("Wrote folded stacks to " + foldedStacks);
+            }
+        }
+    }
+}
@@ -1,36 +1,216 @@
 package main;
 
 import chip.Chip;
+import chip.FrameListener;
+import chip.MachineProfile;
+import chip.Quirks;
+import chip.RewindBuffer;
+import chip.Scheduler;
+import chip.UnsupportedOpcodeException;
+import listeners.KeyEventQueue;
+import metrics.EmulatorMetrics;
+import replay.InputRecorder;
+import rom.RomImage;
+import rom.RomLibrary;
 import ui.EmulatorFrame;
 import ui.EmulatorWindow;
+import util.XorShiftRandom;
+
+import javax.management.JMException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class Main extends Thread {
 
+    // Memory for rewind history, enough for several minutes of most games
+    private static final long REWIND_BUDGET_BYTES = 8 * 1024 * 1024;
+
     private Chip chip;
     private EmulatorFrame frame;
+    private Scheduler scheduler;
+    private RewindBuffer rewind;
+
+    private EmulatorMetrics metrics;
+
+    // Records key edges for replay, null when not recording
+    private InputRecorder recorder;
+
+    // Keys pressed and released within one frame, released at the start of the next one
+    private int deferredReleases;
 
-    public Main() {
-        this.chip = new Chip();
-        chip.loadRom("./roms/pong2.c8");
+    // True while the previous frame stepped back instead of running
+    private boolean rewinding;
+
+    /**
+     * Creates the emulator window for a ROM
+     * @param rom program
+     * @param machine machine to emulate
+     * @param quirks quirks to run with, or null for the ones the quirks database has for the ROM
+     * @param record true to record the key presses for replay
+     */
+    public Main(RomImage rom, MachineProfile machine, Quirks quirks, boolean record) {
+        this.chip = new Chip(machine, false);
+        if (!chip.loadRom(rom)) {
+            throw new IllegalArgumentException("ROM does not fit in " + machine.getName() + " memory");
+        }
+        if (quirks != null) {
+            chip.setQuirks(quirks);
+        }
+        // Seed explicitly so a recording can reproduce every random number
+        long seed = System.nanoTime();
+        chip.setRandom(new XorShiftRandom(seed));
+        if (record) {
+            this.recorder = new InputRecorder(chip, rom, seed, Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME);
+        }
         this.frame = new EmulatorFrame(this.chip);
+        this.rewind = new RewindBuffer(REWIND_BUDGET_BYTES);
+        this.scheduler = new Scheduler(chip, Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME, new FrameListener() {
+            @Override
+            public boolean beforeFrame(Chip chip) {
+                // Holding backspace steps back one frame per frame instead of running,
+                // except while recording since a replay could not follow it
+                if (recorder == null && frame.isRewindHeld()) {
+                    if (rewind.stepBack(chip)) {
+                        chip.setRedrawFlag(true);
+                    }
+                    rewinding = true;
+                    return false;
+                }
+                if (recorder != null) {
+                    recorder.beginFrame();
+                } else if (rewinding) {
+                    // The frame rewound to is already the newest one in the buffer
+                    rewinding = false;
+                    syncKeys();
+                } else {
+                    rewind.record(chip);
+                }
+                applyInput();
+                return true;
+            }
+
+            @Override
+            public void present(Chip chip) {
+                frame.present();
+                metrics.framePresented();
+            }
+        });
+        this.metrics = new EmulatorMetrics(chip, scheduler, frame.getFrameExchange());
     }
 
-    public void run() {
-        while (true) {
-            chip.setKeypad(frame.getKeyBuffer());
-            chip.run();
-            if (chip.getRedrawFlag()) {
-                frame.repaint();
-                chip.setRedrawFlag(false);
+    /**
+     * Feeds the key edges that came in since the last frame to the chip.
+     * A key tapped within a single frame stays down for that frame so the program can see it
+     */
+    private void applyInput() {
+        for (int key = 0; deferredReleases != 0; key++) {
+            if ((deferredReleases & (1 << key)) != 0) {
+                chip.keyReleased(key);
+                recordKey(key);
+                deferredReleases &= ~(1 << key);
             }
-            try {
-                Thread.sleep(2);//(long) Chip.RUN_SPEED);
-            } catch (InterruptedException e) { }
+        }
+
+        int pressedThisFrame = 0;
+        KeyEventQueue events = frame.getKeyEvents();
+        for (int event = events.poll(); event != -1; event = events.poll()) {
+            int key = KeyEventQueue.getKey(event);
+            metrics.inputApplied(key, events.getLastTime());
+            if (KeyEventQueue.isPress(event)) {
+                deferredReleases &= ~(1 << key);
+                pressedThisFrame |= 1 << key;
+                chip.keyPressed(key);
+                recordKey(key);
+            } else if ((pressedThisFrame & (1 << key)) != 0) {
+                deferredReleases |= 1 << key;
+            } else {
+                chip.keyReleased(key);
+                recordKey(key);
+            }
+        }
+    }
+
+    /**
+     * Sets the keypad to the keys held right now. A rewound state brings back the keypad it was
+     * captured with, and the edges that came in while rewinding no longer match it
+     */
+    private void syncKeys() {
+        // Drain before reading the mask, since the listener only updates the mask once the edge is queued.
+        // An edge that slips in between is applied again next frame, which changes nothing
+        KeyEventQueue events = frame.getKeyEvents();
+        while (events.poll() != -1) {
+            // Already part of the mask
+        }
+        deferredReleases = 0;
+        chip.setKeys(frame.getKeyMask());
+    }
+
+    private void recordKey(int key) {
+        if (recorder != null) {
+            recorder.keyChanged(chip, key);
         }
     }
 
-    public static void main(String[] args) {
-        Main main = new Main();
+    /**
+     * Stops the emulator and writes the recording, if any
+     * @param path file to write the recording to
+     */
+    private void finishRecording(Path path) {
+        scheduler.stop();
+        try {
+            join();
+            recorder.finish(chip).write(path);
+            System.out.println("Wrote input recording to " + path);
+        } catch (InterruptedException | IOException e) {
+            System.err.println("Could not write input recording: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the emulator until the scheduler is stopped or the program hits an opcode the chip can not run.
+     * The thread then just ends and the window stays open on the last frame. Exiting from here would
+     * deadlock with the shutdown hook, which waits for this thread to end before writing the recording
+     */
+    public void run() {
+        try {
+            scheduler.run();
+        } catch (UnsupportedOpcodeException e) {
+            scheduler.stop();
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Usage: Main [rom] [--machine=chip8|schip|xochip] [--quirks=preset|list] [--record=file]
+     */
+    public static void main(String[] args) throws IOException {
+        String rom = "./roms/pong2.c8";
+        Path recording = null;
+        MachineProfile machine = MachineProfile.CHIP_8;
+        Quirks quirks = null;
+        for (String arg : args) {
+            if (arg.startsWith("--record=")) {
+                recording = Paths.get(arg.substring("--record=".length()));
+            } else if (arg.startsWith("--machine=")) {
+                machine = MachineProfile.forName(arg.substring("--machine=".length()));
+            } else if (arg.startsWith("--quirks=")) {
+                quirks = Quirks.parse(arg.substring("--quirks=".length()));
+            } else {
+                rom = arg;
+            }
+        }
+
+        Main main = new Main(RomLibrary.getShared().load(Paths.get(rom)), machine, quirks, recording != null);
+        try {
+            main.metrics.register(Paths.get(rom).getFileName().toString());
+        } catch (JMException e) {
+            System.err.println("Metrics: could not register MBean: " + e.getMessage());
+        }
+        if (recording != null) {
+            Path path = recording;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> main.finishRecording(path)));
+        }
         main.start();
     }
 }
@@ -0,0 +1,71 @@
+package main;
+
+import chip.Scheduler;
+import replay.InputRecording;
+import replay.Replayer;
+import rom.RomLibrary;
+import video.FrameRecorder;
+import video.FrameSinks;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+
+public class ReplayMain {
+
+    // Image pixels per display pixel of recorded frames
+    private static final int DEFAULT_RECORD_SCALE = 4;
+
+    /**
+     * Usage: ReplayMain <recording> <rom> [--record=file.gif|directory|-] [--scale=n]
+     */
+    public static void main(String[] args) throws IOException {
+        String record = null;
+        int scale = DEFAULT_RECORD_SCALE;
+        String[] files = new String[2];
+        int fileCount = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--record=")) {
+                record = arg.substring("--record=".length());
+            } else if (arg.startsWith("--scale=")) {
+                scale = Integer.parseInt(arg.substring("--scale=".length()));
+            } else if (fileCount < files.length) {
+                files[fileCount++] = arg;
+            }
+        }
+        if (fileCount < 2) {
+            System.err.println("Usage: ReplayMain <recording> <rom> [--record=file.gif|directory|-] [--scale=n]");
+            System.exit(1);
+        }
+        InputRecording recording = InputRecording.read(Paths.get(files[0]));
+        if (recording.getStateHash() == null) {
+            System.err.println("Recording has no end state to check against");
+            System.exit(1);
+        }
+        Replayer replayer = new Replayer(recording, RomLibrary.getShared().load(Paths.get(files[1])));
+        FrameRecorder recorder = null;
+        if (record != null) {
+            recorder = new FrameRecorder(FrameSinks.open(record), recording.getMachine(), scale);
+            replayer.setRecorder(recorder);
+        }
+        // Raw frames go to standard output, so the report moves out of their way
+        PrintStream report = FrameSinks.STDOUT.equals(record) ? System.err : System.out;
+
+        long start = System.nanoTime();
+        boolean matches = replayer.replay();
+        long elapsed = System.nanoTime() - start;
+
+        if (recorder != null) {
+            recorder.close();
+            report.printf("Recorded %d frames to %s, %d unchanged frames skipped%n",
+                    recorder.getFrames(), record, recorder.getFramesSkipped());
+        }
+
+        double seconds = elapsed / 1_000_000_000.0;
+        double realTime = recording.getEndFrame() / (double) Scheduler.FRAMES_PER_SECOND;
+        report.printf("Replayed %d frames (%d cycles) in %.3f s, %.0fx real time: %s%n",
+                recording.getEndFrame(), replayer.getChip().getCycles(), seconds,
+                seconds > 0 ? realTime / seconds : 0, matches ? "final state matches" : "final state DIFFERS");
+        System.exit(matches ? 0 : 2);
+    }
+}
@@ -0,0 +1,208 @@
+package metrics;
+
+import chip.Chip;
+import chip.Scheduler;
+import jdk.jfr.FlightRecorder;
+import ui.FrameExchange;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the performance figures of a running emulator and publishes them
+ * as a JMX MBean and as JFR events, so standard JDK tooling can watch it.
+ * Counters are read from the chip, scheduler and frame exchange once a second;
+ * the emulation thread only reports input edges and presented frames
+ */
+public class EmulatorMetrics implements EmulatorMetricsMBean {
+
+    private static final long SAMPLE_PERIOD_NANOS = 1_000_000_000L;
+
+    private Chip chip;
+    private Scheduler scheduler;
+    private FrameExchange exchange;
+
+    private ObjectName name;
+    private ScheduledExecutorService sampler;
+    private Runnable throughputHook;
+
+    // Counter values at the previous sample
+    private long lastSampleNanos;
+    private long lastCycles;
+    private long lastAudioCalls;
+
+    private volatile double instructionsPerSecond;
+    private volatile double audioCallsPerSecond;
+
+    // Key edge waiting for the next presented frame, written by the emulation thread only
+    private long pendingInputNanos;
+    private int pendingKey = -1;
+
+    private volatile long inputLatencyNanos;
+    private volatile long maxInputLatencyNanos;
+
+    public EmulatorMetrics(Chip chip, Scheduler scheduler, FrameExchange exchange) {
+        this.chip = chip;
+        this.scheduler = scheduler;
+        this.exchange = exchange;
+        this.throughputHook = this::emitThroughput;
+    }
+
+    /**
+     * Registers the MBean, the JFR events and starts sampling
+     * @param instance name that tells this emulator apart from others in the same JVM
+     * @throws JMException when the MBean can not be registered
+     */
+    public void register(String instance) throws JMException {
+        name = new ObjectName("chip8:type=Emulator,name=" + ObjectName.quote(instance));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+
+        // Periodic events cost nothing unless a recording asks for them
+        FlightRecorder.register(ThroughputEvent.class);
+        FlightRecorder.register(InputLatencyEvent.class);
+        FlightRecorder.addPeriodicEvent(ThroughputEvent.class, throughputHook);
+
+        lastSampleNanos = System.nanoTime();
+        lastCycles = chip.getCycles();
+        lastAudioCalls = chip.getAudioCalls();
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chip8-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, SAMPLE_PERIOD_NANOS, SAMPLE_PERIOD_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops sampling and removes the MBean and the periodic JFR event
+     */
+    public void unregister() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+        FlightRecorder.removePeriodicEvent(throughputHook);
+        try {
+            if (name != null) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            System.err.println("Metrics: could not unregister " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Notes that a key edge reached the chip. Called by the emulation thread
+     * @param key key from 0x0 to 0xF
+     * @param time System.nanoTime() of the edge
+     */
+    public void inputApplied(int key, long time) {
+        // Latency counts from the oldest edge not yet on screen
+        if (pendingKey < 0) {
+            pendingKey = key;
+            pendingInputNanos = time;
+        }
+    }
+
+    /**
+     * Notes that a frame was handed to the display. Called by the emulation thread
+     */
+    public void framePresented() {
+        if (pendingKey < 0) {
+            return;
+        }
+        long latency = System.nanoTime() - pendingInputNanos;
+        inputLatencyNanos = latency;
+        maxInputLatencyNanos = Math.max(maxInputLatencyNanos, latency);
+
+        InputLatencyEvent event = new InputLatencyEvent();
+        if (event.isEnabled()) {
+            event.key = pendingKey;
+            event.latency = latency;
+            event.commit();
+        }
+        pendingKey = -1;
+    }
+
+    /**
+     * Turns the counters into per second rates
+     */
+    private void sample() {
+        long now = System.nanoTime();
+        long cycles = chip.getCycles();
+        long audioCalls = chip.getAudioCalls();
+        double seconds = (now - lastSampleNanos) / 1_000_000_000.0;
+        if (seconds > 0) {
+            instructionsPerSecond = (cycles - lastCycles) / seconds;
+            audioCallsPerSecond = (audioCalls - lastAudioCalls) / seconds;
+        }
+        lastSampleNanos = now;
+        lastCycles = cycles;
+        lastAudioCalls = audioCalls;
+    }
+
+    private void emitThroughput() {
+        ThroughputEvent event = new ThroughputEvent();
+        event.instructionsPerSecond = getInstructionsPerSecond();
+        event.framesDrawn = getFramesDrawn();
+        event.framesDropped = getFramesDropped();
+        event.framesSkipped = getFramesSkipped();
+        event.timerDrift = getTimerDriftNanos();
+        event.sleepOvershoot = getSleepOvershootNanos();
+        event.audioCallsPerSecond = getAudioCallsPerSecond();
+        event.commit();
+    }
+
+    @Override
+    public double getInstructionsPerSecond() {
+        return instructionsPerSecond;
+    }
+
+    @Override
+    public long getInstructions() {
+        return chip.getCycles();
+    }
+
+    @Override
+    public long getFramesDrawn() {
+        return exchange.getFramesPresented();
+    }
+
+    @Override
+    public long getFramesDropped() {
+        return exchange.getFramesDropped();
+    }
+
+    @Override
+    public long getFramesSkipped() {
+        return scheduler.getFramesSkipped();
+    }
+
+    @Override
+    public long getTimerDriftNanos() {
+        return scheduler.getTimerDriftNanos();
+    }
+
+    @Override
+    public long getSleepOvershootNanos() {
+        return scheduler.getLastOvershootNanos();
+    }
+
+    @Override
+    public long getInputLatencyNanos() {
+        return inputLatencyNanos;
+    }
+
+    @Override
+    public long getMaxInputLatencyNanos() {
+        return maxInputLatencyNanos;
+    }
+
+    @Override
+    public double getAudioCallsPerSecond() {
+        return audioCallsPerSecond;
+    }
+}
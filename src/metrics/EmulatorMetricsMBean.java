@@ -0,0 +1,68 @@
+package metrics;
+
+/**
+ * Live performance figures of a running emulator, readable with JConsole, VisualVM or any JMX client.
+ * Rates are measured over the last sampling period of one second
+ */
+public interface EmulatorMetricsMBean {
+
+    /**
+     * Returns the instructions executed per second
+     * @return double
+     */
+    double getInstructionsPerSecond();
+
+    /**
+     * Returns the total number of instructions executed
+     * @return long
+     */
+    long getInstructions();
+
+    /**
+     * Returns the number of frames painted on screen
+     * @return long
+     */
+    long getFramesDrawn();
+
+    /**
+     * Returns the number of frames published but replaced before they were painted
+     * @return long
+     */
+    long getFramesDropped();
+
+    /**
+     * Returns the number of frames the scheduler skipped because it fell too far behind
+     * @return long
+     */
+    long getFramesSkipped();
+
+    /**
+     * Returns how far the 60Hz timers lag behind the wall clock, in nanoseconds
+     * @return long
+     */
+    long getTimerDriftNanos();
+
+    /**
+     * Returns how late the last frame sleep woke up, in nanoseconds
+     * @return long
+     */
+    long getSleepOvershootNanos();
+
+    /**
+     * Returns the time from the last key edge to the frame presented after it, in nanoseconds
+     * @return long
+     */
+    long getInputLatencyNanos();
+
+    /**
+     * Returns the largest input latency seen, in nanoseconds
+     * @return long
+     */
+    long getMaxInputLatencyNanos();
+
+    /**
+     * Returns the calls made to the audio sink per second, one per sound timer edge
+     * @return double
+     */
+    double getAudioCallsPerSecond();
+}
@@ -0,0 +1,27 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event emitted when a frame is presented after a key edge
+ */
+@Name("chip8.InputLatency")
+@Label("Input Latency")
+@Category("CHIP-8")
+@Description("Time from a key edge to the first frame presented after the chip saw it")
+@StackTrace(false)
+class InputLatencyEvent extends Event {
+
+    @Label("Key")
+    int key;
+
+    @Label("Latency")
+    @Timespan
+    long latency;
+}
@@ -0,0 +1,45 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Periodic JFR event with the emulator's throughput and frame pacing
+ */
+@Name("chip8.Throughput")
+@Label("Emulator Throughput")
+@Category("CHIP-8")
+@Description("Instructions, frames and timer pacing of the emulator, emitted once a second")
+@Period("1 s")
+@StackTrace(false)
+class ThroughputEvent extends Event {
+
+    @Label("Instructions per Second")
+    double instructionsPerSecond;
+
+    @Label("Frames Drawn")
+    long framesDrawn;
+
+    @Label("Frames Dropped")
+    long framesDropped;
+
+    @Label("Frames Skipped")
+    long framesSkipped;
+
+    @Label("Timer Drift")
+    @Timespan
+    long timerDrift;
+
+    @Label("Sleep Overshoot")
+    @Timespan
+    long sleepOvershoot;
+
+    @Label("Audio Calls per Second")
+    double audioCallsPerSecond;
+}
@@ -0,0 +1,64 @@
+package replay;
+
+import chip.Chip;
+import rom.RomImage;
+import util.HashUtil;
+
+/**
+ * Records the key edges fed to a chip so the session can be replayed exactly.
+ * Call beginFrame() before every frame that runs, and keyChanged() after every key edge given to the chip
+ */
+public class InputRecorder {
+
+    private InputRecording recording;
+
+    // Frames begun so far, the current frame is frame - 1
+    private long frame;
+
+    // Keys held down as of the last recorded edge
+    private int keys;
+
+    /**
+     * Starts a recording. The chip must not have run yet
+     * @param chip chip being recorded
+     * @param rom program loaded into the chip
+     * @param seed seed of the chip's random number generator
+     * @param instructionsPerFrame cycles run per frame
+     */
+    public InputRecorder(Chip chip, RomImage rom, long seed, int instructionsPerFrame) {
+        this.recording = new InputRecording(rom.getHash(), chip.getProfile(), chip.getQuirks(), seed,
+                instructionsPerFrame);
+        this.keys = chip.getKeys();
+    }
+
+    /**
+     * Marks the start of a frame, before its input is applied
+     */
+    public void beginFrame() {
+        frame++;
+    }
+
+    /**
+     * Records a key edge if it changed the chip's keypad
+     * @param chip chip the edge was given to
+     * @param key key from 0x0 to 0xF
+     */
+    public void keyChanged(Chip chip, int key) {
+        int current = chip.getKeys();
+        int bit = 1 << key;
+        if ((current & bit) != (keys & bit)) {
+            recording.addEdge(new KeyEdge(frame - 1, chip.getCycles(), key, (current & bit) != 0));
+        }
+        keys = current;
+    }
+
+    /**
+     * Ends the recording with the hash of the chip's final state
+     * @param chip chip being recorded
+     * @return InputRecording
+     */
+    public InputRecording finish(Chip chip) {
+        recording.finish(frame, chip.getCycles(), HashUtil.sha256(chip.snapshot().toStateBytes()));
+        return recording;
+    }
+}
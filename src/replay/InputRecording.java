@@ -0,0 +1,196 @@
+package replay;
+
+import chip.MachineProfile;
+import chip.Quirks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything needed to reproduce a session: the ROM's hash, the machine and quirks, the random seed, the speed,
+ * every key edge with the frame and cycle it happened at, and the hash of the final state.
+ * Stored as a small line based text file so it can be attached to bug reports
+ */
+public class InputRecording {
+
+    private static final String HEADER = "chip8-input 1";
+
+    private String romHash;
+    private MachineProfile machine;
+    private Quirks quirks;
+    private long seed;
+    private int instructionsPerFrame;
+    private List<KeyEdge> edges;
+    private long endFrame;
+    private long endCycle;
+    private String stateHash;
+
+    public InputRecording(String romHash, long seed, int instructionsPerFrame) {
+        this(romHash, MachineProfile.CHIP_8, Quirks.CHIP_8, seed, instructionsPerFrame);
+    }
+
+    public InputRecording(String romHash, MachineProfile machine, Quirks quirks, long seed, int instructionsPerFrame) {
+        this.romHash = romHash;
+        this.machine = machine;
+        this.quirks = quirks;
+        this.seed = seed;
+        this.instructionsPerFrame = instructionsPerFrame;
+        this.edges = new ArrayList<>();
+    }
+
+    public String getRomHash() {
+        return romHash;
+    }
+
+    public MachineProfile getMachine() {
+        return machine;
+    }
+
+    public Quirks getQuirks() {
+        return quirks;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getInstructionsPerFrame() {
+        return instructionsPerFrame;
+    }
+
+    public List<KeyEdge> getEdges() {
+        return Collections.unmodifiableList(edges);
+    }
+
+    /**
+     * Returns the number of frames the session ran
+     * @return long
+     */
+    public long getEndFrame() {
+        return endFrame;
+    }
+
+    /**
+     * Returns the number of cycles the session ran
+     * @return long
+     */
+    public long getEndCycle() {
+        return endCycle;
+    }
+
+    /**
+     * Returns the SHA-256 of the final snapshot, or null if the session was not finished
+     * @return String
+     */
+    public String getStateHash() {
+        return stateHash;
+    }
+
+    void addEdge(KeyEdge edge) {
+        edges.add(edge);
+    }
+
+    void finish(long endFrame, long endCycle, String stateHash) {
+        this.endFrame = endFrame;
+        this.endCycle = endCycle;
+        this.stateHash = stateHash;
+    }
+
+    /**
+     * Writes the recording to a file
+     * @param path file to write
+     * @throws IOException when writing fails
+     */
+    public void write(Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            out.write(HEADER);
+            out.newLine();
+            out.write("rom " + romHash);
+            out.newLine();
+            out.write("seed " + seed);
+            out.newLine();
+            out.write("ipf " + instructionsPerFrame);
+            out.newLine();
+            out.write("machine " + machine.getName());
+            out.newLine();
+            out.write("quirks " + quirks);
+            out.newLine();
+            for (KeyEdge edge : edges) {
+                out.write(String.format("key %d %d %X %s", edge.getFrame(), edge.getCycle(), edge.getKey(),
+                        edge.isPressed() ? "down" : "up"));
+                out.newLine();
+            }
+            if (stateHash != null) {
+                out.write("end " + endFrame + " " + endCycle + " " + stateHash);
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Reads a recording written by write()
+     * @param path file to read
+     * @return InputRecording
+     * @throws IOException when reading fails or the file is not a recording
+     */
+    public static InputRecording read(Path path) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+            if (!HEADER.equals(in.readLine())) {
+                throw new IOException("Not a CHIP-8 input recording: " + path);
+            }
+            String romHash = value(in.readLine(), "rom");
+            long seed = Long.parseLong(value(in.readLine(), "seed"));
+            int instructionsPerFrame = Integer.parseInt(value(in.readLine(), "ipf"));
+            InputRecording recording = new InputRecording(romHash, seed, instructionsPerFrame);
+
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] fields = line.split(" ");
+                if (fields[0].equals("machine") && fields.length == 2) {
+                    // Recordings made before other machines were supported have no machine line
+                    recording.machine = parseMachine(fields[1]);
+                } else if (fields[0].equals("quirks") && fields.length == 2) {
+                    // Recordings made before quirks were configurable ran with the CHIP-8 quirks
+                    recording.quirks = parseQuirks(fields[1]);
+                } else if (fields[0].equals("key") && fields.length == 5) {
+                    recording.addEdge(new KeyEdge(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            Integer.parseInt(fields[3], 16), fields[4].equals("down")));
+                } else if (fields[0].equals("end") && fields.length == 4) {
+                    recording.finish(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]);
+                } else if (!line.isEmpty()) {
+                    throw new IOException("Bad line in input recording: " + line);
+                }
+            }
+            return recording;
+        }
+    }
+
+    private static MachineProfile parseMachine(String name) throws IOException {
+        try {
+            return MachineProfile.forName(name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static Quirks parseQuirks(String text) throws IOException {
+        try {
+            return Quirks.parse(text);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static String value(String line, String name) throws IOException {
+        if (line == null || !line.startsWith(name + " ")) {
+            throw new IOException("Missing " + name + " in input recording");
+        }
+        return line.substring(name.length() + 1);
+    }
+}
@@ -0,0 +1,43 @@
+package replay;
+
+/**
+ * A key going down or up at a point in a recorded session
+ */
+public class KeyEdge {
+
+    private final long frame;
+    private final long cycle;
+    private final int key;
+    private final boolean pressed;
+
+    public KeyEdge(long frame, long cycle, int key, boolean pressed) {
+        this.frame = frame;
+        this.cycle = cycle;
+        this.key = key;
+        this.pressed = pressed;
+    }
+
+    /**
+     * Returns the frame before which the edge was applied
+     * @return long
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns the chip's cycle count when the edge was applied
+     * @return long
+     */
+    public long getCycle() {
+        return cycle;
+    }
+
+    public int getKey() {
+        return key;
+    }
+
+    public boolean isPressed() {
+        return pressed;
+    }
+}
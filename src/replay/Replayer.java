@@ -0,0 +1,73 @@
+package replay;
+
+import chip.Chip;
+import rom.RomImage;
+import util.HashUtil;
+import util.XorShiftRandom;
+import video.FrameRecorder;
+
+import java.util.List;
+
+/**
+ * Replays a recorded session headlessly, as fast as possible, and checks that it ends in the recorded state
+ */
+public class Replayer {
+
+    private Chip chip;
+    private InputRecording recording;
+
+    // Records the display after every frame, or null
+    private FrameRecorder recorder;
+
+    /**
+     * Prepares a replay
+     * @param recording recorded session
+     * @param rom program, must match the recorded ROM hash
+     */
+    public Replayer(InputRecording recording, RomImage rom) {
+        if (!rom.getHash().equals(recording.getRomHash())) {
+            throw new IllegalArgumentException("ROM does not match the recording");
+        }
+        this.recording = recording;
+        this.chip = new Chip(recording.getMachine(), true);
+        chip.loadRom(rom);
+        chip.setQuirks(recording.getQuirks());
+        chip.setRandom(new XorShiftRandom(recording.getSeed()));
+    }
+
+    public Chip getChip() {
+        return chip;
+    }
+
+    public void setRecorder(FrameRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Runs the whole session, frame by frame as the scheduler did, applying each key edge before its frame
+     * @return boolean True if the final state matches the recording
+     */
+    public boolean replay() {
+        List<KeyEdge> edges = recording.getEdges();
+        int next = 0;
+        for (long frame = 0; frame < recording.getEndFrame(); frame++) {
+            while (next < edges.size() && edges.get(next).getFrame() == frame) {
+                KeyEdge edge = edges.get(next++);
+                if (chip.getCycles() != edge.getCycle()) {
+                    return false;
+                }
+                if (edge.isPressed()) {
+                    chip.keyPressed(edge.getKey());
+                } else {
+                    chip.keyReleased(edge.getKey());
+                }
+            }
+            chip.runFrame(recording.getInstructionsPerFrame());
+            if (recorder != null) {
+                recorder.capture(chip);
+            }
+        }
+        return chip.getCycles() == recording.getEndCycle()
+                && HashUtil.sha256(chip.snapshot().toStateBytes()).equals(recording.getStateHash());
+    }
+}
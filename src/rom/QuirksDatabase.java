@@ -0,0 +1,93 @@
+package rom;
+
+import chip.MachineProfile;
+import chip.Quirks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Quirks of known ROMs, looked up by content hash when a ROM loads.
+ * Read from a text file with one ROM per line: the SHA-256 of the ROM, a space, and a quirks
+ * preset or list as read by Quirks.parse(). Lines starting with # are comments.
+ * ROMs that are not listed get the usual quirks of the machine they run on
+ */
+public class QuirksDatabase {
+
+    // Read by the shared database when it exists, relative to the working directory like the ROMs
+    public static final Path DEFAULT_FILE = Paths.get("roms", "quirks.txt");
+
+    private static QuirksDatabase shared;
+
+    // Quirks by ROM hash
+    private Map<String, Quirks> entries;
+
+    public QuirksDatabase() {
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the database shared by everything in the JVM, reading DEFAULT_FILE on first use
+     * @return QuirksDatabase
+     */
+    public static synchronized QuirksDatabase getShared() {
+        if (shared == null) {
+            shared = new QuirksDatabase();
+            if (Files.isRegularFile(DEFAULT_FILE)) {
+                try {
+                    shared.read(DEFAULT_FILE);
+                } catch (IOException | IllegalArgumentException e) {
+                    System.err.println("Quirks: " + e.getMessage());
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Adds every entry of a quirks file, replacing entries for the same ROMs
+     * @param path file to read
+     * @throws IOException when the file can not be read
+     */
+    public void read(Path path) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length != 2) {
+                    throw new IOException("Bad line in " + path + ": " + line);
+                }
+                put(fields[0], Quirks.parse(fields[1]));
+            }
+        }
+    }
+
+    /**
+     * Sets the quirks of a ROM
+     * @param hash SHA-256 of the ROM as lowercase hex
+     * @param quirks quirks
+     */
+    public void put(String hash, Quirks quirks) {
+        entries.put(hash.toLowerCase(), quirks);
+    }
+
+    /**
+     * Returns the quirks a ROM needs
+     * @param hash SHA-256 of the ROM as lowercase hex
+     * @param profile machine the ROM runs on, for ROMs that are not listed
+     * @return Quirks
+     */
+    public Quirks lookup(String hash, MachineProfile profile) {
+        Quirks quirks = entries.get(hash);
+        return quirks != null ? quirks : Quirks.forProfile(profile);
+    }
+}
@@ -0,0 +1,68 @@
+package rom;
+
+/**
+ * An immutable CHIP-8 program, already widened to the chip's memory cell type
+ * so it can be copied into any number of chips with a single System.arraycopy
+ */
+public final class RomImage {
+
+    private final char[] image;
+    private final String hash;
+    private final String name;
+
+    /**
+     * Creates an image from program bytes
+     * @param name name to show for the program, usually its file name
+     * @param rom program bytes
+     * @param hash SHA-256 of the program bytes as lowercase hex
+     */
+    RomImage(String name, byte[] rom, String hash) {
+        this.name = name;
+        this.hash = hash;
+        this.image = new char[rom.length];
+        for (int i = 0; i < rom.length; i++) {
+            image[i] = (char) (rom[i] & 0xFF);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the SHA-256 of the program bytes as lowercase hex
+     * @return String
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the program size in bytes
+     * @return int
+     */
+    public int getSize() {
+        return image.length;
+    }
+
+    /**
+     * Copies the program into chip memory
+     * @param memory memory to copy into
+     * @param address address the program starts at
+     */
+    public void copyTo(char[] memory, int address) {
+        System.arraycopy(image, 0, memory, address, image.length);
+    }
+
+    /**
+     * Returns a copy of the program bytes
+     * @return byte[]
+     */
+    public byte[] toBytes() {
+        byte[] rom = new byte[image.length];
+        for (int i = 0; i < image.length; i++) {
+            rom[i] = (byte) image[i];
+        }
+        return rom;
+    }
+}
@@ -0,0 +1,149 @@
+package rom;
+
+import util.HashUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads ROMs from disk and keeps them as immutable images addressed by content hash.
+ * A file is read once, with a single NIO read, and reread only if it changes on disk;
+ * files with the same content share one image. Safe to use from many threads
+ */
+public class RomLibrary {
+
+    // Bytes available to a program, from 0x200 to the end of the 64 KB XO-CHIP memory.
+    // Smaller machines refuse larger programs when they are loaded
+    public static final int MAX_ROM_SIZE = 0x10000 - 0x200;
+
+    private static final RomLibrary SHARED = new RomLibrary(MAX_ROM_SIZE);
+
+    private int maxSize;
+
+    // Images by content hash
+    private Map<String, RomImage> images;
+
+    // Last image loaded from each file, with the file attributes it was loaded with
+    private Map<Path, FileEntry> files;
+
+    /**
+     * Creates a library
+     * @param maxSize largest program accepted, in bytes
+     */
+    public RomLibrary(int maxSize) {
+        this.maxSize = maxSize;
+        this.images = new ConcurrentHashMap<>();
+        this.files = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the library shared by everything in the JVM
+     * @return RomLibrary
+     */
+    public static RomLibrary getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Loads a ROM file, or returns the cached image if the file has not changed since it was last loaded
+     * @param path ROM file
+     * @return RomImage
+     * @throws IOException when the file can not be read or does not fit in memory
+     */
+    public RomImage load(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        FileEntry entry = files.get(key);
+        if (entry != null && entry.matches(attributes)) {
+            return entry.image;
+        }
+
+        RomImage image = add(key.getFileName().toString(), read(key, attributes.size()));
+        files.put(key, new FileEntry(image, attributes));
+        return image;
+    }
+
+    /**
+     * Adds a program that is already in memory on the host
+     * @param name name to show for the program
+     * @param rom program bytes
+     * @return RomImage The cached image if the same program was added before
+     * @throws IOException when the program does not fit in memory
+     */
+    public RomImage add(String name, byte[] rom) throws IOException {
+        checkSize(name, rom.length);
+        String hash = HashUtil.sha256(rom);
+        return images.computeIfAbsent(hash, h -> new RomImage(name, rom, h));
+    }
+
+    /**
+     * Returns a cached image by content hash
+     * @param hash SHA-256 of the program bytes as lowercase hex
+     * @return RomImage, or null if no such program was loaded
+     */
+    public RomImage get(String hash) {
+        return images.get(hash);
+    }
+
+    /**
+     * Returns the number of distinct programs cached
+     * @return int
+     */
+    public int size() {
+        return images.size();
+    }
+
+    /**
+     * Reads a whole file in one go, checking its size before reading anything
+     * @param path ROM file
+     * @param size file size in bytes
+     * @return byte[]
+     * @throws IOException when the file can not be read or does not fit in memory
+     */
+    private byte[] read(Path path, long size) throws IOException {
+        checkSize(path.toString(), size);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            // A local file is normally read in full by the first call
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("ROM changed while reading: " + path);
+                }
+            }
+            return buffer.array();
+        }
+    }
+
+    private void checkSize(String name, long size) throws IOException {
+        if (size > maxSize) {
+            throw new IOException(String.format("%s is %d bytes, at most %d fit in memory", name, size, maxSize));
+        }
+    }
+
+    /**
+     * An image loaded from a file, with the attributes used to tell if the file changed
+     */
+    private static class FileEntry {
+
+        private final RomImage image;
+        private final long size;
+        private final long modified;
+
+        FileEntry(RomImage image, BasicFileAttributes attributes) {
+            this.image = image;
+            this.size = attributes.size();
+            this.modified = attributes.lastModifiedTime().toMillis();
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return attributes.size() == size && attributes.lastModifiedTime().toMillis() == modified;
+        }
+    }
+}
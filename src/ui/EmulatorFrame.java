@@ -1,6 +1,7 @@
 package ui;
 
 import chip.Chip;
+import listeners.KeyEventQueue;
 import listeners.KeyPressListener;
 
 import javax.swing.*;
@@ -8,6 +9,8 @@ import java.awt.*;
 
 public class EmulatorFrame extends JFrame {
 
+    private static final long serialVersionUID = 1L;
+
     private static final int WIDTH = 640;
     private static final int HEIGHT = 320;
 
@@ -28,15 +31,38 @@ public class EmulatorFrame extends JFrame {
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setTitle("CHIP-8 Emulator for Java");
         add(panel, BorderLayout.CENTER);
-        listener = new KeyPressListener(new int[256], new byte[16]);
+        listener = new KeyPressListener(new int[256]);
         addKeyListener(listener);
         pack();
         setVisible(true);
 
     }
 
-    public byte[] getKeyBuffer() {
-        return listener.getKeyBuffer();
+    public KeyEventQueue getKeyEvents() {
+        return listener.getKeyEvents();
+    }
+
+    /**
+     * Returns which keys are held down right now
+     * @return int Bit n set when key n is held down
+     */
+    public int getKeyMask() {
+        return listener.getKeyMask();
+    }
+
+    /**
+     * Shows the chip's latest display, repainting only what changed
+     */
+    public void present() {
+        panel.present();
+    }
+
+    public FrameExchange getFrameExchange() {
+        return panel.getFrameExchange();
+    }
+
+    public boolean isRewindHeld() {
+        return listener.isRewindHeld();
     }
 
 }
@@ -1,35 +1,157 @@
 package ui;
 
 import chip.Chip;
+import chip.Framebuffer;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 public class EmulatorPanel extends JPanel {
 
+    private static final long serialVersionUID = 1L;
+
+    private static final int PIXEL_ON = 0xFFFFFF;
+    private static final int PIXEL_OFF = 0x000000;
+
+    // A frame is a header long (width, height and plane count) followed by every plane
+    private static final int HEADER = 1;
+    private static final int FRAME_LENGTH =
+            HEADER + Framebuffer.MAX_PLANES * Framebuffer.HIRES_HEIGHT * Framebuffer.HIRES_WIDTH / Long.SIZE;
+
     private Chip chip;
 
+    // Hands completed frames from the emulator thread to the EDT
+    private FrameExchange exchange;
+
+    // Frame being filled before it is published, owned by the emulator thread
+    private long[] outgoing;
+
+    // One image pixel per CHIP-8 pixel, scaled up when drawn. Replaced when the resolution changes
+    private BufferedImage image;
+    private int[] pixels;
+
+    // Frame currently in the image, owned by the EDT
+    private long[] shown;
+
     public  EmulatorPanel(Chip chip) {
         this.chip = chip;
+        this.exchange = new FrameExchange(FRAME_LENGTH);
+        this.outgoing = new long[FRAME_LENGTH];
+        this.shown = new long[FRAME_LENGTH];
+        resizeImage(Framebuffer.WIDTH, Framebuffer.HEIGHT);
     }
 
     public Chip getChip() {
         return this.chip;
     }
 
+    public FrameExchange getFrameExchange() {
+        return exchange;
+    }
+
+    /**
+     * Publishes the chip's display and requests a repaint of only the rows that changed.
+     * Called from the emulator thread once per emulated frame
+     */
+    public void present() {
+        Framebuffer framebuffer = chip.getFramebuffer();
+        long dirty = framebuffer.takeDirtyRows();
+        if (dirty == 0) {
+            return;
+        }
+        int height = framebuffer.getHeight();
+        outgoing[0] = framebuffer.getWidth() | (long) height << 16 | (long) framebuffer.getPlaneCount() << 32;
+        framebuffer.copyPlanes(outgoing, HEADER);
+        exchange.publish(outgoing);
+
+        int first = Long.numberOfTrailingZeros(dirty);
+        int last = Long.SIZE - 1 - Long.numberOfLeadingZeros(dirty);
+        int top = first * getHeight() / height;
+        int bottom = ((last + 1) * getHeight() + height - 1) / height;
+        repaint(0, top, getWidth(), bottom - top);
+    }
+
     public void paint(Graphics g) {
-        byte[] display = chip.getDisplay();
-        for(int i = 0; i < display.length; i++) {
-            if(display[i] == 0)
-                g.setColor(Color.BLACK);
-            else
-                g.setColor(Color.WHITE);
+        long[] frame = exchange.acquire();
+        int width = (int) (frame[0] & 0xFFFF);
+        int height = (int) (frame[0] >>> 16 & 0xFFFF);
+        int planeCount = (int) (frame[0] >>> 32 & 0xFFFF);
+        if (width == 0) {
+            // Nothing published yet
+            g.drawImage(image, 0, 0, getWidth(), getHeight(), null);
+            return;
+        }
+        if (frame[0] != shown[0]) {
+            resizeImage(width, height);
+            shown[0] = frame[0];
+        }
 
-            int x = (i % 64);
-            int y = (int)Math.floor(i / 64);
+        // Only rows that differ from what the image shows are converted to pixels
+        if (planeCount == 1 && width == Long.SIZE) {
+            for (int y = 0; y < height; y++) {
+                long row = frame[HEADER + y];
+                if (row != shown[HEADER + y]) {
+                    shown[HEADER + y] = row;
+                    int offset = y * width;
+                    for (int x = 0; x < width; x++) {
+                        pixels[offset + x] = (row << x) < 0 ? PIXEL_ON : PIXEL_OFF;
+                    }
+                }
+            }
+        } else {
+            paintPlanes(frame, width, height, planeCount);
+        }
+        g.drawImage(image, 0, 0, getWidth(), getHeight(), null);
+    }
 
-            g.fillRect(x * 10, y * 10, 10, 10);
+    /**
+     * Converts the changed rows of a multi-word or multi-plane frame, coloring pixels by their plane bits
+     * @param frame published frame
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param planeCount number of planes in the frame
+     */
+    private void paintPlanes(long[] frame, int width, int height, int planeCount) {
+        int wordsPerRow = width / Long.SIZE;
+        int planeSize = height * wordsPerRow;
+        for (int y = 0; y < height; y++) {
+            boolean changed = false;
+            for (int p = 0; p < planeCount; p++) {
+                int start = HEADER + p * planeSize + y * wordsPerRow;
+                for (int word = start; word < start + wordsPerRow; word++) {
+                    if (frame[word] != shown[word]) {
+                        shown[word] = frame[word];
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed) {
+                continue;
+            }
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int word = HEADER + y * wordsPerRow + (x >>> 6);
+                int color = 0;
+                for (int p = 0; p < planeCount; p++) {
+                    color |= (int) (frame[word + p * planeSize] << x >>> 63) << p;
+                }
+                pixels[offset + x] = planeCount == 1 ? (color != 0 ? PIXEL_ON : PIXEL_OFF) : Framebuffer.getColor(color);
+            }
         }
     }
 
+    /**
+     * Replaces the image with a blank one of a new resolution and forgets what was shown
+     * @param width width in pixels
+     * @param height height in pixels
+     */
+    private void resizeImage(int width, int height) {
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Arrays.fill(shown, 0L);
+    }
+
 }
@@ -0,0 +1,93 @@
+package ui;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer handing completed frames from the emulator thread to the renderer.
+ * The emulator always has a back buffer to write into and the renderer always reads a front
+ * buffer nobody else touches. The third buffer is swapped between them atomically, so neither
+ * side ever waits and the renderer always gets the most recent frame
+ */
+public class FrameExchange {
+
+    // Set in the shared index while it holds a frame the renderer has not taken yet
+    private static final int FRESH = 4;
+    private static final int INDEX_MASK = 3;
+
+    private final long[][] buffers;
+
+    // Index of the buffer in the middle, plus FRESH when it holds an unread frame
+    private final AtomicInteger middle;
+
+    // Owned by the emulator thread
+    private int back;
+
+    // Owned by the renderer thread
+    private int front;
+
+    private volatile long framesPublished;
+    private volatile long framesPresented;
+    private volatile long framesDropped;
+
+    /**
+     * Creates an exchange
+     * @param rows length of each frame
+     */
+    public FrameExchange(int rows) {
+        buffers = new long[3][rows];
+        back = 0;
+        middle = new AtomicInteger(1);
+        front = 2;
+    }
+
+    /**
+     * Publishes a completed frame. Called by the emulator thread only
+     * @param rows frame to copy
+     */
+    public void publish(long[] rows) {
+        System.arraycopy(rows, 0, buffers[back], 0, buffers[back].length);
+        int previous = middle.getAndSet(back | FRESH);
+        back = previous & INDEX_MASK;
+        if ((previous & FRESH) != 0) {
+            framesDropped++;
+        }
+        framesPublished++;
+    }
+
+    /**
+     * Returns the latest published frame. Called by the renderer thread only.
+     * The array stays untouched by the emulator until the next call
+     * @return long[] Latest frame, or the previous one again if nothing new was published
+     */
+    public long[] acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+            framesPresented++;
+        }
+        return buffers[front];
+    }
+
+    /**
+     * Returns the number of frames published by the emulator
+     * @return long
+     */
+    public long getFramesPublished() {
+        return framesPublished;
+    }
+
+    /**
+     * Returns the number of frames the renderer picked up
+     * @return long
+     */
+    public long getFramesPresented() {
+        return framesPresented;
+    }
+
+    /**
+     * Returns the number of frames replaced by a newer one before the renderer picked them up
+     * @return long
+     */
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+}
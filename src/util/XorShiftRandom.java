@@ -0,0 +1,84 @@
+package util;
+
+/**
+ * Small, fast and seedable pseudo random number generator (xorshift64*).
+ * Keeps its state in a single long so drawing numbers never allocates
+ */
+public class XorShiftRandom {
+
+    private static final long MULTIPLIER = 0x2545F4914F6CDD1DL;
+
+    // Used instead of a zero seed, which would make xorshift return zero forever
+    private static final long ZERO_SEED_REPLACEMENT = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    /**
+     * Creates a generator seeded from the system clock
+     */
+    public XorShiftRandom() {
+        this(System.nanoTime());
+    }
+
+    /**
+     * Creates a generator that always returns the same sequence for the same seed
+     * @param seed starting seed
+     */
+    public XorShiftRandom(long seed) {
+        setSeed(seed);
+    }
+
+    /**
+     * Resets the generator to a seed
+     * @param seed starting seed
+     */
+    public void setSeed(long seed) {
+        this.state = seed == 0 ? ZERO_SEED_REPLACEMENT : seed;
+    }
+
+    /**
+     * Returns the current state. Passing it to setSeed() continues the same sequence
+     * @return long
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Returns the next 64 random bits
+     * @return long
+     */
+    public long nextLong() {
+        state = step(state);
+        return state * MULTIPLIER;
+    }
+
+    /**
+     * Returns a random number between 0 and 255
+     * @return int
+     */
+    public int nextByte() {
+        return (int) (nextLong() >>> 56);
+    }
+
+    /**
+     * Advances a generator state, for callers that keep many states in a primitive array
+     * @param state current state, never zero
+     * @return long The next state
+     */
+    public static long step(long state) {
+        state ^= state >>> 12;
+        state ^= state << 25;
+        state ^= state >>> 27;
+        return state;
+    }
+
+    /**
+     * Returns the random byte nextByte() draws for a state returned by step()
+     * @param state generator state
+     * @return int
+     */
+    public static int toByte(long state) {
+        return (int) ((state * MULTIPLIER) >>> 56);
+    }
+}
@@ -0,0 +1,225 @@
+package video;
+
+import chip.Chip;
+import chip.Framebuffer;
+import chip.MachineProfile;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records a chip's display once per emulated frame into a frame sink.
+ * The emulation thread only packs the display into a preallocated buffer and compares it
+ * with the previous frame; frames that did not change are counted and dropped right there.
+ * Changed frames go through a lock-free ring of preallocated buffers to an encoder thread that
+ * renders and writes them, so recording neither allocates, locks nor encodes on the emulation thread.
+ * Each side parks when it has to wait for the other and is unparked by it.
+ * When the encoder falls a whole ring behind, capture() waits for it rather than lose frames
+ */
+public class FrameRecorder implements Closeable, Runnable {
+
+    // Frames that can wait for the encoder, a power of two
+    private static final int BUFFERS = 16;
+
+    private final FrameSink sink;
+    private final FrameRenderer renderer;
+
+    // Ring of frames for the encoder, slot n % BUFFERS holds frame n of the ring
+    private final long[][] ring;
+
+    // Frames put into the ring by the emulation thread, and taken out by the encoder
+    private volatile long written;
+    private volatile long read;
+
+    // Set once the last frame is in the ring
+    private volatile boolean finished;
+
+    // Set while the encoder is parked on an empty ring, and while the emulation thread is parked on a full one.
+    // The other side unparks it after moving its index, so neither side spins or signals on every frame
+    private volatile boolean encoderParked;
+    private volatile boolean capturerParked;
+    private volatile Thread capturer;
+
+    // Last frame handed to the encoder, and the frame being captured. Owned by the emulation thread
+    private long[] last;
+    private int lastLength;
+    private long[] current;
+
+    // Frames captured so far, the number of the next frame
+    private volatile long frames;
+    private long framesSkipped;
+
+    private final Thread thread;
+
+    // First error the sink threw, reported by close()
+    private volatile IOException failure;
+
+    /**
+     * Starts a recorder and its encoder thread
+     * @param sink sink to write frames to, closed with the recorder
+     * @param profile machine being recorded, which decides the largest display
+     * @param scale image pixels per pixel of the largest display
+     */
+    public FrameRecorder(FrameSink sink, MachineProfile profile, int scale) {
+        if (scale < 1) {
+            throw new IllegalArgumentException("Scale must be at least 1: " + scale);
+        }
+        int width = profile.isSuperChip() ? Framebuffer.HIRES_WIDTH : Framebuffer.WIDTH;
+        int height = profile.isSuperChip() ? Framebuffer.HIRES_HEIGHT : Framebuffer.HEIGHT;
+        this.sink = sink;
+        this.renderer = new FrameRenderer(width * scale, height * scale);
+        this.ring = new long[BUFFERS][FrameRenderer.FRAME_LENGTH];
+        this.last = new long[FrameRenderer.FRAME_LENGTH];
+        this.current = new long[FrameRenderer.FRAME_LENGTH];
+
+        this.thread = new Thread(this, "Frame encoder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Records the chip's display as the next frame. Call once per emulated frame, from one thread
+     * @param chip chip whose display to record
+     */
+    public void capture(Chip chip) {
+        long number = frames;
+        frames = number + 1;
+        int length = FrameRenderer.capture(chip.getFramebuffer(), current, number);
+        if (number > 0 && length == lastLength
+                && current[0] == last[0]
+                && Arrays.equals(current, FrameRenderer.HEADER, length, last, FrameRenderer.HEADER, length)) {
+            framesSkipped++;
+            return;
+        }
+        long[] swap = last;
+        last = current;
+        current = swap;
+        lastLength = length;
+
+        long slot = written;
+        if (slot - read == BUFFERS) {
+            // The encoder is busy with a full ring, it unparks this thread once it took a frame out
+            capturer = Thread.currentThread();
+            while (slot - read == BUFFERS) {
+                capturerParked = true;
+                if (slot - read == BUFFERS) {
+                    LockSupport.park(this);
+                }
+                capturerParked = false;
+            }
+        }
+        System.arraycopy(last, 0, ring[(int) (slot & (BUFFERS - 1))], 0, length);
+        written = slot + 1;
+        if (encoderParked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Returns the number of frames captured
+     * @return long
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the number of frames dropped because they were the same as the frame before
+     * @return long
+     */
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    /**
+     * Encodes frames until close() is called. Runs on the encoder thread
+     */
+    @Override
+    public void run() {
+        // A frame is only written once the next one arrives, which tells how long it stayed on screen
+        long[] pending = new long[FrameRenderer.FRAME_LENGTH];
+        boolean hasPending = false;
+        while (true) {
+            long slot = read;
+            if (slot == written) {
+                if (finished && slot == written) {
+                    break;
+                }
+                // Announce the park before looking at the ring again, so a frame written in between is not missed
+                encoderParked = true;
+                if (slot == written && !finished) {
+                    LockSupport.park(this);
+                }
+                encoderParked = false;
+                continue;
+            }
+            long[] frame = ring[(int) (slot & (BUFFERS - 1))];
+            if (hasPending) {
+                write(pending, frame[1]);
+            }
+            System.arraycopy(frame, 0, pending, 0, pending.length);
+            hasPending = true;
+            read = slot + 1;
+            if (capturerParked) {
+                LockSupport.unpark(capturer);
+            }
+        }
+        if (hasPending) {
+            write(pending, frames);
+        }
+        try {
+            sink.close();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Renders and writes a frame
+     * @param frame frame to write
+     * @param next number of the frame that replaces it
+     */
+    private void write(long[] frame, long next) {
+        if (failure != null) {
+            return;
+        }
+        long duration = Math.min(next - frame[1], Integer.MAX_VALUE);
+        try {
+            BufferedImage image = renderer.render(frame);
+            sink.writeFrame(image, renderer.getChangedTop(), renderer.getChangedBottom(), frame[1], (int) duration);
+        } catch (IOException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            // The encoder has to keep emptying the ring, or capture() would wait for it forever
+            fail(new IOException("Frame sink failed", e));
+        }
+    }
+
+    private void fail(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Writes the frames still waiting, stops the encoder thread and closes the sink
+     * @throws IOException when the sink failed to write a frame or to close
+     */
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while finishing the recording", e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package video;
+
+import chip.Framebuffer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+
+/**
+ * Turns packed frames into an indexed image of a fixed size. Lower resolutions are scaled up
+ * to fill it, so a recording keeps one size when a program switches resolution.
+ * Only rows that differ from the frame already in the image are drawn again
+ */
+class FrameRenderer {
+
+    // A frame is a header long (width, height and plane count), the frame number, then every plane
+    static final int HEADER = 2;
+    static final int FRAME_LENGTH =
+            HEADER + Framebuffer.MAX_PLANES * Framebuffer.HIRES_HEIGHT * Framebuffer.HIRES_WIDTH / Long.SIZE;
+
+    private final BufferedImage image;
+    private final byte[] pixels;
+    private final int width;
+    private final int height;
+
+    // Frame currently in the image
+    private final long[] shown;
+
+    // Rows of the image drawn by the last render(), from changedTop up to but not including changedBottom
+    private int changedTop;
+    private int changedBottom;
+
+    /**
+     * Creates a renderer and its image
+     * @param width width of the image, a multiple of the widest display recorded
+     * @param height height of the image, a multiple of the tallest display recorded
+     */
+    FrameRenderer(int width, int height) {
+        int colors = 1 << Framebuffer.MAX_PLANES;
+        byte[] r = new byte[colors];
+        byte[] g = new byte[colors];
+        byte[] b = new byte[colors];
+        for (int i = 0; i < colors; i++) {
+            int rgb = Framebuffer.getColor(i);
+            r[i] = (byte) (rgb >> 16);
+            g[i] = (byte) (rgb >> 8);
+            b[i] = (byte) rgb;
+        }
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(8, colors, r, g, b));
+        this.pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        this.width = width;
+        this.height = height;
+        this.shown = new long[FRAME_LENGTH];
+    }
+
+    /**
+     * Packs a display into a frame
+     * @param framebuffer display to capture
+     * @param frame array of FRAME_LENGTH longs to fill
+     * @param number frame number stored in the frame
+     * @return int Number of longs used
+     */
+    static int capture(Framebuffer framebuffer, long[] frame, long number) {
+        frame[0] = framebuffer.getWidth() | (long) framebuffer.getHeight() << 16
+                | (long) framebuffer.getPlaneCount() << 32;
+        frame[1] = number;
+        return HEADER + framebuffer.copyPlanes(frame, HEADER);
+    }
+
+    /**
+     * Draws a frame into the image
+     * @param frame frame filled by capture()
+     * @return BufferedImage The renderer's image, overwritten by the next call
+     */
+    BufferedImage render(long[] frame) {
+        int frameWidth = (int) (frame[0] & 0xFFFF);
+        int frameHeight = (int) (frame[0] >>> 16 & 0xFFFF);
+        int planeCount = (int) (frame[0] >>> 32 & 0xFFFF);
+        int wordsPerRow = frameWidth / Long.SIZE;
+        int planeSize = frameHeight * wordsPerRow;
+        int scaleX = width / frameWidth;
+        int scaleY = height / frameHeight;
+
+        // After a resolution change every row is drawn again
+        boolean resized = frame[0] != shown[0];
+        shown[0] = frame[0];
+        changedTop = height;
+        changedBottom = 0;
+        for (int y = 0; y < frameHeight; y++) {
+            boolean changed = resized;
+            for (int p = 0; p < planeCount; p++) {
+                int start = HEADER + p * planeSize + y * wordsPerRow;
+                for (int word = start; word < start + wordsPerRow; word++) {
+                    if (frame[word] != shown[word]) {
+                        shown[word] = frame[word];
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed) {
+                continue;
+            }
+            changedTop = Math.min(changedTop, y * scaleY);
+            changedBottom = (y + 1) * scaleY;
+            int top = y * scaleY * width;
+            for (int x = 0; x < frameWidth; x++) {
+                int word = HEADER + y * wordsPerRow + (x >>> 6);
+                int color = 0;
+                for (int p = 0; p < planeCount; p++) {
+                    color |= (int) (frame[word + p * planeSize] << x >>> 63) << p;
+                }
+                int left = top + x * scaleX;
+                for (int i = left; i < left + scaleX; i++) {
+                    pixels[i] = (byte) color;
+                }
+            }
+            // The rest of the scaled row is a copy of its first line
+            for (int line = 1; line < scaleY; line++) {
+                System.arraycopy(pixels, top, pixels, top + line * width, width);
+            }
+        }
+        if (changedTop > changedBottom) {
+            changedTop = 0;
+        }
+        return image;
+    }
+
+    /**
+     * Returns the first image row the last render() drew
+     * @return int
+     */
+    int getChangedTop() {
+        return changedTop;
+    }
+
+    /**
+     * Returns the row after the last one the last render() drew, equal to getChangedTop() if it drew none
+     * @return int
+     */
+    int getChangedBottom() {
+        return changedBottom;
+    }
+}
@@ -0,0 +1,23 @@
+package video;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Encodes recorded frames. Frames only reach the sink when the display changed,
+ * each with how long it stays on screen, so a still display costs nothing to record
+ */
+public interface FrameSink extends Closeable {
+
+    /**
+     * Writes one frame. Called from the recorder's encoder thread, in order
+     * @param image frame with one palette index per pixel, see Framebuffer.getColor(). Reused once this returns
+     * @param top first row of the image that differs from the previous frame's image
+     * @param bottom row after the last one that differs. Rows outside top to bottom are the same as in the previous frame
+     * @param frame emulated frame the image was captured at, counted from the start of the recording
+     * @param duration number of 60Hz frames the image stays on screen, at least 1
+     * @throws IOException when the frame can not be written
+     */
+    void writeFrame(BufferedImage image, int top, int bottom, long frame, int duration) throws IOException;
+}
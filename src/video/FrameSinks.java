@@ -0,0 +1,35 @@
+package video;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Picks the frame sink for a recording target
+ */
+public final class FrameSinks {
+
+    // Target that streams raw frames to standard output
+    public static final String STDOUT = "-";
+
+    private FrameSinks() {
+    }
+
+    /**
+     * Opens a sink: "-" for raw RGB frames on standard output, a file ending in .gif for an
+     * animated GIF, anything else for a directory of PNG files
+     * @param target where to write the frames
+     * @return FrameSink
+     * @throws IOException when the target can not be created
+     */
+    public static FrameSink open(String target) throws IOException {
+        if (target.equals(STDOUT)) {
+            return new RawFrameSink(new FileOutputStream(FileDescriptor.out));
+        }
+        if (target.toLowerCase().endsWith(".gif")) {
+            return new GifFrameSink(Paths.get(target));
+        }
+        return new PngSequenceFrameSink(Paths.get(target));
+    }
+}
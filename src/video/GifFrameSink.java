@@ -0,0 +1,187 @@
+package video;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes frames into one looping animated GIF. Each GIF frame holds only the rows that changed
+ * and is drawn over the frames before it
+ */
+public class GifFrameSink implements FrameSink {
+
+    private static final String METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+
+    // GIF delays are in hundredths of a second, and most viewers slow down anything shorter than 2.
+    // A frame that would be shorter is held back and merged into the frame after it
+    private static final int MIN_DELAY = 2;
+
+    // Longest delay one GIF frame can have
+    private static final int MAX_DELAY = 0xFFFF;
+
+    private ImageOutputStream out;
+    private ImageWriter writer;
+    private ImageWriteParam param;
+    private boolean first;
+
+    // Hundredths of a second written so far. Every frame runs up to its own end on the 60Hz clock,
+    // rounded, so the rounding never adds up
+    private long centiseconds;
+
+    // Copy of the last frame when it was too short to write, the rows changed since the last frame
+    // written, and the hundredth of a second it ends
+    private BufferedImage held;
+    private boolean holding;
+    private int heldTop;
+    private int heldBottom;
+    private long heldEnd;
+
+    /**
+     * Creates the GIF file, replacing an existing one
+     * @param path file to write
+     * @throws IOException when the file can not be created or this JVM has no GIF writer
+     */
+    public GifFrameSink(Path path) throws IOException {
+        var writers = ImageIO.getImageWritersByFormatName("gif");
+        if (!writers.hasNext()) {
+            throw new IOException("No GIF writer available");
+        }
+        Files.deleteIfExists(path);
+        this.out = ImageIO.createImageOutputStream(path.toFile());
+        this.writer = writers.next();
+        this.param = writer.getDefaultWriteParam();
+        writer.setOutput(out);
+        writer.prepareWriteSequence(null);
+        this.first = true;
+    }
+
+    /**
+     * Writes the rows that changed as a GIF frame placed over the frames before it.
+     * A frame too short for its own delay is held back, and the next frame redraws its rows as well
+     */
+    @Override
+    public void writeFrame(BufferedImage image, int top, int bottom, long frame, int duration) throws IOException {
+        if (holding) {
+            top = Math.min(top, heldTop);
+            bottom = Math.max(bottom, heldBottom);
+            holding = false;
+        }
+        long end = Math.round((frame + duration) * 100.0 / 60);
+        if (end - centiseconds < MIN_DELAY) {
+            hold(image, top, bottom, end);
+            return;
+        }
+        write(image, top, bottom, end);
+    }
+
+    private void hold(BufferedImage image, int top, int bottom, long end) {
+        if (held == null) {
+            held = new BufferedImage(image.getColorModel(),
+                    image.getRaster().createCompatibleWritableRaster(), false, null);
+        }
+        image.copyData(held.getRaster());
+        holding = true;
+        heldTop = top;
+        heldBottom = bottom;
+        heldEnd = end;
+    }
+
+    /**
+     * Writes rows of an image that stay on screen until a point in time.
+     * Delays too long for one GIF frame go on in frames that repeat a single row
+     * @param image frame
+     * @param top first row to write
+     * @param bottom row after the last one to write
+     * @param end hundredth of a second the frame ends
+     * @throws IOException when the frame can not be written
+     */
+    private void write(BufferedImage image, int top, int bottom, long end) throws IOException {
+        if (top >= bottom) {
+            bottom = top + 1;
+        }
+        long delay = end - centiseconds;
+        writeRows(image, top, bottom, (int) Math.min(delay, MAX_DELAY));
+        for (delay -= MAX_DELAY; delay > 0; delay -= MAX_DELAY) {
+            writeRows(image, top, top + 1, (int) Math.min(delay, MAX_DELAY));
+        }
+        centiseconds = end;
+    }
+
+    private void writeRows(BufferedImage image, int top, int bottom, int delay) throws IOException {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), null);
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(METADATA_FORMAT);
+
+        // The default metadata comes with a 256 color web palette that would replace the image's own,
+        // without it the writer takes the palette from the image
+        root.removeChild(child(root, "LocalColorTable"));
+
+        IIOMetadataNode descriptor = child(root, "ImageDescriptor");
+        descriptor.setAttribute("imageLeftPosition", "0");
+        descriptor.setAttribute("imageTopPosition", Integer.toString(top));
+        descriptor.setAttribute("imageWidth", Integer.toString(image.getWidth()));
+        descriptor.setAttribute("imageHeight", Integer.toString(bottom - top));
+        descriptor.setAttribute("interlaceFlag", "FALSE");
+
+        IIOMetadataNode control = child(root, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(delay));
+        control.setAttribute("transparentColorIndex", "0");
+
+        if (first) {
+            // NETSCAPE2.0 block with a loop count of 0, loop forever
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            loop.setUserObject(new byte[] {1, 0, 0});
+            child(root, "ApplicationExtensions").appendChild(loop);
+            first = false;
+        }
+        metadata.setFromTree(METADATA_FORMAT, root);
+        param.setSourceRegion(new Rectangle(0, top, image.getWidth(), bottom - top));
+        writer.writeToSequence(new IIOImage(image, null, metadata), param);
+    }
+
+    /**
+     * Returns the child of a metadata node with a name, adding it if there is none
+     * @param parent node to look in
+     * @param name name of the child
+     * @return IIOMetadataNode
+     */
+    private static IIOMetadataNode child(IIOMetadataNode parent, String name) {
+        for (int i = 0; i < parent.getLength(); i++) {
+            if (parent.item(i).getNodeName().equals(name)) {
+                return (IIOMetadataNode) parent.item(i);
+            }
+        }
+        IIOMetadataNode node = new IIOMetadataNode(name);
+        parent.appendChild(node);
+        return node;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (holding) {
+                // Nothing comes after the last frame, it may run a little past its end
+                write(held, heldTop, heldBottom, Math.max(heldEnd, centiseconds + MIN_DELAY));
+                holding = false;
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+            out.close();
+        }
+    }
+}
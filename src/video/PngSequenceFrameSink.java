@@ -0,0 +1,57 @@
+package video;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes every frame as a PNG file named after its frame number, frame-000042.png, into a directory.
+ * Skipped frames leave gaps in the numbering, so the directory also gets a frames.ffconcat list
+ * with how long each file stays on screen, which ffmpeg reads with -f concat
+ */
+public class PngSequenceFrameSink implements FrameSink {
+
+    private static final String LIST_FILE = "frames.ffconcat";
+
+    private Path directory;
+    private PrintWriter list;
+    private String lastFile;
+
+    /**
+     * Creates the directory if needed
+     * @param directory directory to write the files into
+     * @throws IOException when the directory or the list can not be created
+     */
+    public PngSequenceFrameSink(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.list = new PrintWriter(Files.newBufferedWriter(directory.resolve(LIST_FILE), StandardCharsets.US_ASCII));
+        list.println("ffconcat version 1.0");
+    }
+
+    @Override
+    public void writeFrame(BufferedImage image, int top, int bottom, long frame, int duration) throws IOException {
+        String file = String.format("frame-%06d.png", frame);
+        if (!ImageIO.write(image, "png", directory.resolve(file).toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+        list.println("file " + file);
+        list.printf("duration %.6f%n", duration / 60.0);
+        lastFile = file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The concat demuxer ignores the duration of the last entry unless the file is listed again
+        if (lastFile != null) {
+            list.println("file " + lastFile);
+        }
+        list.close();
+        if (list.checkError()) {
+            throw new IOException("Could not write " + directory.resolve(LIST_FILE));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package video;
+
+import chip.Framebuffer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes frames as raw 24 bit RGB at a constant 60 frames per second, for piping into a video encoder:
+ * ffmpeg -f rawvideo -pix_fmt rgb24 -video_size WxH -framerate 60 -i - out.mp4.
+ * A frame that stays on screen is written again for every 60Hz frame it lasts
+ */
+public class RawFrameSink implements FrameSink {
+
+    private OutputStream out;
+
+    // RGB bytes of the last frame, sized on the first frame
+    private byte[] rgb;
+
+    /**
+     * Creates a sink
+     * @param out stream to write to, closed with the sink
+     */
+    public RawFrameSink(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+    }
+
+    @Override
+    public void writeFrame(BufferedImage image, int top, int bottom, long frame, int duration) throws IOException {
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        if (rgb == null) {
+            rgb = new byte[pixels.length * 3];
+            top = 0;
+            bottom = image.getHeight();
+        }
+        // Only the rows that changed need converting, the rest of rgb still holds the previous frame
+        for (int i = top * image.getWidth(); i < bottom * image.getWidth(); i++) {
+            int color = Framebuffer.getColor(pixels[i]);
+            rgb[i * 3] = (byte) (color >> 16);
+            rgb[i * 3 + 1] = (byte) (color >> 8);
+            rgb[i * 3 + 2] = (byte) color;
+        }
+        for (int i = 0; i < duration; i++) {
+            out.write(rgb);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,69 @@
+package chip;
+
+import org.junit.jupiter.api.Test;
+import util.XorShiftRandom;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AllocationTest {
+
+    private static final String[] ROMS = {"pong.c8", "pong2.c8", "invaders.ch8"};
+
+    // Frames run before measuring, so the JIT has compiled the hot path and every block is cached
+    private static final int WARMUP_FRAMES = 20_000;
+
+    private static final int MEASURED_FRAMES = 5_000;
+
+    @Test
+    void steadyStateCyclesDoNotAllocate() {
+        assertTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        for (String rom : ROMS) {
+            for (boolean blockCache : new boolean[] {false, true}) {
+                Chip chip = new Chip(true);
+                chip.loadRom(Paths.get("roms", rom).toString());
+                chip.setRandom(new XorShiftRandom(1));
+                if (blockCache) {
+                    chip.setEngine(new BlockCacheEngine(chip));
+                }
+                runFrames(chip, WARMUP_FRAMES);
+
+                // Whatever reading the counter allocates by itself is not the chip's
+                long overhead = threads.getThreadAllocatedBytes(threadId);
+                long before = threads.getThreadAllocatedBytes(threadId);
+                overhead = before - overhead;
+                long cycles = runFrames(chip, MEASURED_FRAMES);
+                long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+                assertTrue(cycles > 0, rom + " did not run");
+                assertEquals(0, allocated, rom + (blockCache ? " on the block cache" : " on the interpreter")
+                        + " allocated over " + cycles + " cycles");
+            }
+        }
+    }
+
+    /**
+     * Runs frames, changing the held keys now and then so the key opcodes take both paths
+     * @param chip chip to run
+     * @param frames number of frames
+     * @return long Number of cycles executed
+     */
+    private static long runFrames(Chip chip, int frames) {
+        long cycles = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            if (frame % 30 == 0) {
+                chip.setKeys(frame / 30 % 3 == 0 ? 0 : 1 << (frame / 30 % 16));
+            }
+            cycles += chip.runFrame(Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME);
+        }
+        return cycles;
+    }
+}
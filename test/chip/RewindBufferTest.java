@@ -0,0 +1,97 @@
+package chip;
+
+import org.junit.jupiter.api.Test;
+import util.XorShiftRandom;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RewindBufferTest {
+
+    private static final int FRAMES = 300;
+
+    private static Chip createChip(MachineProfile profile) {
+        Chip chip = new Chip(profile, true);
+        chip.loadRom(Paths.get("roms", "invaders.ch8").toString());
+        chip.setRandom(new XorShiftRandom(1));
+        return chip;
+    }
+
+    private static void runFrame(Chip chip, int frame) {
+        chip.setKeys(frame % 20 < 10 ? 1 << 5 : 0);
+        chip.runFrame(Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME);
+    }
+
+    @Test
+    void stepsBackThroughEveryRecordedFrame() {
+        for (MachineProfile profile : MachineProfile.values()) {
+            Chip chip = createChip(profile);
+            RewindBuffer rewind = new RewindBuffer(Long.MAX_VALUE);
+            List<byte[]> states = new ArrayList<>();
+            for (int frame = 0; frame < FRAMES; frame++) {
+                rewind.record(chip);
+                states.add(chip.snapshot().toBytes());
+                runFrame(chip, frame);
+            }
+
+            for (int frame = FRAMES - 2; frame >= 0; frame--) {
+                assertTrue(rewind.stepBack(chip));
+                assertArrayEquals(states.get(frame), chip.snapshot().toBytes(), profile + " frame " + frame);
+            }
+            assertFalse(rewind.stepBack(chip));
+        }
+    }
+
+    @Test
+    void recordsAgainAfterSteppingBack() {
+        Chip chip = createChip(MachineProfile.CHIP_8);
+        RewindBuffer rewind = new RewindBuffer(Long.MAX_VALUE);
+        for (int frame = 0; frame < FRAMES; frame++) {
+            rewind.record(chip);
+            runFrame(chip, frame);
+        }
+        for (int i = 0; i < 100; i++) {
+            rewind.stepBack(chip);
+        }
+        byte[] branch = chip.snapshot().toBytes();
+        for (int frame = 0; frame < 50; frame++) {
+            rewind.record(chip);
+            runFrame(chip, frame);
+        }
+        for (int i = 0; i < 50; i++) {
+            assertTrue(rewind.stepBack(chip));
+        }
+        assertArrayEquals(branch, chip.snapshot().toBytes());
+    }
+
+    @Test
+    void recordingOnlyAllocatesWhatTheFrameChanged() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // XO-CHIP has 64KB of memory, so copying it every frame would stand out
+        Chip chip = createChip(MachineProfile.XO_CHIP);
+        RewindBuffer rewind = new RewindBuffer(Long.MAX_VALUE);
+        for (int frame = 0; frame < FRAMES; frame++) {
+            rewind.record(chip);
+            runFrame(chip, frame);
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int frame = 0; frame < FRAMES; frame++) {
+            rewind.record(chip);
+            runFrame(chip, frame);
+        }
+        long perFrame = (threads.getThreadAllocatedBytes(threadId) - before) / FRAMES;
+        assertTrue(perFrame < MachineProfile.XO_CHIP.getMemoryBytes() / 4, perFrame + " bytes per frame");
+        assertEquals(2 * FRAMES - 1, rewind.getFrames());
+    }
+}
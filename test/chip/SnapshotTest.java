@@ -0,0 +1,77 @@
+package chip;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SnapshotTest {
+
+    // 00FF 1202: switches to high resolution, then jumps to itself
+    private static final byte[] HIGH_RESOLUTION = {0x00, (byte) 0xFF, 0x12, 0x02};
+
+    // Offset of the machine byte, after the magic number and the version
+    private static final int MACHINE_OFFSET = 5;
+
+    // Offsets of the registers that follow the machine byte
+    private static final int PC_OFFSET = 6;
+    private static final int SP_OFFSET = 10;
+    private static final int KEY_WAIT_OFFSET = 11;
+
+    private static byte[] snapshotBytes(MachineProfile profile, byte[] rom) {
+        Chip chip = new Chip(profile, true);
+        chip.loadRom(rom);
+        chip.execute(2);
+        return chip.snapshot().toBytes();
+    }
+
+    @Test
+    void readsBackEveryMachine() throws IOException {
+        for (MachineProfile profile : MachineProfile.values()) {
+            byte[] rom = profile.isSuperChip() ? HIGH_RESOLUTION : new byte[] {0x12, 0x00};
+            byte[] bytes = snapshotBytes(profile, rom);
+            assertArrayEquals(bytes, Snapshot.fromBytes(bytes).toBytes());
+        }
+    }
+
+    @Test
+    void rejectsDisplayThatDoesNotFitTheMachine() {
+        // A CHIP-8 display has one plane where XO-CHIP has four
+        byte[] planes = snapshotBytes(MachineProfile.CHIP_8, new byte[] {0x12, 0x00});
+        planes[MACHINE_OFFSET] = (byte) MachineProfile.XO_CHIP.ordinal();
+        assertThrows(IOException.class, () -> Snapshot.fromBytes(planes));
+
+        // CHIP-8 has no high resolution
+        byte[] resolution = snapshotBytes(MachineProfile.SUPER_CHIP, HIGH_RESOLUTION);
+        resolution[MACHINE_OFFSET] = (byte) MachineProfile.CHIP_8.ordinal();
+        assertThrows(IOException.class, () -> Snapshot.fromBytes(resolution));
+    }
+
+    @Test
+    void rejectsMemoryThatDoesNotFitTheMachine() {
+        byte[] bytes = snapshotBytes(MachineProfile.CHIP_8, new byte[] {0x12, 0x00});
+        // The page count comes right before the pages
+        int pageCount = bytes.length - Snapshot.pageCount(MachineProfile.CHIP_8.getMemoryBytes()) * Snapshot.PAGE_BYTES - 2;
+        bytes[pageCount + 1]--;
+        assertThrows(IOException.class, () -> Snapshot.fromBytes(bytes));
+    }
+
+    @Test
+    void rejectsRegistersOutOfRange() {
+        byte[] pc = snapshotBytes(MachineProfile.CHIP_8, new byte[] {0x12, 0x00});
+        pc[PC_OFFSET] = 0x10;
+        assertThrows(IOException.class, () -> Snapshot.fromBytes(pc));
+
+        byte[] sp = snapshotBytes(MachineProfile.CHIP_8, new byte[] {0x12, 0x00});
+        sp[SP_OFFSET] = 17;
+        assertThrows(IOException.class, () -> Snapshot.fromBytes(sp));
+
+        byte[] keyWait = snapshotBytes(MachineProfile.CHIP_8, new byte[] {0x12, 0x00});
+        keyWait[KEY_WAIT_OFFSET] = 16;
+        assertThrows(IOException.class, () -> Snapshot.fromBytes(keyWait));
+        keyWait[KEY_WAIT_OFFSET] = -2;
+        assertThrows(IOException.class, () -> Snapshot.fromBytes(keyWait));
+    }
+}
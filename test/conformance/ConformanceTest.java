@@ -0,0 +1,51 @@
+package conformance;
+
+import chip.Scheduler;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConformanceTest {
+
+    // Random programs the differential run checks, a few seconds of work at most
+    private static final int PROGRAMS = 1_000;
+
+    // Frames each random program runs, one second of emulated time
+    private static final int FRAMES = 60;
+
+    @TestFactory
+    List<DynamicTest> everyOpcodeCaseOnEveryEngine() {
+        List<DynamicTest> tests = new ArrayList<>();
+        for (OpcodeCase opcodeCase : OpcodeSuite.cases()) {
+            for (EngineKind kind : EngineKind.values()) {
+                if (!kind.supports(opcodeCase.getProfile(), opcodeCase.getQuirks())) {
+                    continue;
+                }
+                tests.add(DynamicTest.dynamicTest(opcodeCase.getName() + " on " + kind,
+                        () -> assertEquals(List.of(), opcodeCase.verify(kind))));
+            }
+        }
+        return tests;
+    }
+
+    @Test
+    void enginesEndRandomProgramsInTheSameState() {
+        DifferentialHarness harness = new DifferentialHarness(1, FRAMES, Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME);
+        ByteArrayOutputStream mismatches = new ByteArrayOutputStream();
+
+        long count = harness.run(PROGRAMS, new PrintStream(mismatches, true));
+
+        assertEquals(0, count, mismatches::toString);
+        assertEquals(PROGRAMS, harness.getPrograms());
+        // Faulted programs are compared too, but most programs should run all their frames
+        assertTrue(harness.getFaulted() < PROGRAMS / 2);
+    }
+}
@@ -0,0 +1,201 @@
+package debug;
+
+import chip.BlockCacheEngine;
+import chip.Chip;
+import chip.Engine;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DebuggerTest {
+
+    // 0x200 6005 V0 = 5
+    // 0x202 6107 V1 = 7
+    // 0x204 2210 call 0x210
+    // 0x206 7001 V0 += 1
+    // 0x208 1208 jump to itself
+    // 0x210 6203 V2 = 3
+    // 0x212 2216 call 0x216, so the first 00EE does not return to the caller of 0x210
+    // 0x214 00EE
+    // 0x216 7201 V2 += 1
+    // 0x218 00EE
+    private static final byte[] CALLS = {
+            0x60, 0x05, 0x61, 0x07, 0x22, 0x10, 0x70, 0x01, 0x12, 0x08, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+            0x62, 0x03, 0x22, 0x16, 0x00, (byte) 0xEE, 0x72, 0x01, 0x00, (byte) 0xEE
+    };
+
+    // 0x200 A300 I = 0x300
+    // 0x202 6012 V0 = 0x12
+    // 0x204 F055 store V0 at I, which moves I on with the CHIP-8 quirks
+    // 0x206 A300 I = 0x300
+    // 0x208 F033 store V0 as BCD at I
+    // 0x20A 120A jump to itself
+    private static final byte[] STORES = {
+            (byte) 0xA3, 0x00, 0x60, 0x12, (byte) 0xF0, 0x55, (byte) 0xA3, 0x00, (byte) 0xF0, 0x33, 0x12, 0x0A
+    };
+
+    private static final int CYCLES = 100;
+
+    private static Chip createChip(byte[] rom) {
+        Chip chip = new Chip(true);
+        chip.loadRom(rom);
+        chip.setEngine(new BlockCacheEngine(chip));
+        return chip;
+    }
+
+    @Test
+    void breakpointStopsBeforeTheInstructionUntilResumed() {
+        Chip chip = createChip(CALLS);
+        Debugger debugger = new Debugger(chip);
+        debugger.addBreakpoint(0x204);
+
+        assertEquals(2, chip.execute(CYCLES));
+        assertEquals(0x204, chip.getPc());
+        assertEquals(0, chip.getSp());
+        assertTrue(debugger.isPaused());
+        assertEquals(StopReason.BREAKPOINT, debugger.getLastStop().getReason());
+        assertEquals(0x204, debugger.getLastStop().getPc());
+        assertEquals(0, chip.execute(CYCLES));
+
+        // The breakpoint is still set, but the instruction it stopped before runs
+        debugger.resume();
+        assertFalse(debugger.isPaused());
+        assertEquals(CYCLES, chip.execute(CYCLES));
+        assertEquals(0x208, chip.getPc());
+        assertEquals(6, chip.getRegister(0));
+    }
+
+    @Test
+    void stepRunsOneInstruction() {
+        Chip chip = createChip(CALLS);
+        Debugger debugger = new Debugger(chip);
+
+        Stop stop = debugger.step();
+        assertEquals(StopReason.STEP, stop.getReason());
+        assertEquals(0x202, stop.getPc());
+        assertEquals(0x202, chip.getPc());
+        assertEquals(5, chip.getRegister(0));
+        assertEquals(0, chip.getRegister(1));
+        assertEquals(1, chip.getCycles());
+        assertTrue(debugger.isPaused());
+
+        debugger.step();
+        debugger.step();
+        assertEquals(0x210, chip.getPc());
+        assertEquals(1, chip.getSp());
+        assertEquals(3, chip.getCycles());
+        assertEquals(0, chip.execute(CYCLES));
+    }
+
+    @Test
+    void stepOverStopsAfterTheMatchingReturn() {
+        Chip chip = createChip(CALLS);
+        Debugger debugger = new Debugger(chip);
+        debugger.addBreakpoint(0x204);
+        chip.execute(CYCLES);
+        debugger.removeBreakpoint(0x204);
+
+        debugger.stepOver();
+        chip.execute(CYCLES);
+
+        // 6203, 2216, 7201, 00EE back to 0x214 one call deep, then the 00EE that matches 2210
+        assertEquals(StopReason.STEP, debugger.getLastStop().getReason());
+        assertEquals(0x206, chip.getPc());
+        assertEquals(0, chip.getSp());
+        assertEquals(4, chip.getRegister(2));
+        assertEquals(5, chip.getRegister(0));
+        assertEquals(2 + 6, chip.getCycles());
+        assertTrue(debugger.isPaused());
+    }
+
+    @Test
+    void writeWatchpointTripsOnStores() {
+        Chip chip = createChip(STORES);
+        Debugger debugger = new Debugger(chip);
+        debugger.watchMemory(0x300, 1, Access.WRITE);
+
+        assertEquals(2, chip.execute(CYCLES));
+        Stop stop = debugger.getLastStop();
+        assertEquals(StopReason.WRITE, stop.getReason());
+        assertEquals(0x204, stop.getPc());
+        assertEquals(0x300, stop.getAddress());
+        assertEquals(0, chip.getMemory(0x300));
+
+        debugger.resume();
+        assertEquals(2, chip.execute(CYCLES));
+        stop = debugger.getLastStop();
+        assertEquals(StopReason.WRITE, stop.getReason());
+        assertEquals(0x208, stop.getPc());
+        assertEquals(0x300, stop.getAddress());
+        assertEquals(0x12, chip.getMemory(0x300));
+
+        debugger.resume();
+        chip.execute(CYCLES);
+        assertFalse(debugger.isPaused());
+        assertEquals(0, chip.getMemory(0x300));
+        assertEquals(1, chip.getMemory(0x301));
+        assertEquals(8, chip.getMemory(0x302));
+    }
+
+    @Test
+    void readWatchpointIgnoresStores() {
+        Chip chip = createChip(STORES);
+        Debugger debugger = new Debugger(chip);
+        debugger.watchMemory(0x300, 3, Access.READ);
+
+        assertEquals(CYCLES, chip.execute(CYCLES));
+        assertFalse(debugger.isPaused());
+        assertNull(debugger.getLastStop());
+    }
+
+    @Test
+    void registerWatchReportsOldAndNewValue() {
+        Chip chip = createChip(CALLS);
+        Debugger debugger = new Debugger(chip);
+        debugger.watchRegister(1);
+
+        assertEquals(2, chip.execute(CYCLES));
+        Stop stop = debugger.getLastStop();
+        assertEquals(StopReason.REGISTER, stop.getReason());
+        assertEquals(1, stop.getRegister());
+        assertEquals(0, stop.getOldValue());
+        assertEquals(7, stop.getNewValue());
+        assertEquals(0x204, stop.getPc());
+
+        // V1 does not change again
+        debugger.resume();
+        assertEquals(CYCLES, chip.execute(CYCLES));
+        assertFalse(debugger.isPaused());
+    }
+
+    @Test
+    void clearingEverythingRestoresTheEngine() {
+        Chip chip = createChip(STORES);
+        Engine engine = chip.getEngine();
+        Debugger debugger = new Debugger(chip);
+        debugger.addBreakpoint(0x206);
+        debugger.addOpcodeBreakpoint(0xD000, 0xF000);
+        debugger.watchMemory(0x300, 1, Access.READ_WRITE);
+        debugger.watchRegister(Stop.INDEX_REGISTER);
+        assertNotSame(engine, chip.getEngine());
+
+        chip.execute(CYCLES);
+        assertEquals(StopReason.REGISTER, debugger.getLastStop().getReason());
+
+        // A paused chip stays paused, and the debugger stays in place until it runs on
+        debugger.clear();
+        assertTrue(debugger.isPaused());
+        assertNotSame(engine, chip.getEngine());
+
+        debugger.resume();
+        assertSame(engine, chip.getEngine());
+        assertFalse(debugger.isPaused());
+        assertEquals(CYCLES, chip.execute(CYCLES));
+        assertEquals(0x20A, chip.getPc());
+    }
+}
@@ -0,0 +1,46 @@
+package farm;
+
+import chip.UnsupportedOpcodeException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EmulatorFarmTest {
+
+    // 2200: calls itself until the stack overflows
+    private static final byte[] STACK_OVERFLOW = {0x22, 0x00};
+
+    // 00EE: returns with an empty stack
+    private static final byte[] STACK_UNDERFLOW = {0x00, (byte) 0xEE};
+
+    // 800F: an 8xyn opcode no machine defines
+    private static final byte[] UNSUPPORTED = {(byte) 0x80, 0x0F};
+
+    @Test
+    void faultingInstancesFailWithoutStoppingTheOthers() throws Exception {
+        EmulatorFarm farm = new EmulatorFarm(2);
+        try {
+            farm.add(STACK_OVERFLOW, 1);
+            farm.add(Files.readAllBytes(Paths.get("roms", "pong.c8")), 1);
+            farm.add(STACK_UNDERFLOW, 1);
+            farm.add(UNSUPPORTED, 1);
+
+            FarmResult result = farm.run(50_000);
+
+            assertEquals(3, result.getFailed());
+            assertNotNull(farm.getFailure(0));
+            assertNull(farm.getFailure(1));
+            assertNotNull(farm.getFailure(2));
+            assertInstanceOf(UnsupportedOpcodeException.class, farm.getFailure(3));
+            assertEquals(50_000, farm.getChip(1).getCycles());
+        } finally {
+            farm.shutdown();
+        }
+    }
+}
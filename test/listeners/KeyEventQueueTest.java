@@ -0,0 +1,63 @@
+package listeners;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyEventQueueTest {
+
+    private static final int CAPACITY = 4;
+
+    private static KeyEventQueue fullQueue() {
+        KeyEventQueue events = new KeyEventQueue(CAPACITY);
+        for (int key = 0; key < CAPACITY; key++) {
+            assertTrue(events.offer(key, true, key));
+        }
+        return events;
+    }
+
+    @Test
+    void dropsPressesWhenFull() {
+        KeyEventQueue events = fullQueue();
+        assertFalse(events.offer(7, true, 0));
+        for (int key = 0; key < CAPACITY; key++) {
+            assertEquals(key | KeyEventQueue.PRESSED, events.poll());
+        }
+        assertEquals(-1, events.poll());
+    }
+
+    @Test
+    void keepsReleasesThatDoNotFit() {
+        KeyEventQueue events = fullQueue();
+        assertTrue(events.offer(2, false, 100));
+        assertTrue(events.offer(9, false, 200));
+
+        for (int key = 0; key < CAPACITY; key++) {
+            assertEquals(key | KeyEventQueue.PRESSED, events.poll());
+        }
+        assertEquals(2, events.poll());
+        assertEquals(100, events.getLastTime());
+        assertEquals(9, events.poll());
+        assertEquals(200, events.getLastTime());
+        assertEquals(-1, events.poll());
+    }
+
+    @Test
+    void refusesPressesUntilTheKeptReleaseIsRead() {
+        KeyEventQueue events = fullQueue();
+        assertTrue(events.offer(2, false, 100));
+        events.poll();
+
+        // There is room again, but the press must not overtake the release
+        assertFalse(events.offer(2, true, 150));
+        for (int key = 1; key < CAPACITY; key++) {
+            events.poll();
+        }
+        assertEquals(2, events.poll());
+
+        assertTrue(events.offer(2, true, 300));
+        assertEquals(2 | KeyEventQueue.PRESSED, events.poll());
+    }
+}
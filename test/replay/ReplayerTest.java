@@ -0,0 +1,90 @@
+package replay;
+
+import chip.Chip;
+import chip.FrameListener;
+import chip.Scheduler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import rom.RomImage;
+import rom.RomLibrary;
+import util.XorShiftRandom;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayerTest {
+
+    private static final long SEED = 42;
+
+    // Frames the live session runs, half a second of real time
+    private static final int FRAMES = 30;
+
+    /**
+     * Runs a real-time session with the scheduler presenting frames, feeding key edges the way Main does,
+     * and records it
+     * @param rom program to run
+     * @return InputRecording
+     */
+    private static InputRecording recordSession(RomImage rom) throws InterruptedException {
+        Chip chip = new Chip(true);
+        chip.loadRom(rom);
+        chip.setRandom(new XorShiftRandom(SEED));
+        InputRecorder recorder = new InputRecorder(chip, rom, SEED, Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME);
+
+        Scheduler[] scheduler = new Scheduler[1];
+        scheduler[0] = new Scheduler(chip, Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME, new FrameListener() {
+            private int frame;
+
+            @Override
+            public boolean beforeFrame(Chip chip) {
+                if (frame == FRAMES) {
+                    scheduler[0].stop();
+                    return false;
+                }
+                recorder.beginFrame();
+                if (frame == 5) {
+                    chip.keyPressed(0x1);
+                    recorder.keyChanged(chip, 0x1);
+                } else if (frame == 15) {
+                    chip.keyReleased(0x1);
+                    recorder.keyChanged(chip, 0x1);
+                }
+                frame++;
+                return true;
+            }
+
+            @Override
+            public void present(Chip chip) {
+            }
+        });
+        Thread thread = new Thread(scheduler[0]);
+        thread.start();
+        thread.join();
+        assertTrue(scheduler[0].getFramesPresented() > 0, "the session should have presented frames");
+        return recorder.finish(chip);
+    }
+
+    @Test
+    void replaysSchedulerSessionToSameState() throws Exception {
+        for (String name : new String[] {"pong.c8", "pong2.c8", "invaders.ch8"}) {
+            RomImage rom = RomLibrary.getShared().load(Paths.get("roms", name));
+            InputRecording recording = recordSession(rom);
+            assertEquals(FRAMES, recording.getEndFrame());
+
+            Replayer replayer = new Replayer(recording, rom);
+            assertTrue(replayer.replay(), name + " should replay to the recorded state");
+        }
+    }
+
+    @Test
+    void replaysRecordingReadBackFromFile(@TempDir Path directory) throws Exception {
+        RomImage rom = RomLibrary.getShared().load(Paths.get("roms", "pong2.c8"));
+        Path file = directory.resolve("session.rec");
+        recordSession(rom).write(file);
+
+        assertTrue(new Replayer(InputRecording.read(file), rom).replay());
+    }
+}